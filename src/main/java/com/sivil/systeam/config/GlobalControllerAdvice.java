@@ -1,10 +1,8 @@
 package com.sivil.systeam.config;
 
-import com.sivil.systeam.entity.Usuario;
-import com.sivil.systeam.repository.UsuarioRepository;
+import com.sivil.systeam.service.UsuarioService;
+import com.sivil.systeam.service.dto.UsuarioSesion;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.security.core.Authentication;
-import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ModelAttribute;
@@ -13,20 +11,15 @@ import org.springframework.web.bind.annotation.ModelAttribute;
 public class GlobalControllerAdvice {
 
     @Autowired
-    private UsuarioRepository usuarioRepository;
+    private UsuarioService usuarioService;
 
+    // Datos del usuario tomados de la sesión: no hay consulta a la BD por petición
     @ModelAttribute
     public void addUserToModel(Model model) {
-        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
-        
-        if (auth != null && auth.isAuthenticated() && !auth.getPrincipal().equals("anonymousUser")) {
-            String email = auth.getName();
-            Usuario usuario = usuarioRepository.findByEmail(email).orElse(null);
-            
-            if (usuario != null) {
-                model.addAttribute("currentUser", usuario);
-                model.addAttribute("isAdmin", usuario.getTipo_usuario().name().equalsIgnoreCase("ADMIN"));
-            }
+        UsuarioSesion usuario = usuarioService.getSesionActual();
+        if (usuario != null) {
+            model.addAttribute("currentUser", usuario);
+            model.addAttribute("isAdmin", usuario.esAdmin());
         }
     }
-}
\ No newline at end of file
+}
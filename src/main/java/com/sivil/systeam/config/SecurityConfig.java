@@ -31,6 +31,16 @@ public class SecurityConfig {
                         .requestMatchers("/login", "/registro", "/css/**", "/js/**", "/images/**").permitAll()
                         // Solo admin o vendedor pueden acceder a las rutas de inactivación de ventas
                         .requestMatchers("/ventas/inactivar/**").hasAnyRole("ADMIN", "VENDEDOR")
+                        // Reportes de ventas solo para admin o vendedor
+                        .requestMatchers("/api/reportes/**").hasAnyRole("ADMIN", "VENDEDOR")
+                        // Exportaciones masivas solo para admin
+                        .requestMatchers("/exportar/**").hasRole("ADMIN")
+                        // Importación masiva de libros solo para admin o vendedor
+                        .requestMatchers("/libros/importar", "/api/libros/importar").hasAnyRole("ADMIN", "VENDEDOR")
+                        // Ajustes de stock por lote solo para admin o vendedor
+                        .requestMatchers("/api/stock/ajustes").hasAnyRole("ADMIN", "VENDEDOR")
+                        // Métricas de la aplicación (cachés, JVM) solo para admin
+                        .requestMatchers("/actuator/metrics/**").hasRole("ADMIN")
                         // Cualquier otra ruta requiere autenticación
                         .anyRequest().authenticated()
                 )
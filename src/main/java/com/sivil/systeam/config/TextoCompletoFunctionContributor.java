@@ -0,0 +1,31 @@
+package com.sivil.systeam.config;
+
+import org.hibernate.boot.model.FunctionContributions;
+import org.hibernate.boot.model.FunctionContributor;
+import org.hibernate.type.StandardBasicTypes;
+
+/**
+ * Registra en Hibernate la función texto_completo(id_libro, termino) para usar la
+ * búsqueda de texto completo de PostgreSQL dentro de una Specification
+ * (ver LibroSpecifications.textoCompleto).
+ *
+ * - La columna busqueda_tsv no se mapea en Libro (solo existe con catalogo.busqueda.motor=postgres),
+ *   por eso la condición se expresa como id_libro IN (subconsulta sobre el índice GIN)
+ * - Se carga con ServiceLoader (META-INF/services/org.hibernate.boot.model.FunctionContributor)
+ */
+public class TextoCompletoFunctionContributor implements FunctionContributor {
+
+    public static final String TEXTO_COMPLETO = "texto_completo";
+
+    @Override
+    public void contributeFunctions(FunctionContributions functionContributions) {
+        functionContributions.getFunctionRegistry()
+                .patternDescriptorBuilder(TEXTO_COMPLETO,
+                        "(?1 in (select t.id_libro from libros t " +
+                        "where t.busqueda_tsv @@ websearch_to_tsquery('spanish', ?2)))")
+                .setInvariantType(functionContributions.getTypeConfiguration()
+                        .getBasicTypeRegistry().resolve(StandardBasicTypes.BOOLEAN))
+                .setExactArgumentCount(2)
+                .register();
+    }
+}
@@ -5,11 +5,11 @@ import com.sivil.systeam.service.CartService;
 import com.sivil.systeam.service.dto.CartItemDTO;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.*;
-import java.math.BigDecimal;
-import java.math.RoundingMode;
-import java.util.List;
 
+import jakarta.servlet.http.HttpSession;
 import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.security.Principal;
 import java.util.List;
 
 @RestController
@@ -21,42 +21,42 @@ public class CartController {
 
     // ADD un libro al carrito
     @PostMapping("/add")
-    public void addItem(@RequestBody CartItemDTO item) {
-        cartService.addItem(item);
+    public void addItem(@RequestBody CartItemDTO item, Principal principal, HttpSession session) {
+        cartService.addItem(dueno(principal, session), item);
     }
 
     // SHOW libros en el carrito
     @GetMapping("/items")
-    public List<CartItemDTO> getItems() {
-        return cartService.getItems();
+    public List<CartItemDTO> getItems(Principal principal, HttpSession session) {
+        return cartService.getItems(dueno(principal, session));
     }
 
     // Calcular el total
     @GetMapping("/total")
-    public BigDecimal getTotal() {
-        return cartService.getTotal().setScale(2, RoundingMode.HALF_UP); //  redondeado
+    public BigDecimal getTotal(Principal principal, HttpSession session) {
+        return cartService.getTotal(dueno(principal, session)).setScale(2, RoundingMode.HALF_UP); //  redondeado
     }
 
     // Eliminar un libro por ID
     @DeleteMapping("/remove/{libroId}")
-    public void removeItem(@PathVariable Integer libroId) {
-        cartService.removeItem(libroId);
+    public void removeItem(@PathVariable Integer libroId, Principal principal, HttpSession session) {
+        cartService.removeItem(dueno(principal, session), libroId);
     }
 
     // Vaciar carrito
     @DeleteMapping("/clear")
-    public void clearCart() {
-        cartService.clearCart();
+    public void clearCart(Principal principal, HttpSession session) {
+        cartService.clearCart(dueno(principal, session));
     }
 
     // Resumen del carrito
     @GetMapping("/summary")
-    public com.sivil.systeam.service.dto.CartSummary getSummary() {
-        var items = cartService.getItems();
+    public com.sivil.systeam.service.dto.CartSummary getSummary(Principal principal, HttpSession session) {
+        String dueno = dueno(principal, session);
+        var items = cartService.getItems(dueno);
 
-        var subtotal = items.stream()
-                .map(i -> i.precioUnitario().multiply(new BigDecimal(i.cantidad())))
-                .reduce(BigDecimal.ZERO, BigDecimal::add)
+        // Subtotal acumulado por el servicio (no se recorren los ítems)
+        var subtotal = cartService.getTotal(dueno)
                 .setScale(2, RoundingMode.HALF_UP); //
 
 
@@ -69,6 +69,11 @@ public class CartController {
         return new com.sivil.systeam.service.dto.CartSummary(items, subtotal, impuestos, total);
     }
 
+    // Cada usuario autenticado tiene su carrito; sin autenticación se usa la sesión
+    private String dueno(Principal principal, HttpSession session) {
+        return principal != null ? "usuario:" + principal.getName() : "sesion:" + session.getId();
+    }
+
 
 }
 
@@ -1,19 +1,38 @@
 package com.sivil.systeam.controller;
 
 import com.sivil.systeam.entity.Libro;
+import com.sivil.systeam.service.CatalogoGridCache;
 import com.sivil.systeam.service.CatalogoService;
+import com.sivil.systeam.service.dto.FacetasCatalogo;
+import com.sivil.systeam.service.dto.LibroCard;
+import com.sivil.systeam.service.sesion.EstadoSesion;
+import com.sivil.systeam.service.dto.PaginaCursor;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.i18n.LocaleContextHolder;
 import org.springframework.data.domain.Page;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.thymeleaf.TemplateEngine;
+import org.thymeleaf.context.WebContext;
+import org.thymeleaf.web.IWebExchange;
+import org.thymeleaf.web.servlet.JakartaServletWebApplication;
 
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
 import jakarta.servlet.http.HttpSession;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 
 /**
  * Controlador para el catálogo de libros online
@@ -26,8 +45,21 @@ public class CatalogoController {
     @Autowired
     private CatalogoService catalogoService;
 
+    // Carrito fuera de HttpSession (ver sesion.almacen)
+    @Autowired
+    private EstadoSesion estadoSesion;
+
+    @Autowired
+    private CatalogoGridCache catalogoGridCache;
+
+    @Autowired
+    private TemplateEngine templateEngine;
+
     /**
-     * Muestra el catálogo de libros en la página principal
+     * Muestra el catálogo de libros en la página principal.
+     * En modo páginas el grid sale de CatalogoGridCache y la respuesta lleva un ETag
+     * (versión del catálogo + sesión, carrito y usuario): si el navegador ya tiene esa
+     * versión se responde 304 sin consultar la BD ni renderizar.
      */
     @GetMapping
     public String mostrarCatalogo(
@@ -35,34 +67,62 @@ public class CatalogoController {
             @RequestParam(value = "autor", required = false) String autor,
             @RequestParam(value = "orden", required = false, defaultValue = "titulo-asc") String orden,
             @RequestParam(value = "pagina", required = false, defaultValue = "0") int pagina,
+            @RequestParam(value = "after", required = false) String after,
             Model model,
-            HttpSession session) {
-        
-        // Obtener libros con filtros y paginación
-        Page<Libro> paginaLibros = catalogoService.buscarYFiltrarLibros(busqueda, autor, orden, pagina);
-        
-        // Obtener autores disponibles para el filtro
-        List<String> autores = catalogoService.obtenerAutoresDisponibles();
-        
-        // Obtener carrito de la sesión
+            HttpSession session,
+            WebRequest webRequest,
+            HttpServletRequest request,
+            HttpServletResponse response) {
+
+        // Obtener carrito de la sesión (solo se guarda al agregar libros, no por cada visita)
         @SuppressWarnings("unchecked")
-        List<ItemCarrito> carrito = (List<ItemCarrito>) session.getAttribute("carrito");
+        List<ItemCarrito> carrito = (List<ItemCarrito>) estadoSesion.obtener(session, "carrito");
         if (carrito == null) {
             carrito = new ArrayList<>();
-            session.setAttribute("carrito", carrito);
         }
-        
+
         // Calcular total de items en el carrito
         int totalItemsCarrito = carrito.stream()
                 .mapToInt(ItemCarrito::getCantidad)
                 .sum();
+
+        // Modo cursor (opcional): si viene "after" (aunque sea vacío) se pagina por keyset
+        if (after != null) {
+            PaginaCursor<LibroCard> paginaCursor;
+            try {
+                paginaCursor = catalogoService.buscarYFiltrarLibrosDespuesDe(busqueda, autor, orden, after);
+            } catch (IllegalArgumentException e) {
+                // Cursor inválido o de otro ordenamiento: volver al inicio
+                paginaCursor = catalogoService.buscarYFiltrarLibrosDespuesDe(busqueda, autor, orden, null);
+            }
+            model.addAttribute("libros", paginaCursor.contenido());
+            model.addAttribute("modoCursor", true);
+            model.addAttribute("siguienteCursor", paginaCursor.siguienteCursor());
+            model.addAttribute("paginaActual", 0);
+            model.addAttribute("totalPaginas", 0);
+            // Sin total: el modo cursor no cuenta coincidencias (la plantilla oculta el número)
+        } else {
+            // El resto de la página depende de la sesión (CSRF), el carrito y el usuario
+            Locale locale = LocaleContextHolder.getLocale();
+            String etag = Long.toHexString(catalogoGridCache.version()) + "-" + Integer.toHexString(
+                    Objects.hash(session.getId(), totalItemsCarrito, model.getAttribute("currentUser"), locale));
+            response.setHeader(HttpHeaders.CACHE_CONTROL, CacheControl.noCache().cachePrivate().getHeaderValue());
+            if (webRequest.checkNotModified(etag)) {
+                return null;
+            }
+
+            // Grid con filtros y paginación (renderizado una vez por versión del catálogo)
+            CatalogoGridCache.Clave clave = new CatalogoGridCache.Clave(
+                    Objects.toString(busqueda, ""), Objects.toString(autor, ""), orden, pagina, locale.toLanguageTag());
+            CatalogoGridCache.Grid grid = catalogoGridCache.obtener(clave,
+                    () -> renderizarGrid(busqueda, autor, orden, pagina, locale, request, response));
+            model.addAttribute("gridHtml", grid.html());
+            model.addAttribute("modoCursor", false);
+            model.addAttribute("totalLibros", grid.totalLibros());
+        }
         
-        // Agregar atributos al modelo
-        model.addAttribute("libros", paginaLibros.getContent());
-        model.addAttribute("paginaActual", pagina);
-        model.addAttribute("totalPaginas", paginaLibros.getTotalPages());
-        model.addAttribute("totalLibros", paginaLibros.getTotalElements());
-        model.addAttribute("autores", autores);
+        // Agregar atributos al modelo (los autores del filtro salen de las facetas)
+        model.addAttribute("facetas", catalogoService.obtenerFacetas());
         model.addAttribute("busqueda", busqueda != null ? busqueda : "");
         model.addAttribute("autorSeleccionado", autor != null ? autor : "todos");
         model.addAttribute("ordenSeleccionado", orden);
@@ -71,6 +131,45 @@ public class CatalogoController {
         return "index";
     }
 
+    /**
+     * Consulta la página del catálogo y renderiza solo el fragmento "grid" de index.html
+     */
+    private CatalogoGridCache.Grid renderizarGrid(String busqueda, String autor, String orden, int pagina,
+                                                 Locale locale, HttpServletRequest request,
+                                                 HttpServletResponse response) {
+        Page<LibroCard> paginaLibros = catalogoService.buscarYFiltrarLibros(busqueda, autor, orden, pagina);
+
+        Map<String, Object> variables = new HashMap<>();
+        variables.put("libros", paginaLibros.getContent());
+        variables.put("modoCursor", false);
+        variables.put("paginaActual", pagina);
+        variables.put("totalPaginas", paginaLibros.getTotalPages());
+        variables.put("busqueda", busqueda != null ? busqueda : "");
+        variables.put("autorSeleccionado", autor != null ? autor : "todos");
+        variables.put("ordenSeleccionado", orden);
+
+        // El HTML se comparte entre sesiones: los enlaces no deben llevar ;jsessionid
+        HttpServletResponse sinIdSesion = new HttpServletResponseWrapper(response) {
+            @Override
+            public String encodeURL(String url) {
+                return url;
+            }
+        };
+        IWebExchange exchange = JakartaServletWebApplication.buildApplication(request.getServletContext())
+                .buildExchange(request, sinIdSesion);
+        String html = templateEngine.process("index", Set.of("grid"), new WebContext(exchange, locale, variables));
+        return new CatalogoGridCache.Grid(html, paginaLibros.getTotalElements());
+    }
+
+    /**
+     * API REST con las facetas del catálogo (autores, categorías y editoriales con conteo)
+     */
+    @GetMapping("/api/catalogo/facetas")
+    @ResponseBody
+    public FacetasCatalogo obtenerFacetas() {
+        return catalogoService.obtenerFacetas();
+    }
+
     /**
      * API REST para obtener detalles completos de un libro
      */
@@ -129,7 +228,7 @@ public class CatalogoController {
             
             // Obtener o crear carrito en sesión
             @SuppressWarnings("unchecked")
-            List<ItemCarrito> carrito = (List<ItemCarrito>) session.getAttribute("carrito");
+            List<ItemCarrito> carrito = (List<ItemCarrito>) estadoSesion.obtener(session, "carrito");
             if (carrito == null) {
                 carrito = new ArrayList<>();
             }
@@ -161,7 +260,7 @@ public class CatalogoController {
             }
             
             // Guardar carrito en sesión
-            session.setAttribute("carrito", carrito);
+            estadoSesion.guardar(session, "carrito", carrito);
             
             // Calcular total de items
             int totalItems = carrito.stream()
@@ -187,7 +286,7 @@ public class CatalogoController {
     @GetMapping("/carrito")
     public String verCarrito(HttpSession session, Model model) {
         @SuppressWarnings("unchecked")
-        List<ItemCarrito> carrito = (List<ItemCarrito>) session.getAttribute("carrito");
+        List<ItemCarrito> carrito = (List<ItemCarrito>) estadoSesion.obtener(session, "carrito");
         if (carrito == null) {
             carrito = new ArrayList<>();
         }
@@ -208,10 +307,14 @@ public class CatalogoController {
         Map<String, Object> response = new HashMap<>();
         
         @SuppressWarnings("unchecked")
-        List<ItemCarrito> carrito = (List<ItemCarrito>) session.getAttribute("carrito");
+        List<ItemCarrito> carrito = (List<ItemCarrito>) estadoSesion.obtener(session, "carrito");
         if (carrito != null) {
             carrito.removeIf(item -> item.getLibroId().equals(libroId));
-            session.setAttribute("carrito", carrito);
+            if (carrito.isEmpty()) {
+                estadoSesion.eliminar(session, "carrito");
+            } else {
+                estadoSesion.guardar(session, "carrito", carrito);
+            }
             
             int totalItems = carrito.stream()
                     .mapToInt(ItemCarrito::getCantidad)
@@ -239,7 +342,7 @@ public class CatalogoController {
         Map<String, Object> response = new HashMap<>();
         
         @SuppressWarnings("unchecked")
-        List<ItemCarrito> carrito = (List<ItemCarrito>) session.getAttribute("carrito");
+        List<ItemCarrito> carrito = (List<ItemCarrito>) estadoSesion.obtener(session, "carrito");
         if (carrito != null) {
             ItemCarrito item = carrito.stream()
                     .filter(i -> i.getLibroId().equals(libroId))
@@ -251,7 +354,7 @@ public class CatalogoController {
                 Libro libro = catalogoService.obtenerLibroDisponiblePorId(libroId);
                 if (libro != null && libro.getCantidad_stock() >= cantidad) {
                     item.setCantidad(cantidad);
-                    session.setAttribute("carrito", carrito);
+                    estadoSesion.guardar(session, "carrito", carrito);
                     response.put("success", true);
                 } else {
                     response.put("success", false);
@@ -269,11 +372,8 @@ public class CatalogoController {
     @PostMapping("/carrito/limpiar")
     @ResponseBody
     public ResponseEntity<Map<String, Object>> limpiarCarrito(HttpSession session) {
-        // Eliminar el carrito de la sesión
-        session.removeAttribute("carrito");
-        
-        // Crear un nuevo carrito vacío para asegurar el estado limpio
-        session.setAttribute("carrito", new ArrayList<ItemCarrito>());
+        // Eliminar el carrito de la sesión (sin carrito = carrito vacío)
+        estadoSesion.eliminar(session, "carrito");
         
         Map<String, Object> response = new HashMap<>();
         response.put("success", true);
@@ -5,10 +5,15 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.sivil.systeam.entity.*;
 import com.sivil.systeam.repository.*;
 import com.sivil.systeam.service.CompraService;
-import com.sivil.systeam.service.NumeracionFacturaService;
+import com.sivil.systeam.service.GeneradorNumeroOrden;
+import com.sivil.systeam.service.LibroCache;
+import com.sivil.systeam.service.ReservaStockService;
+import com.sivil.systeam.service.sesion.EstadoSesion;
 import com.sivil.systeam.dto.CompraTemporalDTO;
+import com.sivil.systeam.service.dto.CompraResumen;
+import com.sivil.systeam.service.dto.PaginaCursor;
+import com.sivil.systeam.service.dto.UsuarioSesion;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.Sort;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
@@ -49,14 +54,25 @@ public class CompraOnlineController {
 
 
     @Autowired
-    private NumeracionFacturaService numeracionService;
+    private GeneradorNumeroOrden generadorNumeroOrden;
+
+    @Autowired
+    private EstadoSesion estadoSesion;
+
+    @Autowired
+    private ReservaStockService reservaStockService;
+
+    @Autowired
+    private LibroCache libroCache;
+
+    private static final int COMPRAS_POR_PAGINA = 12;
 
     @GetMapping("/crear")
     public String mostrarFormularioComprarLibros(Model model, HttpSession session) {
         // Obtener carrito de la sesión
         @SuppressWarnings("unchecked")
         List<com.sivil.systeam.controller.CatalogoController.ItemCarrito> carrito = 
-            (List<com.sivil.systeam.controller.CatalogoController.ItemCarrito>) session.getAttribute("carrito");
+            (List<com.sivil.systeam.controller.CatalogoController.ItemCarrito>) estadoSesion.obtener(session, "carrito");
         
         // Si hay items en el carrito, los pasamos al modelo
         if (carrito != null && !carrito.isEmpty()) {
@@ -71,13 +87,16 @@ public class CompraOnlineController {
     @GetMapping("/api/libros/{id}/stock")
     @ResponseBody
     public ResponseEntity<Map<String, Object>> verificarStock(@PathVariable Integer id) {
-        Optional<Libro> libroOpt = libroRepository.findById(id);
+        Optional<Libro> libroOpt = libroCache.obtener(id);
         if (libroOpt.isPresent()) {
             Map<String, Object> response = new HashMap<>();
             response.put("id", id);
             response.put("titulo", libroOpt.get().getTitulo());
             response.put("stock", libroOpt.get().getCantidad_stock());
-            response.put("disponible", libroOpt.get().getCantidad_stock() > 0);
+            // Descontando las unidades apartadas por compras pendientes de pago
+            int disponibleParaVenta = reservaStockService.disponible(libroOpt.get());
+            response.put("disponibleParaVenta", disponibleParaVenta);
+            response.put("disponible", disponibleParaVenta > 0);
             return ResponseEntity.ok(response);
         }
         return ResponseEntity.notFound().build();
@@ -109,27 +128,25 @@ public class CompraOnlineController {
                 return "compra-online/crear-compra";
             }
 
-            // 2. Verificar stock disponible para todos los libros
+            // 2. Apartar el stock mientras se completa el pago (reemplaza la reserva de una
+            //    compra pendiente anterior de esta sesión)
+            CompraTemporalDTO compraAnterior = (CompraTemporalDTO) estadoSesion.obtener(session, "compraPendiente");
+            if (compraAnterior != null) {
+                reservaStockService.liberar(compraAnterior.getNumeroOrden());
+            }
+            Map<Integer, Integer> cantidades = new HashMap<>();
             for (LibroCompraRequest detalleRequest : detallesRequest) {
-                Optional<Libro> libroOpt = libroRepository.findById(detalleRequest.getId());
-                if (libroOpt.isEmpty()) {
-                    model.addAttribute("error", "Libro no encontrado: " + detalleRequest.getId());
-                    model.addAttribute("libros", libroRepository.findByEstadoAndCantidad_stockGreaterThan(
-                        com.sivil.systeam.enums.Estado.activo, 0));
-                    model.addAttribute("avisoTemporal", true);
-                    return "compra-online/crear-compra";
-                }
-
-                Libro libro = libroOpt.get();
-                if (libro.getCantidad_stock() < detalleRequest.getCantidad()) {
-                    model.addAttribute("error", "Stock insuficiente para: " + libro.getTitulo() +
-                            ". Stock disponible: " + libro.getCantidad_stock() +
-                            ". Cantidad solicitada: " + detalleRequest.getCantidad());
-                    model.addAttribute("libros", libroRepository.findByEstadoAndCantidad_stockGreaterThan(
-                        com.sivil.systeam.enums.Estado.activo, 0));
-                    model.addAttribute("avisoTemporal", true);
-                    return "compra-online/crear-compra";
-                }
+                cantidades.merge(detalleRequest.getId(), detalleRequest.getCantidad(), Integer::sum);
+            }
+            String numeroOrden = generadorNumeroOrden.siguiente();
+            try {
+                reservaStockService.reservar(numeroOrden, cantidades);
+            } catch (IllegalArgumentException e) {
+                model.addAttribute("error", e.getMessage());
+                model.addAttribute("libros", libroRepository.findByEstadoAndCantidad_stockGreaterThan(
+                    com.sivil.systeam.enums.Estado.activo, 0));
+                model.addAttribute("avisoTemporal", true);
+                return "compra-online/crear-compra";
             }
 
             // 3. Calcular totales de la compra
@@ -143,12 +160,12 @@ public class CompraOnlineController {
             BigDecimal totalCompra = subtotalCompra.add(impuestos);
 
             // 4. Obtener usuario actual del modelo (agregado por GlobalControllerAdvice)
-            Usuario usuarioActual = (Usuario) model.getAttribute("currentUser");
+            UsuarioSesion usuarioActual = (UsuarioSesion) model.getAttribute("currentUser");
 
 
             // 5. Crear CompraTemporalDTO y guardar en sesión
             CompraTemporalDTO compraTemporal = new CompraTemporalDTO();
-            compraTemporal.setNumeroOrden(numeracionService.generarNumeroFactura(compraOnlineRepository));
+            compraTemporal.setNumeroOrden(numeroOrden);
             compraTemporal.setComprador(usuarioActual);
             compraTemporal.setNombreCliente(nombreCliente);
             compraTemporal.setContactoCliente(contactoCliente);
@@ -177,10 +194,10 @@ public class CompraOnlineController {
             compraTemporal.setDetallesCompra(detallesTemporal);
 
             // 6. Guardar en sesión
-            session.setAttribute("compraPendiente", compraTemporal);
+            estadoSesion.guardar(session, "compraPendiente", compraTemporal);
             
             // 7. Limpiar carrito de la sesión después de procesar
-            session.removeAttribute("carrito");
+            estadoSesion.eliminar(session, "carrito");
 
             // 8. Redirigir a pago con tarjeta
             return "redirect:/pago/tarjeta?monto=" + totalCompra + "&compraPendiente=true";
@@ -198,17 +215,29 @@ public class CompraOnlineController {
     // Endpoint para obtener historial de compras del usuario
     // en el controller que tiene @RequestMapping("/compra-online") a nivel de clase
     @GetMapping("/mis-compras")
-    public String mostrarMisCompras(@ModelAttribute("currentUser") Usuario usuarioActual,
-                                    @RequestParam(value = "q", required = false) String q,
+    public String mostrarMisCompras(@RequestParam(value = "q", required = false) String q,
+                                    @RequestParam(value = "after", required = false) String after,
                                     Model model) {
+        UsuarioSesion usuarioActual = (UsuarioSesion) model.getAttribute("currentUser");
         if (usuarioActual == null) return "redirect:/login";
 
         String query = (q == null) ? "" : q.trim();
-        Sort sort = Sort.unsorted(); // porque tu repo lo pide
 
-        List<CompraOnline> compras = query.isEmpty()
-                ? compraOnlineRepository.findAllByComprador(usuarioActual.getId_usuario(), sort)
-                : compraOnlineRepository.findAllByCompradorAndNumero(usuarioActual.getId_usuario(), query, sort);
+        // Modo cursor (opcional): solo aplica al listado sin búsqueda
+        if (after != null && query.isEmpty()) {
+            PaginaCursor<CompraResumen> pagina;
+            try {
+                pagina = compraService.listarPorUsuarioDespuesDe(usuarioActual.idUsuario(), after, COMPRAS_POR_PAGINA);
+            } catch (IllegalArgumentException e) {
+                pagina = compraService.listarPorUsuarioDespuesDe(usuarioActual.idUsuario(), null, COMPRAS_POR_PAGINA);
+            }
+            model.addAttribute("compras", pagina.contenido());
+            model.addAttribute("siguienteCursor", pagina.siguienteCursor());
+            model.addAttribute("modoCursor", true);
+            model.addAttribute("q", query);
+            return "compra-online/mis-compras";
+        }
+        List<CompraResumen> compras = compraService.listarResumenesPorUsuario(usuarioActual.idUsuario(), query);
 
         model.addAttribute("compras", compras);
         model.addAttribute("q", query);
@@ -0,0 +1,52 @@
+package com.sivil.systeam.controller;
+
+import com.sivil.systeam.service.ExportacionService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+
+/**
+ * Descarga de exportaciones CSV (solo administradores)
+ *
+ * - GET /exportar/ventas.csv?desde=&hasta=
+ * - GET /exportar/compras.csv?desde=&hasta=
+ * - GET /exportar/libros.csv
+ */
+@Controller
+@RequestMapping("/exportar")
+public class ExportacionController {
+
+    private static final MediaType CSV = new MediaType("text", "csv", StandardCharsets.UTF_8);
+
+    @Autowired
+    private ExportacionService exportacionService;
+
+    @GetMapping("/{tipo}.csv")
+    public ResponseEntity<StreamingResponseBody> exportar(
+            @PathVariable("tipo") ExportacionService.Tipo tipo,
+            @RequestParam(value = "desde", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate desde,
+            @RequestParam(value = "hasta", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate hasta) {
+        if (desde != null && hasta != null && desde.isAfter(hasta)) {
+            return ResponseEntity.badRequest().build();
+        }
+        // El cuerpo se genera en otro hilo mientras se envía; la consulta no empieza hasta entonces
+        StreamingResponseBody cuerpo = salida -> exportacionService.exportarCsv(tipo, desde, hasta, salida);
+        return ResponseEntity.ok()
+                .contentType(CSV)
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                        .filename(ExportacionService.nombreArchivo(tipo)).build().toString())
+                .body(cuerpo);
+    }
+}
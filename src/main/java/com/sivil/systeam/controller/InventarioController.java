@@ -1,17 +1,33 @@
 package com.sivil.systeam.controller;
 
 import com.sivil.systeam.entity.Libro;
+import com.sivil.systeam.service.AjusteStockService;
+import com.sivil.systeam.service.ImportacionLibrosService;
 import com.sivil.systeam.service.InventarioService;
+import com.sivil.systeam.service.StockStreamService;
+import com.sivil.systeam.service.dto.AjusteStockRequest;
+import com.sivil.systeam.service.dto.LibroCard;
+import com.sivil.systeam.service.dto.ResultadoImportacion;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.security.Principal;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Controlador principal para el manejo del inventario de libros
@@ -24,6 +40,9 @@ import java.util.List;
  * - POST /libro(s)
  * - GET /libro(s)/{id}/editar
  * - POST /libro(s)/{id}
+ * - POST /libros/importar (archivo CSV o JSON Lines)
+ * - POST /api/stock/ajustes (ajuste de stock por lote)
+ * - GET /api/stock/stream (stock en tiempo real por Server-Sent Events)
  */
 @Controller
 @RequestMapping
@@ -32,18 +51,29 @@ public class InventarioController {
     @Autowired
     private InventarioService inventarioService;
 
+    @Autowired
+    private ImportacionLibrosService importacionLibrosService;
+
+    @Autowired
+    private AjusteStockService ajusteStockService;
+
+    @Autowired
+    private StockStreamService stockStreamService;
+
+    private static final int MAX_ERRORES_EN_PANTALLA = 50;
+
     // ============================================================
     // INVENTARIO (LISTADO)
     // ============================================================
     @GetMapping("/stock")
     public String mostrarInventario(Model model) {
         try {
-            List<Libro> libros = inventarioService.obtenerTodosLosLibros();
+            List<LibroCard> libros = inventarioService.obtenerTodosLosLibros();
             model.addAttribute("libros", libros);
             model.addAttribute("totalLibros", libros.size());
 
             long librosStockBajo = libros.stream()
-                    .filter(Libro::tieneStockBajo)
+                    .filter(LibroCard::tieneStockBajo)
                     .count();
             model.addAttribute("librosStockBajo", librosStockBajo);
 
@@ -148,6 +178,83 @@ public class InventarioController {
         }
     }
 
+    // ============================================================
+    // IMPORTACIÓN MASIVA
+    // ============================================================
+    // Formulario del inventario (multipart)
+    @PostMapping("/libros/importar")
+    public String importarLibros(@RequestParam("archivo") MultipartFile archivo,
+                                 RedirectAttributes redirect) {
+        if (archivo == null || archivo.isEmpty()) {
+            redirect.addFlashAttribute("error", "Seleccione un archivo CSV o JSON Lines");
+            return "redirect:/stock";
+        }
+        try (InputStream entrada = archivo.getInputStream()) {
+            ResultadoImportacion resultado = importacionLibrosService.importar(
+                    entrada, ImportacionLibrosService.Formato.deArchivo(archivo.getOriginalFilename()));
+            redirect.addFlashAttribute("ok", String.format(
+                    "Importación terminada: %d filas leídas, %d libros nuevos, %d actualizados, %d con errores",
+                    resultado.filasLeidas(), resultado.insertados(), resultado.actualizados(), resultado.totalErrores()));
+            if (!resultado.errores().isEmpty()) {
+                redirect.addFlashAttribute("erroresImportacion",
+                        resultado.errores().subList(0, Math.min(resultado.errores().size(), MAX_ERRORES_EN_PANTALLA)));
+            }
+        } catch (IllegalArgumentException e) {
+            redirect.addFlashAttribute("error", e.getMessage());
+        } catch (IOException e) {
+            redirect.addFlashAttribute("error", "No se pudo leer el archivo: " + e.getMessage());
+        }
+        return "redirect:/stock";
+    }
+
+    // API: el cuerpo de la petición es el archivo (text/csv o application/x-ndjson), leído sin copiarlo
+    @PostMapping("/api/libros/importar")
+    @ResponseBody
+    public ResponseEntity<?> importarLibrosApi(@RequestParam(value = "formato", required = false) String formato,
+                                               HttpServletRequest request) {
+        try {
+            ImportacionLibrosService.Formato tipo = formato != null
+                    ? ImportacionLibrosService.Formato.valueOf(formato.toLowerCase())
+                    : (request.getContentType() != null && request.getContentType().contains("json")
+                        ? ImportacionLibrosService.Formato.jsonl : ImportacionLibrosService.Formato.csv);
+            return ResponseEntity.ok(importacionLibrosService.importar(request.getInputStream(), tipo));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (IOException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", "No se pudo leer el archivo: " + e.getMessage()));
+        }
+    }
+
+    // ============================================================
+    // AJUSTE DE STOCK POR LOTE
+    // ============================================================
+    // Ej.: {"referencia": "GUIA-123", "lineas": [{"codigo": "LIB001", "delta": 20}, ...]}
+    @PostMapping("/api/stock/ajustes")
+    @ResponseBody
+    public ResponseEntity<?> ajustarStock(@RequestBody AjusteStockRequest ajuste, Principal principal) {
+        try {
+            return ResponseEntity.ok(ajusteStockService.ajustar(ajuste, principal != null ? principal.getName() : null));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    // ============================================================
+    // STOCK EN TIEMPO REAL (SSE)
+    // ============================================================
+    // Ej.: GET /api/stock/stream?ids=1,2,3 -> event: stock, data: [{"idLibro":1,"stock":7}, ...]
+    @GetMapping(value = "/api/stock/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @ResponseBody
+    public SseEmitter streamStock(@RequestParam("ids") List<Integer> ids) {
+        try {
+            return stockStreamService.suscribir(ids);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        } catch (IllegalStateException e) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, e.getMessage());
+        }
+    }
+
     // ============================================================
     // DETALLE / ELIMINACIÓN
     // ============================================================
@@ -3,15 +3,18 @@ package com.sivil.systeam.controller;
 import com.sivil.systeam.dto.CompraTemporalDTO;
 import com.sivil.systeam.dto.VentaTemporalDTO;
 import com.sivil.systeam.entity.Pago;
-import com.sivil.systeam.entity.Usuario;
+import com.sivil.systeam.service.IdempotenciaPagoService;
 import com.sivil.systeam.service.PagoService;
 import com.sivil.systeam.service.UsuarioService;
+import com.sivil.systeam.service.dto.UsuarioSesion;
+import com.sivil.systeam.service.sesion.EstadoSesion;
 import jakarta.servlet.http.HttpSession;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
 
 import java.math.BigDecimal;
+import java.util.UUID;
 
 @Controller
 @RequestMapping("/pago")
@@ -19,10 +22,20 @@ public class PagoController {
 
     private final PagoService pagoService;
     private final UsuarioService usuarioService;
+    private final EstadoSesion estadoSesion;
+    private final IdempotenciaPagoService idempotenciaPagoService;
 
-    public PagoController(PagoService pagoService, UsuarioService usuarioService) {
+    public PagoController(PagoService pagoService, UsuarioService usuarioService, EstadoSesion estadoSesion,
+                          IdempotenciaPagoService idempotenciaPagoService) {
         this.pagoService = pagoService;
         this.usuarioService = usuarioService;
+        this.estadoSesion = estadoSesion;
+        this.idempotenciaPagoService = idempotenciaPagoService;
+    }
+
+    // Clave única por formulario de pago (ver IdempotenciaPagoService)
+    private static String nuevaClave() {
+        return UUID.randomUUID().toString();
     }
 
     /* ==============================
@@ -38,6 +51,7 @@ public class PagoController {
         if (monto != null) model.addAttribute("montoAPagar", monto);
         if (idCompra != null) model.addAttribute("idCompra", idCompra);
         if (idVenta != null) model.addAttribute("idVenta", idVenta);
+        model.addAttribute("claveIdempotencia", nuevaClave());
         return "pago/pago-tarjeta";
     }
 
@@ -55,6 +69,7 @@ public class PagoController {
         if (idVenta != null) model.addAttribute("idVenta", idVenta);
         if (Boolean.TRUE.equals(ventaPendiente)) model.addAttribute("ventaPendiente", true);
         if (Boolean.TRUE.equals(compraPendiente)) model.addAttribute("compraPendiente", true);
+        model.addAttribute("claveIdempotencia", nuevaClave());
         return "pago/pago-tarjeta";
     }
 
@@ -70,47 +85,52 @@ public class PagoController {
                                       @RequestParam(value = "idVenta", required = false) Integer idVenta,
                                       @RequestParam(value = "ventaPendiente", required = false) Boolean ventaPendiente,
                                       @RequestParam(value = "compraPendiente", required = false) Boolean compraPendiente,
+                                      @RequestParam(value = "claveIdempotencia", required = false) String claveIdempotencia,
                                       HttpSession session,
                                       Model model) {
         try {
             Pago pago = new Pago();
             pago.setMonto(monto);
 
+            // Un reintento con la misma clave devuelve el pago ya procesado
             if (Boolean.TRUE.equals(ventaPendiente)) {
-                VentaTemporalDTO ventaTemporal = (VentaTemporalDTO) session.getAttribute("ventaPendiente");
-                if (ventaTemporal == null) {
-                    model.addAttribute("error", "La sesión de venta ha expirado. Por favor inicie la venta nuevamente.");
-                    return "pago/pago-tarjeta";
-                }
-                Pago pagoProcesado = pagoService.procesarPagoConVentaPendiente(
-                        numeroTarjeta, fechaVencimiento, cvv,
-                        nombreTitular, email, direccion, pago, ventaTemporal);
-                session.removeAttribute("ventaPendiente");
+                Pago pagoProcesado = idempotenciaPagoService.ejecutar(estadoSesion.dueno(session), claveIdempotencia, () -> {
+                    VentaTemporalDTO ventaTemporal = (VentaTemporalDTO) estadoSesion.obtener(session, "ventaPendiente");
+                    if (ventaTemporal == null) {
+                        throw new IllegalArgumentException("La sesión de venta ha expirado. Por favor inicie la venta nuevamente.");
+                    }
+                    return pagoService.procesarPagoConVentaPendiente(
+                            numeroTarjeta, fechaVencimiento, cvv,
+                            nombreTitular, email, direccion, pago, ventaTemporal);
+                });
+                estadoSesion.eliminar(session, "ventaPendiente");
                 model.addAttribute("mensaje", "✅ Pago procesado correctamente - Venta creada");
                 model.addAttribute("pago", pagoProcesado);
                 model.addAttribute("numeroTarjetaOculto", "****-****-****-" + numeroTarjeta.substring(numeroTarjeta.length() - 4));
                 return "pago/pago-confirmacion";
 
             } else if (Boolean.TRUE.equals(compraPendiente)) {
-                CompraTemporalDTO compraTemporal = (CompraTemporalDTO) session.getAttribute("compraPendiente");
-                if (compraTemporal == null) {
-                    model.addAttribute("error", "La sesión de compra ha expirado. Por favor inicie la compra nuevamente.");
-                    return "pago/pago-tarjeta";
-                }
-                Pago pagoProcesado = pagoService.procesarPagoConCompraPendiente(
-                        numeroTarjeta, fechaVencimiento, cvv,
-                        nombreTitular, email, direccion, pago, compraTemporal);
-                session.removeAttribute("compraPendiente");
-                model.addAttribute("mensaje", "✅ Compra realizada exitosamente - Orden: " + compraTemporal.getNumeroOrden());
+                Pago pagoProcesado = idempotenciaPagoService.ejecutar(estadoSesion.dueno(session), claveIdempotencia, () -> {
+                    CompraTemporalDTO compraTemporal = (CompraTemporalDTO) estadoSesion.obtener(session, "compraPendiente");
+                    if (compraTemporal == null) {
+                        throw new IllegalArgumentException("La sesión de compra ha expirado. Por favor inicie la compra nuevamente.");
+                    }
+                    return pagoService.procesarPagoConCompraPendiente(
+                            numeroTarjeta, fechaVencimiento, cvv,
+                            nombreTitular, email, direccion, pago, compraTemporal);
+                });
+                estadoSesion.eliminar(session, "compraPendiente");
+                model.addAttribute("mensaje", "✅ Compra realizada exitosamente - Orden: " + pagoProcesado.getCompra().getNumero_orden());
                 model.addAttribute("pago", pagoProcesado);
                 model.addAttribute("numeroTarjetaOculto", "****-****-****-" + numeroTarjeta.substring(numeroTarjeta.length() - 4));
                 model.addAttribute("esCompraOnline", true);
                 return "pago/pago-confirmacion";
 
             } else {
-                Pago pagoProcesado = pagoService.procesarPago(
-                        numeroTarjeta, fechaVencimiento, cvv,
-                        nombreTitular, email, direccion, pago, idCompra, idVenta);
+                Pago pagoProcesado = idempotenciaPagoService.ejecutar(estadoSesion.dueno(session), claveIdempotencia, () ->
+                        pagoService.procesarPago(
+                                numeroTarjeta, fechaVencimiento, cvv,
+                                nombreTitular, email, direccion, pago, idCompra, idVenta));
                 if (idCompra == null && idVenta == null) {
                     model.addAttribute("mensaje", "✅ Pago procesado correctamente");
                     model.addAttribute("esSimulacion", true);
@@ -129,6 +149,7 @@ public class PagoController {
             model.addAttribute("nombreTitular", nombreTitular);
             model.addAttribute("email", email);
             model.addAttribute("direccion", direccion);
+            model.addAttribute("claveIdempotencia", claveIdempotencia != null ? claveIdempotencia : nuevaClave());
             if (Boolean.TRUE.equals(ventaPendiente)) model.addAttribute("ventaPendiente", true);
             if (Boolean.TRUE.equals(compraPendiente)) model.addAttribute("compraPendiente", true);
             return "pago/pago-tarjeta";
@@ -149,6 +170,7 @@ public class PagoController {
         model.addAttribute("montoAPagar", monto);
         if (idVenta != null) model.addAttribute("idVenta", idVenta);
         if (Boolean.TRUE.equals(ventaPendiente)) model.addAttribute("ventaPendiente", true);
+        model.addAttribute("claveIdempotencia", nuevaClave());
         return "pago/pago-efectivo-venta";
     }
 
@@ -159,21 +181,23 @@ public class PagoController {
                                     @RequestParam("monto") BigDecimal montoRecibido,
                                     @RequestParam(value = "idVenta", required = false) Integer idVenta,
                                     @RequestParam(value = "ventaPendiente", required = false) Boolean ventaPendiente,
-                                    @RequestParam(value = "observaciones", required = false) String observaciones) {
+                                    @RequestParam(value = "observaciones", required = false) String observaciones,
+                                    @RequestParam(value = "claveIdempotencia", required = false) String claveIdempotencia) {
 
         try {
             // Recuperar vendedor actual del sistema de autenticación
-            Usuario vendedor = usuarioService.getUsuarioActual();
-            String emailVendedor = vendedor != null ? vendedor.getEmail() : null;
+            UsuarioSesion vendedor = usuarioService.getSesionActual();
+            String emailVendedor = vendedor != null ? vendedor.email() : null;
 
             // 1) Venta ya existente
             if (idVenta != null) {
-                Pago pago = pagoService.procesarPagoEfectivoVenta(
-                        idVenta,
-                        montoRecibido,
-                        observaciones,
-                        emailVendedor
-                );
+                Pago pago = idempotenciaPagoService.ejecutar(estadoSesion.dueno(session), claveIdempotencia, () ->
+                        pagoService.procesarPagoEfectivoVenta(
+                                idVenta,
+                                montoRecibido,
+                                observaciones,
+                                emailVendedor
+                        ));
                 model.addAttribute("mensaje", "✅ Pago en efectivo registrado correctamente.");
                 model.addAttribute("pago", pago);
                 return "pago/pago-confirmacion";
@@ -181,22 +205,21 @@ public class PagoController {
 
             // 2) Venta temporal en sesión
             if (Boolean.TRUE.equals(ventaPendiente)) {
-                VentaTemporalDTO ventaTemporal = (VentaTemporalDTO) session.getAttribute("ventaPendiente");
-                if (ventaTemporal == null) {
-                    model.addAttribute("error", "La sesión de venta ha expirado. Vuelve a iniciar la venta.");
-                    model.addAttribute("montoAPagar", montoRecibido);
-                    model.addAttribute("ventaPendiente", true);
-                    return "pago/pago-efectivo-venta";
-                }
-
-                Pago pago = pagoService.procesarPagoEfectivoVentaPendiente(
-                        ventaTemporal,
-                        montoRecibido,
-                        observaciones,
-                        emailVendedor
-                );
-
-                session.removeAttribute("ventaPendiente");
+                // Un reintento con la misma clave devuelve el pago ya procesado
+                Pago pago = idempotenciaPagoService.ejecutar(estadoSesion.dueno(session), claveIdempotencia, () -> {
+                    VentaTemporalDTO ventaTemporal = (VentaTemporalDTO) estadoSesion.obtener(session, "ventaPendiente");
+                    if (ventaTemporal == null) {
+                        throw new IllegalArgumentException("La sesión de venta ha expirado. Vuelve a iniciar la venta.");
+                    }
+                    return pagoService.procesarPagoEfectivoVentaPendiente(
+                            ventaTemporal,
+                            montoRecibido,
+                            observaciones,
+                            emailVendedor
+                    );
+                });
+
+                estadoSesion.eliminar(session, "ventaPendiente");
                 model.addAttribute("mensaje", "✅ Venta creada y pagada en efectivo correctamente.");
                 model.addAttribute("pago", pago);
                 return "pago/pago-confirmacion";
@@ -210,6 +233,7 @@ public class PagoController {
         } catch (IllegalArgumentException ex) {
             model.addAttribute("error", ex.getMessage());
             model.addAttribute("montoAPagar", montoRecibido);
+            model.addAttribute("claveIdempotencia", claveIdempotencia != null ? claveIdempotencia : nuevaClave());
             if (idVenta != null) model.addAttribute("idVenta", idVenta);
             if (Boolean.TRUE.equals(ventaPendiente)) model.addAttribute("ventaPendiente", true);
             return "pago/pago-efectivo-venta";
@@ -217,6 +241,7 @@ public class PagoController {
         } catch (Exception ex) {
             model.addAttribute("error", "Ocurrió un error al registrar el pago en efectivo.");
             model.addAttribute("montoAPagar", montoRecibido);
+            model.addAttribute("claveIdempotencia", claveIdempotencia != null ? claveIdempotencia : nuevaClave());
             if (idVenta != null) model.addAttribute("idVenta", idVenta);
             if (Boolean.TRUE.equals(ventaPendiente)) model.addAttribute("ventaPendiente", true);
             return "pago/pago-efectivo-venta";
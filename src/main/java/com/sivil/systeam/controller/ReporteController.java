@@ -0,0 +1,98 @@
+package com.sivil.systeam.controller;
+
+import com.sivil.systeam.service.ReporteVentasService;
+import com.sivil.systeam.service.RollupVentasService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.LocalDate;
+import java.util.Map;
+
+/**
+ * API de reportes de ventas (tablas resumen diarias)
+ *
+ * - GET  /api/reportes/top-vendidos?desde=&hasta=&limite=
+ * - GET  /api/reportes/ingresos?desde=&hasta=&periodo=dia|semana|mes
+ * - GET  /api/reportes/vendedores?desde=&hasta=
+ * - POST /api/reportes/actualizar  (procesa los cambios pendientes sin esperar al proceso periódico)
+ *
+ * Sin fechas se usan los últimos 30 días.
+ * Responde 503 si las tablas resumen no están habilitadas (reportes.rollup.habilitado).
+ */
+@RestController
+@RequestMapping("/api/reportes")
+public class ReporteController {
+
+    private static final int DIAS_POR_DEFECTO = 30;
+
+    @Autowired
+    private ReporteVentasService reporteVentasService;
+
+    @Autowired
+    private RollupVentasService rollupVentasService;
+
+    @GetMapping("/top-vendidos")
+    public ResponseEntity<?> topVendidos(
+            @RequestParam(value = "desde", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate desde,
+            @RequestParam(value = "hasta", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate hasta,
+            @RequestParam(value = "limite", required = false, defaultValue = "10") int limite) {
+        try {
+            return ResponseEntity.ok(reporteVentasService.librosMasVendidos(desde(desde, hasta), hasta(hasta), limite));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (IllegalStateException e) {
+            return noDisponible(e);
+        }
+    }
+
+    @GetMapping("/ingresos")
+    public ResponseEntity<?> ingresos(
+            @RequestParam(value = "desde", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate desde,
+            @RequestParam(value = "hasta", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate hasta,
+            @RequestParam(value = "periodo", required = false, defaultValue = "dia") String periodo) {
+        try {
+            return ResponseEntity.ok(reporteVentasService.ingresosPorPeriodo(desde(desde, hasta), hasta(hasta), periodo));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (IllegalStateException e) {
+            return noDisponible(e);
+        }
+    }
+
+    @GetMapping("/vendedores")
+    public ResponseEntity<?> vendedores(
+            @RequestParam(value = "desde", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate desde,
+            @RequestParam(value = "hasta", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate hasta) {
+        try {
+            return ResponseEntity.ok(reporteVentasService.rendimientoVendedores(desde(desde, hasta), hasta(hasta)));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (IllegalStateException e) {
+            return noDisponible(e);
+        }
+    }
+
+    @PostMapping("/actualizar")
+    public ResponseEntity<?> actualizar() {
+        try {
+            return ResponseEntity.ok(Map.of("diasRecalculados", rollupVentasService.actualizar()));
+        } catch (IllegalStateException e) {
+            return noDisponible(e);
+        }
+    }
+
+    private static ResponseEntity<?> noDisponible(IllegalStateException e) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(Map.of("error", e.getMessage()));
+    }
+
+    private static LocalDate hasta(LocalDate hasta) {
+        return hasta != null ? hasta : LocalDate.now();
+    }
+
+    private static LocalDate desde(LocalDate desde, LocalDate hasta) {
+        return desde != null ? desde : hasta(hasta).minusDays(DIAS_POR_DEFECTO - 1);
+    }
+}
@@ -5,8 +5,18 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.sivil.systeam.entity.*;
 import com.sivil.systeam.repository.*;
 import com.sivil.systeam.service.*;
+import com.sivil.systeam.service.sesion.EstadoSesion;
 import com.sivil.systeam.dto.VentaTemporalDTO;
+import com.sivil.systeam.enums.EstadoVenta;
+import com.sivil.systeam.enums.TipoUsuario;
+import com.sivil.systeam.service.dto.FiltroVentas;
+import com.sivil.systeam.service.dto.MetricasVentas;
+import com.sivil.systeam.service.dto.PaginaCursor;
+import com.sivil.systeam.service.dto.UsuarioSesion;
+import com.sivil.systeam.service.dto.VentaResumen;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Page;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
@@ -16,6 +26,7 @@ import jakarta.servlet.http.HttpSession;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 
 import java.math.BigDecimal;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.*;
 
@@ -29,9 +40,6 @@ public class VentaController {
     @Autowired
     private VentaRepository ventaRepository;
 
-    @Autowired
-    private DetalleVentaRepository detalleVentaRepository;
-
     @Autowired
     private UsuarioRepository usuarioRepository;
 
@@ -47,11 +55,23 @@ public class VentaController {
     @Autowired
     private LibroService libroService;
 
+    @Autowired
+    private LibroCache libroCache;
+
+    @Autowired
+    private EstadoSesion estadoSesion;
+
+    @Autowired
+    private MetricasVentasService metricasVentasService;
+
+    private static final int VENTAS_POR_PAGINA = 50;
+    private static final int MAX_VENTAS_POR_PAGINA_API = 200;
+
     @GetMapping("/crear")
     public String mostrarFormularioCrearVenta(Model model) {
         Venta venta = new Venta();
-        String numeroFactura = numeracionService.generarNumeroFactura(ventaRepository);
-        venta.setNumero_factura(numeroFactura);
+        // El número real se toma de la secuencia al confirmar la venta
+        venta.setNumero_factura(numeracionService.vistaPreviaNumeroFactura());
 
         model.addAttribute("venta", venta);
         model.addAttribute("libros", libroRepository.findByEstadoAndCantidad_stockGreaterThan(com.sivil.systeam.enums.Estado.activo, 0));
@@ -61,7 +81,7 @@ public class VentaController {
     @GetMapping("/api/libros/{id}/stock")
     @ResponseBody
     public ResponseEntity<Map<String, Object>> verificarStock(@PathVariable Integer id) {
-        Optional<Libro> libroOpt = libroRepository.findById(id);
+        Optional<Libro> libroOpt = libroCache.obtener(id);
         if (libroOpt.isPresent()) {
             Map<String, Object> response = new HashMap<>();
             response.put("id", id);
@@ -74,24 +94,95 @@ public class VentaController {
     }
 
     @GetMapping("/listar")
-    public String listarVentas(Model model) {
-        // Listar TODAS las ventas (incluyendo inactivas)
-        List<Venta> ventas = ventaRepository.findAll();
-        // Ordenar por fecha de venta descendente
-        ventas.sort((v1, v2) -> {
-            if (v1.getFecha_venta() == null && v2.getFecha_venta() == null) return 0;
-            if (v1.getFecha_venta() == null) return 1;
-            if (v2.getFecha_venta() == null) return -1;
-            return v2.getFecha_venta().compareTo(v1.getFecha_venta());
-        });
-        model.addAttribute("ventas", ventas);
-        model.addAttribute("totalVentas", ventas.size());
-        model.addAttribute("ventasActivas", 0);
-        model.addAttribute("ventasHoy", 0);
-        model.addAttribute("promedioVenta", 0);
+    public String listarVentas(@RequestParam(value = "after", required = false) String after,
+                               @RequestParam(value = "desde", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate desde,
+                               @RequestParam(value = "hasta", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate hasta,
+                               @RequestParam(value = "estado", required = false) EstadoVenta estado,
+                               @RequestParam(value = "vendedor", required = false) Integer vendedor,
+                               @RequestParam(value = "cliente", required = false) String cliente,
+                               @RequestParam(value = "orden", required = false, defaultValue = "fecha-desc") String orden,
+                               @RequestParam(value = "pagina", required = false, defaultValue = "0") int pagina,
+                               Model model) {
+        // KPIs desde los acumulados en memoria (sin recorrer las ventas)
+        MetricasVentas metricas = metricasVentasService.obtener();
+        model.addAttribute("ventasActivas", metricas.ventasActivas());
+        model.addAttribute("ventasHoy", metricas.ventasHoy());
+        model.addAttribute("montoHoy", metricas.montoHoy());
+        model.addAttribute("promedioVenta", metricas.promedioVenta());
+        model.addAttribute("vendedores", usuarioRepository.buscarPorTipoUsuario(TipoUsuario.vendedor));
+
+        // Modo cursor (opcional): si viene "after" (aunque sea vacío) se pagina por keyset
+        if (after != null) {
+            PaginaCursor<VentaResumen> paginaCursor;
+            try {
+                paginaCursor = ventaService.listarVentasDespuesDe(after, VENTAS_POR_PAGINA);
+            } catch (IllegalArgumentException e) {
+                paginaCursor = ventaService.listarVentasDespuesDe(null, VENTAS_POR_PAGINA);
+            }
+            model.addAttribute("ventas", paginaCursor.contenido());
+            model.addAttribute("siguienteCursor", paginaCursor.siguienteCursor());
+            model.addAttribute("modoCursor", true);
+            // Sin total: el modo cursor no ejecuta conteo (la plantilla muestra un guion)
+            return "venta/listar-ventas";
+        }
+
+        // Filtros, orden y paginación en la BD (filas ya proyectadas, con el nombre del vendedor)
+        FiltroVentas filtro = new FiltroVentas(desde, hasta, estado, vendedor, cliente);
+        Page<VentaResumen> ventas;
+        try {
+            ventas = ventaService.buscarVentas(filtro, orden, pagina, VENTAS_POR_PAGINA);
+        } catch (IllegalArgumentException e) {
+            model.addAttribute("error", e.getMessage());
+            filtro = FiltroVentas.ninguno();
+            ventas = ventaService.buscarVentas(filtro, orden, 0, VENTAS_POR_PAGINA);
+        }
+        model.addAttribute("ventas", ventas.getContent());
+        model.addAttribute("paginaVentas", ventas);
+        model.addAttribute("filtro", filtro);
+        model.addAttribute("orden", orden);
+        model.addAttribute("totalVentas", ventas.getTotalElements());
         return "venta/listar-ventas";
     }
 
+    /**
+     * KPIs de ventas (ventas activas, del día, promedio y acumulados por vendedor y método de pago)
+     */
+    @GetMapping("/api/metricas")
+    @ResponseBody
+    public MetricasVentas obtenerMetricas() {
+        return metricasVentasService.obtener();
+    }
+
+    /**
+     * Listado de ventas en JSON con los mismos filtros que /ventas/listar
+     */
+    @GetMapping("/api/listado")
+    @ResponseBody
+    public ResponseEntity<Map<String, Object>> listarVentasApi(
+            @RequestParam(value = "desde", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate desde,
+            @RequestParam(value = "hasta", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate hasta,
+            @RequestParam(value = "estado", required = false) EstadoVenta estado,
+            @RequestParam(value = "vendedor", required = false) Integer vendedor,
+            @RequestParam(value = "cliente", required = false) String cliente,
+            @RequestParam(value = "orden", required = false, defaultValue = "fecha-desc") String orden,
+            @RequestParam(value = "pagina", required = false, defaultValue = "0") int pagina,
+            @RequestParam(value = "tamano", required = false, defaultValue = "50") int tamano) {
+        try {
+            Page<VentaResumen> ventas = ventaService.buscarVentas(
+                    new FiltroVentas(desde, hasta, estado, vendedor, cliente), orden, pagina,
+                    Math.min(Math.max(tamano, 1), MAX_VENTAS_POR_PAGINA_API));
+            Map<String, Object> response = new LinkedHashMap<>();
+            response.put("ventas", ventas.getContent());
+            response.put("pagina", ventas.getNumber());
+            response.put("tamano", ventas.getSize());
+            response.put("totalPaginas", ventas.getTotalPages());
+            response.put("totalVentas", ventas.getTotalElements());
+            return ResponseEntity.ok(response);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
     @GetMapping("/{id}/modificar")
     public String mostrarFormularioModificacion(@PathVariable("id") Integer id, Model model) {
         try {
@@ -133,6 +224,7 @@ public class VentaController {
             }
 
             Venta ventaExistente = ventaOpt.get();
+            BigDecimal totalAnterior = ventaExistente.getTotal();
 
             // Guardar los detalles originales para calcular diferencias de stock
             Map<Integer, Integer> cantidadesOriginales = new HashMap<>();
@@ -147,6 +239,7 @@ public class VentaController {
 
             BigDecimal subtotal = BigDecimal.ZERO;
             List<DetalleVenta> detallesAEliminar = new ArrayList<>();
+            List<DetalleVenta> detallesModificados = new ArrayList<>();
             Map<Integer, Integer> cambiosStock = new HashMap<>();
 
             // Procesar cada detalle de venta
@@ -194,8 +287,8 @@ public class VentaController {
 
                         subtotal = subtotal.add(subtotalItem);
 
-                        // GUARDAR EL DETALLE ACTUALIZADO EN LA BASE DE DATOS
-                        detalleVentaRepository.save(detalle);
+                        // Se guarda junto con el resto de la venta al final
+                        detallesModificados.add(detalle);
 
                     } catch (NumberFormatException e) {
                         subtotal = subtotal.add(detalle.getSubtotal_item());
@@ -205,11 +298,8 @@ public class VentaController {
                 }
             }
 
-            // Eliminar detalles marcados para eliminación
-            for (DetalleVenta detalle : detallesAEliminar) {
-                ventaExistente.getDetallesVenta().remove(detalle);
-                detalleVentaRepository.delete(detalle);
-            }
+            // Quitar de la venta los detalles marcados para eliminación (se borran al guardar)
+            ventaExistente.getDetallesVenta().removeAll(detallesAEliminar);
 
             // Validar que la venta tenga al menos un detalle
             if (ventaExistente.getDetallesVenta().isEmpty()) {
@@ -239,26 +329,9 @@ public class VentaController {
             ventaExistente.setImpuestos(impuestos);
             ventaExistente.setTotal(total);
 
-            // ACTUALIZAR STOCK DE LOS LIBROS
-            for (Map.Entry<Integer, Integer> entry : cambiosStock.entrySet()) {
-                Integer libroId = entry.getKey();
-                Integer diferenciaStock = entry.getValue();
-
-                Optional<Libro> libroOpt = libroRepository.findById(libroId);
-                if (libroOpt.isPresent()) {
-                    Libro libro = libroOpt.get();
-                    int nuevoStock = libro.getCantidad_stock() + diferenciaStock;
-                    if (nuevoStock < 0) {
-                        model.addAttribute("error", "Error: Stock no puede ser negativo para " + libro.getTitulo());
-                        return "redirect:/ventas/" + id + "/modificar";
-                    }
-                    libro.setCantidad_stock(nuevoStock);
-                    libroRepository.save(libro);
-                }
-            }
-
-            // Guardar los cambios de la venta
-            ventaRepository.save(ventaExistente);
+            // Stock (UPDATE condicional, respeta apartados), detalles y venta en una sola transacción
+            ventaService.guardarModificacion(ventaExistente, detallesModificados, detallesAEliminar,
+                    cambiosStock, totalAnterior);
 
             model.addAttribute("ok", "Venta actualizada correctamente.");
             return "redirect:/ventas/listar";
@@ -291,7 +364,7 @@ public class VentaController {
                 return "venta/crear-venta";
             }
 
-            Usuario vendedor = (Usuario) model.getAttribute("currentUser");
+            UsuarioSesion vendedor = (UsuarioSesion) model.getAttribute("currentUser");
             if (vendedor == null) {
                 model.addAttribute("error", "No se pudo identificar al vendedor. Por favor inicie sesión nuevamente.");
                 model.addAttribute("libros", libroRepository.findByEstadoAndCantidad_stockGreaterThan(com.sivil.systeam.enums.Estado.activo, 0));
@@ -342,7 +415,7 @@ public class VentaController {
             BigDecimal totalVenta = baseImponible.add(impuestos);
 
             VentaTemporalDTO ventaTemporal = new VentaTemporalDTO();
-            ventaTemporal.setNumeroFactura(numeracionService.generarNumeroFactura(ventaRepository));
+            // El número de factura se asigna en PagoService al registrar la venta pagada
             ventaTemporal.setVendedor(vendedor);
             ventaTemporal.setNombreCliente(venta.getNombre_cliente());
             ventaTemporal.setContactoCliente(venta.getContacto_cliente());
@@ -373,7 +446,7 @@ public class VentaController {
             }
             ventaTemporal.setDetallesVenta(detallesTemporal);
 
-            session.setAttribute("ventaPendiente", ventaTemporal);
+            estadoSesion.guardar(session, "ventaPendiente", ventaTemporal);
 
             // Redirigir según el método de pago seleccionado
             if (tipoPago.equals("efectivo")) {
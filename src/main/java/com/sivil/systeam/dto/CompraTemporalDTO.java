@@ -1,8 +1,8 @@
 package com.sivil.systeam.dto;
 
-import com.sivil.systeam.entity.Usuario;
 import com.sivil.systeam.enums.EstadoCompra;
 import com.sivil.systeam.enums.MetodoPago;
+import com.sivil.systeam.service.dto.UsuarioSesion;
 
 import java.io.Serializable;
 import java.math.BigDecimal;
@@ -11,8 +11,10 @@ import java.util.List;
 
 public class CompraTemporalDTO implements Serializable {
 
+    private static final long serialVersionUID = 1L;
+
     private String numeroOrden;
-    private Usuario comprador;
+    private UsuarioSesion comprador; // datos de la sesión, no la entidad (se serializa)
     private String nombreCliente;
     private String contactoCliente;
     private String identificacionCliente;
@@ -30,6 +32,8 @@ public class CompraTemporalDTO implements Serializable {
 
     // Clase interna para los detalles
     public static class DetalleCompraTemporalDTO implements Serializable {
+        private static final long serialVersionUID = 1L;
+
         private Integer libroId;
         private String tituloLibro;
         private Integer cantidad;
@@ -68,8 +72,8 @@ public class CompraTemporalDTO implements Serializable {
     public String getNumeroOrden() { return numeroOrden; }
     public void setNumeroOrden(String numeroOrden) { this.numeroOrden = numeroOrden; }
 
-    public Usuario getComprador() { return comprador; }
-    public void setComprador(Usuario comprador) { this.comprador = comprador; }
+    public UsuarioSesion getComprador() { return comprador; }
+    public void setComprador(UsuarioSesion comprador) { this.comprador = comprador; }
 
     public String getNombreCliente() { return nombreCliente; }
     public void setNombreCliente(String nombreCliente) { this.nombreCliente = nombreCliente; }
@@ -1,21 +1,25 @@
 package com.sivil.systeam.dto;
 
-import com.sivil.systeam.entity.Usuario;
 import com.sivil.systeam.enums.EstadoVenta;
 import com.sivil.systeam.enums.MetodoPago;
+import com.sivil.systeam.service.dto.UsuarioSesion;
 
+import java.io.Serializable;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.List;
 
 /**
  * DTO para almacenar temporalmente los datos de venta en sesión
- * antes de confirmar el pago
+ * antes de confirmar el pago.
+ * El vendedor se guarda como UsuarioSesion (no la entidad) para poder serializarlo
  */
-public class VentaTemporalDTO {
+public class VentaTemporalDTO implements Serializable {
+
+    private static final long serialVersionUID = 1L;
 
     private String numeroFactura;
-    private Usuario vendedor;
+    private UsuarioSesion vendedor;
     private String nombreCliente;
     private String contactoCliente;
     private String identificacionCliente;
@@ -35,8 +39,8 @@ public class VentaTemporalDTO {
     public String getNumeroFactura() { return numeroFactura; }
     public void setNumeroFactura(String numeroFactura) { this.numeroFactura = numeroFactura; }
 
-    public Usuario getVendedor() { return vendedor; }
-    public void setVendedor(Usuario vendedor) { this.vendedor = vendedor; }
+    public UsuarioSesion getVendedor() { return vendedor; }
+    public void setVendedor(UsuarioSesion vendedor) { this.vendedor = vendedor; }
 
     public String getNombreCliente() { return nombreCliente; }
     public void setNombreCliente(String nombreCliente) { this.nombreCliente = nombreCliente; }
@@ -74,7 +78,9 @@ public class VentaTemporalDTO {
     /**
      * DTO para los detalles de venta temporales
      */
-    public static class DetalleVentaTemporalDTO {
+    public static class DetalleVentaTemporalDTO implements Serializable {
+        private static final long serialVersionUID = 1L;
+
         private Integer idLibro;
         private String tituloLibro;
         private Integer cantidad;
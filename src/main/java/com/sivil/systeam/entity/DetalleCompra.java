@@ -9,7 +9,11 @@ import java.math.BigDecimal;
 public class DetalleCompra {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    // Secuencia del SERIAL con INCREMENT BY 50 (optimizador pooled): los detalles se insertan
+    // en lote al hacer flush (ver "Inserción en lote de detalles" en docs/sivil_database_design.md).
+    // Sin esa migración se usa el incremento real de la secuencia (increment_size_mismatch_strategy=fix)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "detalle_compra_seq")
+    @SequenceGenerator(name = "detalle_compra_seq", sequenceName = "detalle_compra_id_detalle_compra_seq", allocationSize = 50)
     private Integer id_detalle_compra;
 
     @ManyToOne(fetch = FetchType.LAZY)
@@ -9,7 +9,11 @@ import java.math.BigDecimal;
 public class DetalleVenta {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    // Secuencia del SERIAL con INCREMENT BY 50 (optimizador pooled): los detalles se insertan
+    // en lote al hacer flush (ver "Inserción en lote de detalles" en docs/sivil_database_design.md).
+    // Sin esa migración se usa el incremento real de la secuencia (increment_size_mismatch_strategy=fix)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "detalle_venta_seq")
+    @SequenceGenerator(name = "detalle_venta_seq", sequenceName = "detalle_venta_id_detalle_venta_seq", allocationSize = 50)
     private Integer id_detalle_venta;
 
     @ManyToOne(fetch = FetchType.LAZY)
@@ -0,0 +1,37 @@
+package com.sivil.systeam.event;
+
+import com.sivil.systeam.entity.Libro;
+
+/**
+ * Evento publicado cuando un libro se crea, modifica (incluido su stock) o elimina.
+ * Los oyentes (índices y cachés del catálogo) lo reciben después del commit.
+ *
+ * @param idLibro       ID del libro afectado
+ * @param libro         estado final del libro; null si fue eliminado o si solo cambió el stock
+ * @param cantidadStock stock final del libro (null si fue eliminado)
+ */
+public record LibroModificadoEvent(Integer idLibro, Libro libro, Integer cantidadStock) {
+
+    public static LibroModificadoEvent guardado(Libro libro) {
+        return new LibroModificadoEvent(libro.getId_libro(), libro, libro.getCantidad_stock());
+    }
+
+    public static LibroModificadoEvent eliminado(Integer idLibro) {
+        return new LibroModificadoEvent(idLibro, null, null);
+    }
+
+    /**
+     * Cambio de stock hecho con un UPDATE directo (StockService), sin la entidad cargada
+     */
+    public static LibroModificadoEvent stockActualizado(Integer idLibro, int cantidadStock) {
+        return new LibroModificadoEvent(idLibro, null, cantidadStock);
+    }
+
+    public boolean esEliminacion() {
+        return libro == null && cantidadStock == null;
+    }
+
+    public boolean esSoloStock() {
+        return libro == null && cantidadStock != null;
+    }
+}
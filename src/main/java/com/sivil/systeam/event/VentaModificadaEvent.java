@@ -0,0 +1,40 @@
+package com.sivil.systeam.event;
+
+import com.sivil.systeam.entity.Venta;
+import com.sivil.systeam.enums.MetodoPago;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * Evento publicado cuando una venta empieza o deja de contar en las métricas
+ * (se finaliza, se inactiva, se reactiva o cambia su total).
+ * Los oyentes lo reciben después del commit.
+ *
+ * @param signo +1 si la venta se suma a las métricas, -1 si se resta
+ */
+public record VentaModificadaEvent(Integer idVenta, LocalDate dia, Integer idVendedor,
+                                   MetodoPago tipoPago, BigDecimal total, int signo) {
+
+    public static VentaModificadaEvent contabilizada(Venta venta) {
+        return de(venta, venta.getTotal(), 1);
+    }
+
+    public static VentaModificadaEvent descontada(Venta venta) {
+        return de(venta, venta.getTotal(), -1);
+    }
+
+    /**
+     * Resta una venta con el total que tenía antes de modificarse
+     */
+    public static VentaModificadaEvent descontada(Venta venta, BigDecimal totalAnterior) {
+        return de(venta, totalAnterior, -1);
+    }
+
+    private static VentaModificadaEvent de(Venta venta, BigDecimal total, int signo) {
+        LocalDate dia = venta.getFecha_venta() != null ? venta.getFecha_venta().toLocalDate() : LocalDate.now();
+        Integer idVendedor = venta.getVendedor() != null ? venta.getVendedor().getId_usuario() : null;
+        return new VentaModificadaEvent(venta.getId_venta(), dia, idVendedor, venta.getTipo_pago(),
+                total != null ? total : BigDecimal.ZERO, signo);
+    }
+}
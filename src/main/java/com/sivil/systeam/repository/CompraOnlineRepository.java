@@ -1,11 +1,14 @@
 package com.sivil.systeam.repository;
 
 import com.sivil.systeam.entity.CompraOnline;
+import com.sivil.systeam.service.dto.CompraResumen;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
@@ -58,5 +61,47 @@ WHERE c.comprador.id_usuario = :idUsuario
     List<CompraOnline> findAllByCompradorAndNumero(@Param("usuarioId") Integer usuarioId,
                                                    @Param("numero") String numero,
                                                    Sort sort);
-}
 
+    // ======== LISTADO "MIS COMPRAS" (proyección CompraResumen, sin cargar entidades) ========
+
+    @Query("SELECT " + COLUMNAS_RESUMEN + " FROM CompraOnline c " +
+           "WHERE c.comprador.id_usuario = :usuarioId " +
+           "ORDER BY c.fecha_compra DESC, c.id_compra DESC")
+    List<CompraResumen> findResumenesByComprador(@Param("usuarioId") Integer usuarioId);
+
+    @Query("SELECT " + COLUMNAS_RESUMEN + " FROM CompraOnline c " +
+           "WHERE c.comprador.id_usuario = :usuarioId " +
+           "AND UPPER(c.numero_orden) LIKE CONCAT('%', UPPER(:numero), '%') " +
+           "ORDER BY c.fecha_compra DESC, c.id_compra DESC")
+    List<CompraResumen> findResumenesByCompradorAndNumero(@Param("usuarioId") Integer usuarioId,
+                                                         @Param("numero") String numero);
+
+    // Paginación por cursor (keyset) de las compras de un usuario sobre
+    // fecha_compra DESC NULLS FIRST, id_compra DESC. El Pageable solo limita filas.
+    @Query("SELECT " + COLUMNAS_RESUMEN + " FROM CompraOnline c " +
+           "WHERE c.comprador.id_usuario = :usuarioId " +
+           "ORDER BY c.fecha_compra DESC NULLS FIRST, c.id_compra DESC")
+    List<CompraResumen> findPrimerasByComprador(@Param("usuarioId") Integer usuarioId, Pageable limite);
+
+    // Las compras sin fecha van primero, así que después de una con fecha solo siguen otras con fecha
+    @Query("SELECT " + COLUMNAS_RESUMEN + " FROM CompraOnline c " +
+           "WHERE c.comprador.id_usuario = :usuarioId " +
+           "AND (c.fecha_compra < :fecha OR (c.fecha_compra = :fecha AND c.id_compra < :id)) " +
+           "ORDER BY c.fecha_compra DESC NULLS FIRST, c.id_compra DESC")
+    List<CompraResumen> findSiguientesByComprador(@Param("usuarioId") Integer usuarioId,
+                                                  @Param("fecha") LocalDateTime fecha,
+                                                  @Param("id") Integer id,
+                                                  Pageable limite);
+
+    // Cursor en una compra sin fecha: el resto de las sin fecha y luego todas las fechadas
+    @Query("SELECT " + COLUMNAS_RESUMEN + " FROM CompraOnline c " +
+           "WHERE c.comprador.id_usuario = :usuarioId " +
+           "AND (c.fecha_compra IS NOT NULL OR c.id_compra < :id) " +
+           "ORDER BY c.fecha_compra DESC NULLS FIRST, c.id_compra DESC")
+    List<CompraResumen> findSiguientesSinFechaByComprador(@Param("usuarioId") Integer usuarioId,
+                                                          @Param("id") Integer id,
+                                                          Pageable limite);
+
+    String COLUMNAS_RESUMEN = "new com.sivil.systeam.service.dto.CompraResumen(c.id_compra, c.numero_orden, " +
+            "c.fecha_compra, c.estado_compra, c.metodo_pago, c.direccion_entrega, c.subtotal, c.impuestos, c.total)";
+}
@@ -2,7 +2,10 @@ package com.sivil.systeam.repository;
 
 import com.sivil.systeam.entity.Libro;
 import com.sivil.systeam.enums.Estado;
+import com.sivil.systeam.service.dto.LibroCard;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
@@ -11,13 +14,14 @@ import org.springframework.stereotype.Repository;
 
 import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.Lock;
+import java.util.Collection;
 import java.util.Optional;
 
 import java.math.BigDecimal;
 import java.util.List;
 
 @Repository
-public interface LibroRepository extends JpaRepository<Libro, Integer> {
+public interface LibroRepository extends JpaRepository<Libro, Integer>, JpaSpecificationExecutor<Libro> {
 
     // ======== VALIDACIONES / BÚSQUEDAS DIRECTAS (con underscore) ========
     @Query("SELECT (COUNT(l) > 0) FROM Libro l WHERE l.codigo_libro = :codigo")
@@ -30,6 +34,15 @@ public interface LibroRepository extends JpaRepository<Libro, Integer> {
     @Query("SELECT l FROM Libro l WHERE l.estado = :estado ORDER BY l.fecha_creacion DESC")
     List<Libro> findByEstadoOrderByFecha_creacionDesc(@Param("estado") Estado estado);
 
+    // Misma lista como proyección (sin descripción ni colecciones) para la tabla de inventario
+    @Query("""
+            SELECT l.id_libro AS id_libro, l.codigo_libro AS codigo_libro, l.titulo AS titulo, l.autor AS autor,
+                   l.año_publicacion AS año_publicacion, l.precio AS precio, l.cantidad_stock AS cantidad_stock,
+                   l.categoria AS categoria, l.editorial AS editorial, l.imagen_url AS imagen_url, l.estado AS estado
+            FROM Libro l WHERE l.estado = :estado ORDER BY l.fecha_creacion DESC
+            """)
+    List<LibroCard> findCardsByEstadoOrderByFecha_creacionDesc(@Param("estado") Estado estado);
+
     // ======== BÚSQUEDAS DE TEXTO (sin underscore) ========
     List<Libro> findByTituloContainingIgnoreCaseAndEstado(String titulo, Estado estado);
     List<Libro> findByAutorContainingIgnoreCaseAndEstado(String autor, Estado estado);
@@ -64,11 +77,31 @@ public interface LibroRepository extends JpaRepository<Libro, Integer> {
     @Query("SELECT SUM(l.precio * l.cantidad_stock) FROM Libro l WHERE l.estado = :estado")
     BigDecimal sumValorInventarioByEstado(@Param("estado") Estado estado);
 
+    // ======== BÚSQUEDA DE TEXTO COMPLETO (PostgreSQL) ========
+    // Usa la columna generada busqueda_tsv (título, autor, editorial, descripción) con índice GIN
+    // y el diccionario 'spanish'; ver "Búsqueda de texto completo" en docs/sivil_database_design.md
+
+    // Libros activos que coinciden con el término, del más al menos relevante
+    @Query(value = """
+            SELECT l.* FROM libros l
+            WHERE l.busqueda_tsv @@ websearch_to_tsquery('spanish', :termino)
+              AND l.estado = 'activo'
+            ORDER BY ts_rank(l.busqueda_tsv, websearch_to_tsquery('spanish', :termino)) DESC, l.id_libro
+            """, nativeQuery = true)
+    List<Libro> buscarTextoCompleto(@Param("termino") String termino, Pageable limite);
+    // El catálogo usa LibroSpecifications.textoCompleto dentro de su propia consulta paginada
+
     // Bloqueo de fila para actualizar stock durante el checkout
     @Lock(LockModeType.PESSIMISTIC_WRITE)
     @Query("SELECT l FROM Libro l WHERE l.id_libro = :id")
     Optional<Libro> lockByIdForUpdate(@Param("id") Integer id);
 
+    // Bloqueo de varias filas en una sola consulta, siempre en orden de id
+    // (todas las transacciones toman los locks en el mismo orden y no hay deadlock)
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT l FROM Libro l WHERE l.id_libro IN :ids ORDER BY l.id_libro")
+    List<Libro> lockAllByIdForUpdate(@Param("ids") Collection<Integer> ids);
+
 
 
 }
@@ -0,0 +1,132 @@
+package com.sivil.systeam.repository;
+
+import com.sivil.systeam.config.TextoCompletoFunctionContributor;
+import com.sivil.systeam.entity.Libro;
+import com.sivil.systeam.enums.Estado;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.Expression;
+import jakarta.persistence.criteria.Order;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import org.hibernate.query.criteria.HibernateCriteriaBuilder;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Filtros del catálogo expresados como Specification para que la búsqueda,
+ * el ordenamiento y la paginación se resuelvan en PostgreSQL
+ */
+public final class LibroSpecifications {
+
+    private LibroSpecifications() {}
+
+    // Libros activos con stock > 0 (mismo criterio que findByEstadoAndCantidad_stockGreaterThan)
+    public static Specification<Libro> disponibles() {
+        return (root, query, cb) -> cb.and(
+                cb.equal(root.get("estado"), Estado.activo),
+                cb.greaterThan(root.get("cantidad_stock"), 0));
+    }
+
+    // Título, autor o editorial que contiene el término (respaldo cuando no hay índice en memoria)
+    public static Specification<Libro> textoContiene(String termino) {
+        String patron = "%" + escaparLike(termino.toLowerCase()) + "%";
+        return (root, query, cb) -> cb.or(
+                cb.like(cb.lower(root.get("titulo")), patron, '\\'),
+                cb.like(cb.lower(root.get("autor")), patron, '\\'),
+                cb.like(cb.lower(root.get("editorial")), patron, '\\'));
+    }
+
+    // Coincidencia de texto completo (busqueda_tsv @@ websearch_to_tsquery('spanish', termino)):
+    // stemming en español, frases entre comillas y -palabra. Requiere la columna busqueda_tsv.
+    // value() envía el término como parámetro (cb.literal lo escribiría dentro del SQL)
+    public static Specification<Libro> textoCompleto(String termino) {
+        return (root, query, cb) -> cb.isTrue(cb.function(TextoCompletoFunctionContributor.TEXTO_COMPLETO,
+                Boolean.class, root.get("id_libro"), ((HibernateCriteriaBuilder) cb).value(termino)));
+    }
+
+    // Libros cuyo ID está en la lista (resultado del índice de búsqueda)
+    public static Specification<Libro> idEn(Collection<Integer> ids) {
+        return (root, query, cb) -> ids.isEmpty() ? cb.disjunction() : root.get("id_libro").in(ids);
+    }
+
+    // Autor exacto ignorando espacios y mayúsculas
+    public static Specification<Libro> autorIgual(String autor) {
+        String buscado = autor.trim().toLowerCase();
+        return (root, query, cb) -> cb.equal(cb.lower(cb.trim(root.<String>get("autor"))), buscado);
+    }
+
+    /**
+     * Ordenamiento del catálogo. Siempre desempata por id_libro para que
+     * las páginas sean estables entre consultas.
+     * No se aplica a la consulta de conteo (resultado Long).
+     */
+    public static Specification<Libro> ordenadoPor(String ordenamiento) {
+        return (root, query, cb) -> {
+            if (query != null && !Long.class.equals(query.getResultType())) {
+                Expression<?> clave = switch (ordenamiento == null ? "" : ordenamiento) {
+                    case "precio-asc", "precio-desc" -> root.get("precio");
+                    case "titulo-asc", "titulo-desc", "" -> cb.lower(root.get("titulo"));
+                    case "stock-asc", "stock-desc" -> root.get("cantidad_stock");
+                    default -> null;
+                };
+                boolean desc = ordenamiento != null && ordenamiento.endsWith("-desc");
+                Order desempate = cb.asc(root.get("id_libro"));
+                if (clave == null) {
+                    query.orderBy(desempate);
+                } else {
+                    query.orderBy(List.of(desc ? cb.desc(clave) : cb.asc(clave), desempate));
+                }
+            }
+            return null;
+        };
+    }
+
+    /**
+     * Condición keyset: libros que van después de (valor, id) en el
+     * ordenamiento indicado. Debe combinarse con ordenadoPor(ordenamiento).
+     */
+    public static Specification<Libro> despuesDe(String ordenamiento, String valor, Integer id) {
+        return (root, query, cb) -> {
+            boolean desc = ordenamiento != null && ordenamiento.endsWith("-desc");
+            if (valor == null) {
+                return cb.greaterThan(root.get("id_libro"), id);
+            }
+            return switch (ordenamiento == null ? "" : ordenamiento) {
+                case "precio-asc", "precio-desc" ->
+                        siguiente(cb, root, root.get("precio"), new BigDecimal(valor), id, desc);
+                case "titulo-asc", "titulo-desc", "" ->
+                        siguiente(cb, root, cb.lower(root.get("titulo")), valor, id, desc);
+                case "stock-asc", "stock-desc" ->
+                        siguiente(cb, root, root.get("cantidad_stock"), Integer.valueOf(valor), id, desc);
+                default -> cb.greaterThan(root.get("id_libro"), id);
+            };
+        };
+    }
+
+    /**
+     * Valor de la clave de orden de un libro, tal como la compara despuesDe
+     * (recibe los campos para servir tanto a Libro como a sus proyecciones)
+     */
+    public static Object valorDeOrden(BigDecimal precio, String titulo, Integer stock, String ordenamiento) {
+        return switch (ordenamiento == null ? "" : ordenamiento) {
+            case "precio-asc", "precio-desc" -> precio.toPlainString();
+            case "titulo-asc", "titulo-desc", "" -> titulo.toLowerCase();
+            case "stock-asc", "stock-desc" -> stock;
+            default -> null;
+        };
+    }
+
+    private static <Y extends Comparable<? super Y>> Predicate siguiente(CriteriaBuilder cb, Root<Libro> root,
+                                                                         Expression<? extends Y> clave, Y valor,
+                                                                         Integer id, boolean desc) {
+        Predicate pasaClave = desc ? cb.lessThan(clave, valor) : cb.greaterThan(clave, valor);
+        return cb.or(pasaClave, cb.and(cb.equal(clave, valor), cb.greaterThan(root.get("id_libro"), id)));
+    }
+
+    private static String escaparLike(String texto) {
+        return texto.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+}
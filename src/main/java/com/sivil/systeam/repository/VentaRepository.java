@@ -2,16 +2,20 @@ package com.sivil.systeam.repository;
 
 import com.sivil.systeam.entity.Venta;
 import com.sivil.systeam.enums.EstadoVenta;
+import com.sivil.systeam.service.dto.VentaResumen;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
 @Repository
-public interface VentaRepository extends JpaRepository<Venta, Integer> {
+public interface VentaRepository extends JpaRepository<Venta, Integer>, JpaSpecificationExecutor<Venta>, VentaRepositoryCustom {
 
     // Listar por estado (método derivado válido)
     List<Venta> findByEstado(EstadoVenta estado);
@@ -20,12 +24,6 @@ public interface VentaRepository extends JpaRepository<Venta, Integer> {
     @Query("SELECT COUNT(v) > 0 FROM Venta v WHERE v.numero_factura = :numeroFactura")
     boolean existsByNumeroFactura(@Param("numeroFactura") String numeroFactura);
 
-    // Últimos números de factura por prefijo (corrige el LIKE con CONCAT)
-    @Query("SELECT v.numero_factura FROM Venta v " +
-            "WHERE v.numero_factura LIKE CONCAT(:prefijo, '%') " +
-            "ORDER BY v.numero_factura DESC")
-    List<String> findTopByNumeroFacturaStartingWith(@Param("prefijo") String prefijo);
-
     // Listar por estado ordenado por fecha de venta desc
     @Query("SELECT v FROM Venta v WHERE v.estado = :estado ORDER BY v.fecha_venta DESC")
     List<Venta> findByEstadoOrderByFechaVentaDesc(@Param("estado") EstadoVenta estado);
@@ -36,4 +34,30 @@ public interface VentaRepository extends JpaRepository<Venta, Integer> {
 
     @Query("SELECT v FROM Venta v WHERE v.estado <> com.sivil.systeam.enums.EstadoVenta.inactiva ORDER BY v.fecha_venta DESC")
     List<Venta> findAllVisiblesOrderByFechaVentaDesc();
+
+    // Paginación por cursor (keyset) sobre fecha_venta DESC NULLS FIRST, id_venta DESC.
+    // El Pageable solo limita filas (PageRequest.of(0, n)), no ejecuta conteo.
+    // Devuelven directamente las filas del listado (sin cargar la entidad Venta).
+    @Query("SELECT " + COLUMNAS_RESUMEN + " FROM Venta v LEFT JOIN v.vendedor ven " +
+            "ORDER BY v.fecha_venta DESC NULLS FIRST, v.id_venta DESC")
+    List<VentaResumen> findPrimerasOrderByFechaVentaDesc(Pageable limite);
+
+    // Las ventas sin fecha van primero, así que después de una con fecha solo siguen otras con fecha
+    @Query("SELECT " + COLUMNAS_RESUMEN + " FROM Venta v LEFT JOIN v.vendedor ven " +
+            "WHERE v.fecha_venta < :fecha OR (v.fecha_venta = :fecha AND v.id_venta < :id) " +
+            "ORDER BY v.fecha_venta DESC NULLS FIRST, v.id_venta DESC")
+    List<VentaResumen> findSiguientesOrderByFechaVentaDesc(@Param("fecha") LocalDateTime fecha,
+                                                           @Param("id") Integer id,
+                                                           Pageable limite);
+
+    // Cursor en una venta sin fecha: el resto de las sin fecha y luego todas las fechadas
+    @Query("SELECT " + COLUMNAS_RESUMEN + " FROM Venta v LEFT JOIN v.vendedor ven " +
+            "WHERE v.fecha_venta IS NOT NULL OR v.id_venta < :id " +
+            "ORDER BY v.fecha_venta DESC NULLS FIRST, v.id_venta DESC")
+    List<VentaResumen> findSiguientesSinFechaOrderByFechaVentaDesc(@Param("id") Integer id,
+                                                                   Pageable limite);
+
+    String COLUMNAS_RESUMEN = "new com.sivil.systeam.service.dto.VentaResumen(v.id_venta, v.numero_factura, " +
+            "v.fecha_venta, v.nombre_cliente, ven.nombre_completo, v.subtotal, v.impuestos, v.total, " +
+            "v.tipo_pago, v.estado, v.motivo_inactivacion)";
 }
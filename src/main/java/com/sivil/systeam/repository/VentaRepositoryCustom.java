@@ -0,0 +1,20 @@
+package com.sivil.systeam.repository;
+
+import com.sivil.systeam.entity.Venta;
+import com.sivil.systeam.service.dto.VentaResumen;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.domain.Specification;
+
+/**
+ * Consultas de VentaRepository que no se pueden declarar con @Query
+ */
+public interface VentaRepositoryCustom {
+
+    /**
+     * Página del listado de ventas que cumplen la Specification, construida directamente
+     * como VentaResumen: solo las columnas del resumen y el nombre del vendedor (LEFT JOIN),
+     * sin cargar entidades en el contexto de persistencia.
+     */
+    Page<VentaResumen> buscarResumenes(Specification<Venta> spec, Pageable pageable);
+}
@@ -0,0 +1,60 @@
+package com.sivil.systeam.repository;
+
+import com.sivil.systeam.entity.Usuario;
+import com.sivil.systeam.entity.Venta;
+import com.sivil.systeam.service.dto.VentaResumen;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.criteria.*;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.support.PageableExecutionUtils;
+
+import java.util.List;
+
+// Implementación de VentaRepositoryCustom (Spring Data la detecta por el sufijo Impl)
+class VentaRepositoryImpl implements VentaRepositoryCustom {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public Page<VentaResumen> buscarResumenes(Specification<Venta> spec, Pageable pageable) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<VentaResumen> query = cb.createQuery(VentaResumen.class);
+        Root<Venta> venta = query.from(Venta.class);
+        Join<Venta, Usuario> vendedor = venta.join("vendedor", JoinType.LEFT);
+        query.select(cb.construct(VentaResumen.class,
+                venta.get("id_venta"),
+                venta.get("numero_factura"),
+                venta.get("fecha_venta"),
+                venta.get("nombre_cliente"),
+                vendedor.get("nombre_completo"),
+                venta.get("subtotal"),
+                venta.get("impuestos"),
+                venta.get("total"),
+                venta.get("tipo_pago"),
+                venta.get("estado"),
+                venta.get("motivo_inactivacion")));
+        Predicate filtro = spec.toPredicate(venta, query, cb);
+        if (filtro != null) query.where(filtro);
+
+        List<VentaResumen> filas = entityManager.createQuery(query)
+                .setFirstResult((int) pageable.getOffset())
+                .setMaxResults(pageable.getPageSize())
+                .getResultList();
+        // El conteo solo se ejecuta si hace falta (por ejemplo, no en una última página incompleta)
+        return PageableExecutionUtils.getPage(filas, pageable, () -> contar(spec));
+    }
+
+    private long contar(Specification<Venta> spec) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Long> query = cb.createQuery(Long.class);
+        Root<Venta> venta = query.from(Venta.class);
+        query.select(cb.count(venta));
+        Predicate filtro = spec.toPredicate(venta, query, cb);
+        if (filtro != null) query.where(filtro);
+        return entityManager.createQuery(query).getSingleResult();
+    }
+}
@@ -0,0 +1,65 @@
+package com.sivil.systeam.repository;
+
+import com.sivil.systeam.entity.Venta;
+import com.sivil.systeam.enums.EstadoVenta;
+import jakarta.persistence.criteria.Expression;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Filtros del listado de ventas expresados como Specification para que el filtrado,
+ * el ordenamiento y la paginación se resuelvan en PostgreSQL
+ */
+public final class VentaSpecifications {
+
+    private VentaSpecifications() {}
+
+    // Ventas desde el inicio del día indicado
+    public static Specification<Venta> desde(LocalDate fecha) {
+        return (root, query, cb) -> cb.greaterThanOrEqualTo(root.get("fecha_venta"), fecha.atStartOfDay());
+    }
+
+    // Ventas hasta el final del día indicado
+    public static Specification<Venta> hasta(LocalDate fecha) {
+        return (root, query, cb) -> cb.lessThan(root.get("fecha_venta"), fecha.plusDays(1).atStartOfDay());
+    }
+
+    public static Specification<Venta> conEstado(EstadoVenta estado) {
+        return (root, query, cb) -> cb.equal(root.get("estado"), estado);
+    }
+
+    public static Specification<Venta> deVendedor(Integer idVendedor) {
+        return (root, query, cb) -> cb.equal(root.get("vendedor").get("id_usuario"), idVendedor);
+    }
+
+    // Nombre o identificación del cliente que contiene el texto
+    public static Specification<Venta> clienteContiene(String texto) {
+        String patron = "%" + escaparLike(texto.trim().toLowerCase()) + "%";
+        return (root, query, cb) -> cb.or(
+                cb.like(cb.lower(root.get("nombre_cliente")), patron, '\\'),
+                cb.like(cb.lower(root.get("identificacion_cliente")), patron, '\\'));
+    }
+
+    /**
+     * Ordenamiento del listado; fecha-desc (por defecto) usa el índice de ventas por fecha.
+     * No se aplica a la consulta de conteo (resultado Long).
+     */
+    public static Specification<Venta> ordenadoPor(String ordenamiento) {
+        return (root, query, cb) -> {
+            if (query != null && !Long.class.equals(query.getResultType())) {
+                Expression<?> clave = "total-desc".equals(ordenamiento) ? root.get("total") : root.get("fecha_venta");
+                boolean asc = "fecha-asc".equals(ordenamiento);
+                query.orderBy(asc
+                        ? List.of(cb.asc(clave), cb.asc(root.get("id_venta")))
+                        : List.of(cb.desc(clave), cb.desc(root.get("id_venta"))));
+            }
+            return null;
+        };
+    }
+
+    private static String escaparLike(String texto) {
+        return texto.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+}
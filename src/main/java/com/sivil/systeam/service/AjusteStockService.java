@@ -0,0 +1,187 @@
+package com.sivil.systeam.service;
+
+import com.sivil.systeam.event.LibroModificadoEvent;
+import com.sivil.systeam.service.dto.AjusteStockRequest;
+import com.sivil.systeam.service.dto.ResultadoAjusteStock;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Types;
+import java.util.*;
+
+/**
+ * Ajustes de stock por lote (recepción de envíos, conteos físicos).
+ *
+ * - Las líneas del mismo código se suman y todos los libros se actualizan con un
+ *   solo UPDATE ... FROM unnest(...), bloqueando las filas en orden de ID
+ * - Se rechazan las líneas sin código, con cantidad 0, de libros inexistentes o
+ *   inactivos, o que dejarían el stock en negativo; una salida tampoco puede dejar el
+ *   stock por debajo de las unidades apartadas por compras online pendientes. El resto se aplica
+ * - Cada ajuste queda registrado como documento (ajustes_stock y su detalle) en la
+ *   misma transacción (ver "Ajustes de stock" en docs/sivil_database_design.md)
+ */
+@Service
+public class AjusteStockService {
+
+    public static final int MAX_LINEAS = 10000;
+
+    // Solo libros activos, como actualizarStock/incrementarStock/reducirStock.
+    // Las salidas (delta < 0) respetan las unidades apartadas por reservas
+    private static final String AJUSTAR =
+            "WITH pedido AS (SELECT * FROM unnest(?::varchar[], ?::int[]) AS p(codigo_libro, delta)), " +
+            "apartados AS (SELECT * FROM unnest(?::int[], ?::int[]) AS a(id_libro, apartado)), " +
+            "bloqueados AS (SELECT l.id_libro FROM libros l JOIN pedido p ON p.codigo_libro = l.codigo_libro " +
+            "               WHERE l.estado = 'activo' ORDER BY l.id_libro FOR UPDATE OF l) " +
+            "UPDATE libros l SET cantidad_stock = COALESCE(l.cantidad_stock, 0) + p.delta " +
+            "FROM pedido p " +
+            "WHERE l.codigo_libro = p.codigo_libro " +
+            "AND COALESCE(l.cantidad_stock, 0) + p.delta >= CASE WHEN p.delta < 0 " +
+            "    THEN COALESCE((SELECT a.apartado FROM apartados a WHERE a.id_libro = l.id_libro), 0) ELSE 0 END " +
+            "AND l.id_libro IN (SELECT id_libro FROM bloqueados) " +
+            "RETURNING l.id_libro, l.codigo_libro, l.cantidad_stock";
+
+    private static final String INSERTAR_DOCUMENTO =
+            "INSERT INTO ajustes_stock (referencia, motivo, usuario, lineas_aplicadas, lineas_rechazadas) " +
+            "VALUES (?, ?, ?, ?, ?) RETURNING id_ajuste";
+
+    private static final String INSERTAR_DETALLE =
+            "INSERT INTO ajustes_stock_detalle (id_ajuste, linea, codigo_libro, id_libro, delta, " +
+            "stock_anterior, stock_final, aplicada, mensaje) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private ReservaStockService reservaStockService;
+
+    private record StockFinal(Integer idLibro, int stock) {}
+
+    /**
+     * Aplica el ajuste y registra el documento
+     * @param usuario quien realiza el ajuste (para auditoría)
+     * @throws IllegalArgumentException si la petición no tiene líneas o supera MAX_LINEAS
+     */
+    @Transactional
+    public ResultadoAjusteStock ajustar(AjusteStockRequest ajuste, String usuario) {
+        if (ajuste == null || ajuste.lineas() == null || ajuste.lineas().isEmpty()) {
+            throw new IllegalArgumentException("El ajuste debe tener al menos una línea");
+        }
+        if (ajuste.lineas().size() > MAX_LINEAS) {
+            throw new IllegalArgumentException("El ajuste no puede tener más de " + MAX_LINEAS + " líneas");
+        }
+
+        // Validación de cada línea y total por código
+        List<AjusteStockRequest.Linea> lineas = ajuste.lineas();
+        String[] rechazos = new String[lineas.size()];
+        Map<String, Integer> deltaPorCodigo = new LinkedHashMap<>();
+        for (int i = 0; i < lineas.size(); i++) {
+            AjusteStockRequest.Linea linea = lineas.get(i);
+            String codigo = codigo(linea);
+            if (codigo == null) {
+                rechazos[i] = "El código del libro es obligatorio";
+            } else if (linea.delta() == null || linea.delta() == 0) {
+                rechazos[i] = "La cantidad debe ser distinta de 0";
+            } else {
+                deltaPorCodigo.merge(codigo, linea.delta(), Math::addExact);
+            }
+        }
+
+        Map<String, StockFinal> aplicados = new HashMap<>();
+        Map<Integer, Integer> apartados = reservaStockService.apartados();
+        if (!deltaPorCodigo.isEmpty()) {
+            jdbcTemplate.query(AJUSTAR, rs -> {
+                        aplicados.put(rs.getString("codigo_libro"),
+                                new StockFinal(rs.getInt("id_libro"), rs.getInt("cantidad_stock")));
+                    },
+                    deltaPorCodigo.keySet().toArray(new String[0]),
+                    deltaPorCodigo.values().toArray(new Integer[0]),
+                    apartados.keySet().toArray(new Integer[0]),
+                    apartados.values().toArray(new Integer[0]));
+        }
+        Map<String, String> noAplicados = motivosNoAplicados(deltaPorCodigo, aplicados, apartados);
+
+        // Resultado por línea (las líneas de un mismo código comparten stock anterior y final)
+        List<ResultadoAjusteStock.Linea> resultado = new ArrayList<>(lineas.size());
+        int aplicadas = 0;
+        for (int i = 0; i < lineas.size(); i++) {
+            AjusteStockRequest.Linea linea = lineas.get(i);
+            String codigo = codigo(linea);
+            Integer delta = linea != null ? linea.delta() : null;
+            String mensaje = rechazos[i] != null ? rechazos[i] : noAplicados.get(codigo);
+            StockFinal stock = mensaje == null ? aplicados.get(codigo) : null;
+            if (stock != null) aplicadas++;
+            resultado.add(new ResultadoAjusteStock.Linea(
+                    i + 1, codigo, delta, stock != null,
+                    stock != null ? stock.stock() - deltaPorCodigo.get(codigo) : null,
+                    stock != null ? stock.stock() : null,
+                    mensaje));
+        }
+
+        Integer idAjuste = registrarDocumento(ajuste, usuario, resultado, aplicados, aplicadas);
+
+        aplicados.values().forEach(stock ->
+                eventPublisher.publishEvent(LibroModificadoEvent.stockActualizado(stock.idLibro(), stock.stock())));
+        return new ResultadoAjusteStock(idAjuste, aplicadas, lineas.size() - aplicadas, resultado);
+    }
+
+    // Solo se consultan los códigos que el UPDATE no devolvió, para explicar el rechazo
+    private Map<String, String> motivosNoAplicados(Map<String, Integer> deltaPorCodigo, Map<String, StockFinal> aplicados,
+                                                   Map<Integer, Integer> apartados) {
+        List<String> faltantes = deltaPorCodigo.keySet().stream().filter(c -> !aplicados.containsKey(c)).toList();
+        Map<String, String> motivos = new HashMap<>();
+        if (faltantes.isEmpty()) return motivos;
+
+        faltantes.forEach(c -> motivos.put(c, "No se encontró el libro con código: " + c));
+        jdbcTemplate.query(
+                "SELECT id_libro, codigo_libro, CAST(estado AS VARCHAR) AS estado, COALESCE(cantidad_stock, 0) AS stock " +
+                "FROM libros WHERE codigo_libro = ANY(?::varchar[])",
+                rs -> {
+                    String codigo = rs.getString("codigo_libro");
+                    int disponible = rs.getInt("stock") - apartados.getOrDefault(rs.getInt("id_libro"), 0);
+                    motivos.put(codigo, "activo".equals(rs.getString("estado"))
+                            ? "Stock insuficiente. Disponible: " + Math.max(disponible, 0)
+                            : "El libro no está activo");
+                },
+                (Object) faltantes.toArray(new String[0]));
+        return motivos;
+    }
+
+    private Integer registrarDocumento(AjusteStockRequest ajuste, String usuario,
+                                       List<ResultadoAjusteStock.Linea> resultado,
+                                       Map<String, StockFinal> aplicados, int aplicadas) {
+        Integer idAjuste = jdbcTemplate.queryForObject(INSERTAR_DOCUMENTO, Integer.class,
+                recortar(ajuste.referencia(), 100), recortar(ajuste.motivo(), 500),
+                usuario != null ? usuario : "sistema", aplicadas, resultado.size() - aplicadas);
+
+        jdbcTemplate.batchUpdate(INSERTAR_DETALLE, resultado, 500, (ps, linea) -> {
+            StockFinal stock = linea.codigo() != null ? aplicados.get(linea.codigo()) : null;
+            ps.setInt(1, idAjuste);
+            ps.setInt(2, linea.linea());
+            ps.setString(3, recortar(linea.codigo(), 20));
+            ps.setObject(4, stock != null ? stock.idLibro() : null, Types.INTEGER);
+            ps.setObject(5, linea.delta(), Types.INTEGER);
+            ps.setObject(6, linea.stockAnterior(), Types.INTEGER);
+            ps.setObject(7, linea.stockFinal(), Types.INTEGER);
+            ps.setBoolean(8, linea.aplicada());
+            ps.setString(9, linea.mensaje());
+        });
+        return idAjuste;
+    }
+
+    private static String codigo(AjusteStockRequest.Linea linea) {
+        if (linea == null || linea.codigo() == null || linea.codigo().isBlank()) return null;
+        return linea.codigo().trim();
+    }
+
+    private static String recortar(String texto, int maximo) {
+        if (texto == null || texto.isBlank()) return null;
+        String limpio = texto.trim();
+        return limpio.length() > maximo ? limpio.substring(0, maximo) : limpio;
+    }
+}
@@ -1,61 +1,180 @@
 package com.sivil.systeam.service;
 
 import com.sivil.systeam.service.dto.CartItemDTO;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
+/**
+ * Carritos en memoria, uno por dueño (usuario autenticado o sesión).
+ *
+ * - Cada carrito se sincroniza por separado: usuarios distintos nunca compiten por el mismo lock
+ * - El subtotal se mantiene al agregar/quitar, así que calcular totales no recorre los ítems
+ * - Los carritos sin actividad se eliminan periódicamente y hay un máximo de carritos e ítems
+ * - Agregar y eliminar un carrito son atómicos por dueño (compute / computeIfPresent):
+ *   un carrito no puede descartarse entre que se obtiene y se le agrega el libro
+ * - Al superar el máximo se descartan carritos en orden de creación, dando una segunda
+ *   oportunidad a los que tuvieron actividad desde su turno (sin ordenar todos los carritos)
+ */
 @Service
 public class CartService {
 
-    // Lista interna que representa el carrito en memoria
-    private final List<CartItemDTO> cartItems = new ArrayList<>();
-
-    // Agregar un libro al carrito (evitar duplicados)
-    public void addItem(CartItemDTO newItem) {
-        for (int i = 0; i < cartItems.size(); i++) {
-            CartItemDTO item = cartItems.get(i);
-            if (item.libroId().equals(newItem.libroId())) {
-                // Si ya existe el libro, sumamos cantidades
-                int nuevaCantidad = item.cantidad() + newItem.cantidad();
-                cartItems.set(i, new CartItemDTO(
-                        item.libroId(),
-                        item.titulo(),
-                        item.precioUnitario(),
-                        nuevaCantidad
-                ));
-                return; // salir, ya actualizamos
+    // Máximo de turnos revisados por cada carrito nuevo al superar el máximo
+    private static final int MAX_REVISIONES = 64;
+
+    // Carritos por dueño
+    private final ConcurrentHashMap<String, Carrito> carritos = new ConcurrentHashMap<>();
+
+    // Orden de descarte: un turno por carrito creado (los de carritos ya eliminados se ignoran)
+    private final ConcurrentLinkedQueue<Turno> turnos = new ConcurrentLinkedQueue<>();
+
+    private record Turno(String dueno, Carrito carrito, long marca) {}
+
+    @Value("${carrito.inactividad-minutos:60}")
+    private long inactividadMinutos;
+
+    @Value("${carrito.max-carritos:10000}")
+    private int maxCarritos;
+
+    @Value("${carrito.max-items:100}")
+    private int maxItems;
+
+    // Agregar un libro al carrito (si ya existe, se suman las cantidades)
+    public void addItem(String dueno, CartItemDTO newItem) {
+        if (newItem == null || newItem.libroId() == null || newItem.precioUnitario() == null
+                || newItem.cantidad() == null || newItem.cantidad() <= 0) {
+            throw new IllegalArgumentException("Ítem de carrito inválido");
+        }
+        if (dueno == null || dueno.isBlank()) {
+            throw new IllegalArgumentException("Dueño de carrito requerido");
+        }
+        boolean[] nuevo = new boolean[1];
+        carritos.compute(dueno, (k, actual) -> {
+            Carrito carrito = actual;
+            if (carrito == null) {
+                carrito = new Carrito();
+                nuevo[0] = true;
             }
+            carrito.agregar(newItem, maxItems);
+            return carrito;
+        });
+        if (nuevo[0]) {
+            Carrito carrito = carritos.get(dueno);
+            if (carrito != null) turnos.add(new Turno(dueno, carrito, carrito.ultimoAcceso));
+            if (carritos.size() > maxCarritos) liberarEspacio(dueno);
         }
-        // Si no existe, lo agregamos al carrito
-        cartItems.add(newItem);
     }
 
     // Quitar un libro por su ID
-    public void removeItem(Integer libroId) {
-        cartItems.removeIf(it -> it.libroId().equals(libroId));
+    public void removeItem(String dueno, Integer libroId) {
+        Carrito carrito = carritos.get(dueno);
+        if (carrito != null) carrito.quitar(libroId);
     }
 
-    // Obtener todos los ítems del carrito
-    public List<CartItemDTO> getItems() {
-        return new ArrayList<>(cartItems);
+    // Obtener todos los ítems del carrito (copia)
+    public List<CartItemDTO> getItems(String dueno) {
+        Carrito carrito = carritos.get(dueno);
+        return carrito == null ? List.of() : carrito.items();
     }
 
     // Calcular el total del carrito
-    public BigDecimal getTotal() {
-        return cartItems.stream()
-                .map(it -> it.precioUnitario().multiply(BigDecimal.valueOf(it.cantidad())))
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
+    public BigDecimal getTotal(String dueno) {
+        Carrito carrito = carritos.get(dueno);
+        return carrito == null ? BigDecimal.ZERO : carrito.subtotal();
     }
 
     // Vaciar carrito
-    public void clearCart() {
-        cartItems.clear();
+    public void clearCart(String dueno) {
+        carritos.remove(dueno);
     }
 
+    /**
+     * Elimina los carritos sin actividad durante más de carrito.inactividad-minutos
+     */
+    @Scheduled(fixedDelayString = "${carrito.limpieza-ms:300000}")
+    public void eliminarCarritosInactivos() {
+        long limite = System.currentTimeMillis() - inactividadMinutos * 60_000L;
+        for (String dueno : carritos.keySet()) {
+            // La actividad se revisa dentro del compute: un libro agregado a la vez lo conserva
+            carritos.computeIfPresent(dueno, (k, carrito) -> carrito.ultimoAcceso < limite ? null : carrito);
+        }
+        turnos.removeIf(turno -> carritos.get(turno.dueno()) != turno.carrito());
+    }
 
+    // Descarta carritos hasta volver al máximo, revisando a lo sumo MAX_REVISIONES turnos
+    private void liberarEspacio(String duenoActual) {
+        for (int i = 0; i < MAX_REVISIONES && carritos.size() > maxCarritos; i++) {
+            Turno turno = turnos.poll();
+            if (turno == null) return;
+            boolean[] conservado = new boolean[1];
+            carritos.computeIfPresent(turno.dueno(), (k, carrito) -> {
+                if (carrito != turno.carrito()) return carrito; // turno de un carrito ya eliminado
+                if (k.equals(duenoActual) || carrito.ultimoAcceso > turno.marca()) {
+                    conservado[0] = true; // segunda oportunidad
+                    return carrito;
+                }
+                return null;
+            });
+            if (conservado[0]) {
+                turnos.add(new Turno(turno.dueno(), turno.carrito(), turno.carrito().ultimoAcceso));
+            }
+        }
+    }
 
-}
+    /**
+     * Carrito de un dueño: ítems por libroId (en orden de inserción) y subtotal acumulado
+     */
+    private static final class Carrito {
+        private final LinkedHashMap<Integer, CartItemDTO> items = new LinkedHashMap<>();
+        private BigDecimal subtotal = BigDecimal.ZERO;
+        private volatile long ultimoAcceso = System.currentTimeMillis();
 
+        synchronized void agregar(CartItemDTO nuevo, int maxItems) {
+            tocar();
+            CartItemDTO actual = items.get(nuevo.libroId());
+            if (actual == null && items.size() >= maxItems) {
+                throw new IllegalArgumentException("El carrito no puede tener más de " + maxItems + " libros distintos");
+            }
+            CartItemDTO combinado = (actual == null) ? nuevo : new CartItemDTO(
+                    actual.libroId(),
+                    actual.titulo(),
+                    actual.precioUnitario(),
+                    actual.cantidad() + nuevo.cantidad()
+            );
+            if (actual != null) subtotal = subtotal.subtract(importe(actual));
+            items.put(combinado.libroId(), combinado);
+            subtotal = subtotal.add(importe(combinado));
+        }
+
+        synchronized void quitar(Integer libroId) {
+            tocar();
+            CartItemDTO quitado = items.remove(libroId);
+            if (quitado != null) subtotal = subtotal.subtract(importe(quitado));
+        }
+
+        synchronized List<CartItemDTO> items() {
+            tocar();
+            return new ArrayList<>(items.values());
+        }
+
+        synchronized BigDecimal subtotal() {
+            tocar();
+            return subtotal;
+        }
+
+        private void tocar() {
+            ultimoAcceso = System.currentTimeMillis();
+        }
+
+        private static BigDecimal importe(CartItemDTO item) {
+            return item.precioUnitario().multiply(BigDecimal.valueOf(item.cantidad()));
+        }
+    }
+}
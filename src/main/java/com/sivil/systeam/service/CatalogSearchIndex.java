@@ -0,0 +1,197 @@
+package com.sivil.systeam.service;
+
+import com.sivil.systeam.entity.Libro;
+import com.sivil.systeam.enums.Estado;
+import com.sivil.systeam.event.LibroModificadoEvent;
+import com.sivil.systeam.repository.LibroRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.text.Normalizer;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Índice invertido en memoria para buscar libros por título, autor y editorial
+ * sin consultar PostgreSQL.
+ *
+ * - El texto se normaliza (minúsculas, sin tildes ni signos) y se divide en trigramas
+ * - Cada trigrama apunta a los IDs de libros que lo contienen
+ * - Una búsqueda intersecta las listas de los trigramas del término y luego
+ *   confirma la coincidencia sobre el texto normalizado del libro
+ * - Se construye al iniciar la aplicación y se actualiza con cada
+ *   LibroModificadoEvent después del commit
+ */
+@Component
+public class CatalogSearchIndex {
+
+    private static final int N = 3;
+    private static final Pattern MARCAS = Pattern.compile("\\p{M}+");
+    private static final Pattern NO_ALFANUMERICO = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    @Autowired
+    private LibroRepository libroRepository;
+
+    // Texto normalizado y estado de cada libro indexado
+    private final Map<Integer, Documento> documentos = new ConcurrentHashMap<>();
+
+    // trigrama -> IDs de libros
+    private final Map<String, Set<Integer>> trigramas = new ConcurrentHashMap<>();
+
+    private volatile boolean listo = false;
+
+    private record Documento(String texto, Estado estado) {}
+
+    /**
+     * Carga todos los libros al arrancar la aplicación
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void reconstruir() {
+        documentos.clear();
+        trigramas.clear();
+        for (Libro libro : libroRepository.findAll()) {
+            indexar(libro);
+        }
+        listo = true;
+    }
+
+    /**
+     * Mantiene el índice al día con los cambios de inventario ya confirmados
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void alModificarLibro(LibroModificadoEvent evento) {
+        if (evento.esSoloStock()) {
+            return; // el stock no forma parte del texto indexado
+        }
+        if (evento.esEliminacion()) {
+            eliminar(evento.idLibro());
+        } else {
+            indexar(evento.libro());
+        }
+    }
+
+    /**
+     * Agrega o reemplaza un libro en el índice
+     */
+    public synchronized void indexar(Libro libro) {
+        if (libro == null || libro.getId_libro() == null) return;
+
+        String texto = normalizar(String.join(" ",
+                Objects.toString(libro.getTitulo(), ""),
+                Objects.toString(libro.getAutor(), ""),
+                Objects.toString(libro.getEditorial(), "")));
+        Documento actual = documentos.get(libro.getId_libro());
+        if (actual != null && actual.texto().equals(texto) && actual.estado() == libro.getEstado()) {
+            return; // solo cambió el stock u otros campos no indexados
+        }
+        eliminar(libro.getId_libro());
+        documentos.put(libro.getId_libro(), new Documento(texto, libro.getEstado()));
+        for (String trigrama : trigramasDe(texto)) {
+            trigramas.computeIfAbsent(trigrama, k -> ConcurrentHashMap.newKeySet()).add(libro.getId_libro());
+        }
+    }
+
+    /**
+     * Quita un libro del índice
+     */
+    public synchronized void eliminar(Integer idLibro) {
+        Documento anterior = documentos.remove(idLibro);
+        if (anterior == null) return;
+        for (String trigrama : trigramasDe(anterior.texto())) {
+            Set<Integer> ids = trigramas.get(trigrama);
+            if (ids != null) {
+                ids.remove(idLibro);
+                if (ids.isEmpty()) trigramas.remove(trigrama);
+            }
+        }
+    }
+
+    /**
+     * Busca libros cuyo título, autor o editorial contengan todas las palabras del término
+     * (sin distinguir mayúsculas ni tildes)
+     * @param termino texto a buscar
+     * @param soloActivos si true, descarta libros inactivos
+     * @return IDs de los libros que coinciden (vacío si el término no tiene palabras)
+     */
+    public Set<Integer> buscar(String termino, boolean soloActivos) {
+        List<String> palabras = palabras(termino);
+        if (palabras.isEmpty()) return Set.of();
+
+        // Candidatos: intersección de trigramas, empezando por la lista más corta
+        Collection<Integer> candidatos;
+        List<Set<Integer>> listas = new ArrayList<>();
+        for (String palabra : palabras) {
+            for (String trigrama : trigramasDe(palabra)) {
+                Set<Integer> ids = trigramas.get(trigrama);
+                if (ids == null) return Set.of();
+                listas.add(ids);
+            }
+        }
+        if (!listas.isEmpty()) {
+            listas.sort(Comparator.comparingInt(Set::size));
+            candidatos = listas.get(0);
+        } else {
+            // Solo palabras cortas (< 3 letras): se revisan todos los documentos
+            candidatos = documentos.keySet();
+        }
+
+        Set<Integer> resultado = new HashSet<>();
+        for (Integer id : candidatos) {
+            Documento doc = documentos.get(id);
+            if (doc == null) continue;
+            if (soloActivos && doc.estado() != Estado.activo) continue;
+            if (contieneTodas(doc.texto(), palabras)) resultado.add(id);
+        }
+        return resultado;
+    }
+
+    /**
+     * Indica si el índice ya terminó la carga inicial
+     */
+    public boolean estaListo() {
+        return listo;
+    }
+
+    public int tamano() {
+        return documentos.size();
+    }
+
+    // ============================================================
+    // NORMALIZACIÓN
+    // ============================================================
+
+    static String normalizar(String texto) {
+        if (texto == null) return "";
+        String sinTildes = MARCAS.matcher(Normalizer.normalize(texto, Normalizer.Form.NFD)).replaceAll("");
+        return NO_ALFANUMERICO.matcher(sinTildes.toLowerCase(Locale.ROOT)).replaceAll(" ").trim();
+    }
+
+    private static List<String> palabras(String termino) {
+        String normalizado = normalizar(termino);
+        if (normalizado.isEmpty()) return List.of();
+        return Arrays.asList(normalizado.split(" "));
+    }
+
+    // Trigramas de cada palabra de al menos 3 caracteres
+    private static Set<String> trigramasDe(String texto) {
+        Set<String> resultado = new HashSet<>();
+        for (String palabra : texto.split(" ")) {
+            if (palabra.length() < N) continue;
+            for (int i = 0; i + N <= palabra.length(); i++) {
+                resultado.add(palabra.substring(i, i + N));
+            }
+        }
+        return resultado;
+    }
+
+    private static boolean contieneTodas(String texto, List<String> palabras) {
+        for (String palabra : palabras) {
+            if (!texto.contains(palabra)) return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,158 @@
+package com.sivil.systeam.service;
+
+import com.sivil.systeam.entity.Libro;
+import com.sivil.systeam.enums.Estado;
+import com.sivil.systeam.event.LibroModificadoEvent;
+import com.sivil.systeam.repository.LibroRepository;
+import com.sivil.systeam.service.dto.FacetasCatalogo;
+import com.sivil.systeam.service.dto.FacetasCatalogo.ValorFaceta;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.*;
+
+/**
+ * Facetas del catálogo (autores, categorías y editoriales con su conteo de libros
+ * disponibles) mantenidas en memoria.
+ *
+ * - Se calculan una vez al iniciar la aplicación
+ * - Cada LibroModificadoEvent (alta, edición, cambio de stock, eliminación) ajusta
+ *   solo los conteos del libro afectado
+ * - Las lecturas devuelven una copia inmutable que se regenera únicamente
+ *   cuando hubo cambios
+ * - Los valores se agrupan sin distinguir mayúsculas ni espacios en los extremos,
+ *   igual que el filtro por autor (LibroSpecifications.autorIgual); se muestra
+ *   la primera escritura encontrada
+ */
+@Component
+public class CatalogoFacetas {
+
+    @Autowired
+    private LibroRepository libroRepository;
+
+    // Valores de faceta de cada libro activo (con o sin stock), para poder restarlos cuando cambia
+    private final Map<Integer, Entrada> entradas = new HashMap<>();
+
+    // Valor normalizado -> conteo
+    private final Map<String, Conteo> autores = new HashMap<>();
+    private final Map<String, Conteo> categorias = new HashMap<>();
+    private final Map<String, Conteo> editoriales = new HashMap<>();
+
+    private volatile FacetasCatalogo instantanea;
+    private volatile boolean listo = false;
+
+    private record Entrada(String autor, String categoria, String editorial, boolean disponible) {
+        Entrada conStock(int cantidadStock) {
+            return new Entrada(autor, categoria, editorial, cantidadStock > 0);
+        }
+    }
+
+    // Escritura mostrada del valor y cantidad de libros disponibles que lo tienen
+    private static final class Conteo {
+        final String valor;
+        long cantidad;
+
+        Conteo(String valor) {
+            this.valor = valor;
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void reconstruir() {
+        entradas.clear();
+        autores.clear();
+        categorias.clear();
+        editoriales.clear();
+        for (Libro libro : libroRepository.findByEstadoOrderByFecha_creacionDesc(Estado.activo)) {
+            aplicar(libro.getId_libro(), entradaDe(libro));
+        }
+        instantanea = null;
+        listo = true;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public synchronized void alModificarLibro(LibroModificadoEvent evento) {
+        Entrada nueva;
+        if (evento.esSoloStock()) {
+            // Solo cambió el stock: se reutilizan los valores ya conocidos del libro
+            Entrada actual = entradas.get(evento.idLibro());
+            if (actual == null) return; // libro inactivo
+            nueva = actual.conStock(evento.cantidadStock());
+        } else {
+            nueva = evento.esEliminacion() ? null : entradaDe(evento.libro());
+        }
+        if (Objects.equals(entradas.get(evento.idLibro()), nueva)) return;
+        aplicar(evento.idLibro(), nueva);
+        instantanea = null;
+    }
+
+    /**
+     * Facetas actuales, ordenadas alfabéticamente por valor
+     */
+    public FacetasCatalogo obtener() {
+        FacetasCatalogo actual = instantanea;
+        if (actual == null) {
+            synchronized (this) {
+                if (instantanea == null) {
+                    instantanea = new FacetasCatalogo(ordenar(autores), ordenar(categorias), ordenar(editoriales));
+                }
+                actual = instantanea;
+            }
+        }
+        return actual;
+    }
+
+    public boolean estaListo() {
+        return listo;
+    }
+
+    // Quita los valores anteriores del libro y suma los nuevos (null = eliminado o inactivo).
+    // Solo cuentan las entradas disponibles (con stock)
+    private void aplicar(Integer idLibro, Entrada nueva) {
+        Entrada anterior = nueva == null ? entradas.remove(idLibro) : entradas.put(idLibro, nueva);
+        if (anterior != null && anterior.disponible()) {
+            restar(autores, anterior.autor());
+            restar(categorias, anterior.categoria());
+            restar(editoriales, anterior.editorial());
+        }
+        if (nueva != null && nueva.disponible()) {
+            sumar(autores, nueva.autor());
+            sumar(categorias, nueva.categoria());
+            sumar(editoriales, nueva.editorial());
+        }
+    }
+
+    // Solo los libros activos forman parte de las facetas; se cuentan si además tienen stock
+    private static Entrada entradaDe(Libro libro) {
+        if (libro == null || !libro.isActivo()) return null;
+        return new Entrada(limpiar(libro.getAutor()), limpiar(libro.getCategoria()), limpiar(libro.getEditorial()),
+                libro.tieneStock());
+    }
+
+    private static String limpiar(String valor) {
+        return (valor == null || valor.trim().isEmpty()) ? null : valor.trim();
+    }
+
+    // Misma normalización que el filtro por autor: sin espacios en los extremos y en minúsculas
+    private static String clave(String valor) {
+        return valor.toLowerCase();
+    }
+
+    private static void sumar(Map<String, Conteo> conteos, String valor) {
+        if (valor != null) conteos.computeIfAbsent(clave(valor), k -> new Conteo(valor)).cantidad++;
+    }
+
+    private static void restar(Map<String, Conteo> conteos, String valor) {
+        if (valor != null) conteos.computeIfPresent(clave(valor), (k, c) -> --c.cantidad > 0 ? c : null);
+    }
+
+    private static List<ValorFaceta> ordenar(Map<String, Conteo> conteos) {
+        return conteos.values().stream()
+                .map(c -> new ValorFaceta(c.valor, c.cantidad))
+                .sorted(Comparator.comparing(ValorFaceta::valor, String.CASE_INSENSITIVE_ORDER))
+                .toList();
+    }
+}
@@ -0,0 +1,107 @@
+package com.sivil.systeam.service;
+
+import com.sivil.systeam.event.LibroModificadoEvent;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Caché del grid del catálogo ya renderizado (tarjetas de libros + paginación),
+ * por búsqueda, autor, orden, página e idioma (formato de precios).
+ *
+ * - Versión global del catálogo: cambia con cada LibroModificadoEvent confirmado
+ *   (alta, edición, baja o stock) y vacía la caché. Parte del reloj al iniciar para
+ *   que un ETag emitido antes de reiniciar no coincida con la nueva versión
+ * - Las lecturas no toman locks; si varias peticiones piden la misma clave sin
+ *   renderizar, solo la primera consulta la BD y renderiza, las demás esperan su resultado
+ * - Un render que termina después de un cambio de versión se entrega pero no se guarda
+ * - Acotada por catalogo.cache.max-paginas: al llegar al límite se renderiza sin guardar
+ */
+@Component
+public class CatalogoGridCache {
+
+    public record Clave(String busqueda, String autor, String orden, int pagina, String idioma) {}
+
+    public record Grid(String html, long totalLibros) {}
+
+    private final ConcurrentHashMap<Clave, CompletableFuture<Grid>> entradas = new ConcurrentHashMap<>();
+
+    private final AtomicLong version = new AtomicLong(System.currentTimeMillis());
+
+    private final int maxPaginas;
+
+    public CatalogoGridCache(@Value("${catalogo.cache.max-paginas:500}") int maxPaginas) {
+        this.maxPaginas = maxPaginas;
+    }
+
+    /**
+     * Versión actual del catálogo (para el ETag de la página)
+     */
+    public long version() {
+        return version.get();
+    }
+
+    /**
+     * Grid de la clave indicada; si no está en caché lo produce con renderizar
+     */
+    public Grid obtener(Clave clave, Supplier<Grid> renderizar) {
+        CompletableFuture<Grid> existente = entradas.get(clave);
+        if (existente == null) {
+            if (entradas.size() >= maxPaginas) {
+                return renderizar.get();
+            }
+            CompletableFuture<Grid> nuevo = new CompletableFuture<>();
+            existente = entradas.putIfAbsent(clave, nuevo);
+            if (existente == null) {
+                return renderizarYGuardar(clave, nuevo, renderizar);
+            }
+        }
+        try {
+            return existente.join();
+        } catch (CompletionException e) {
+            // Falló el render de otra petición: se intenta de nuevo sin caché
+            return renderizar.get();
+        }
+    }
+
+    /**
+     * Cambio de inventario confirmado: nueva versión y caché vacía.
+     * Se ejecuta después de los demás listeners (índice de búsqueda, facetas) para que
+     * un render posterior al cambio ya los vea actualizados.
+     */
+    @Order(Ordered.LOWEST_PRECEDENCE)
+    @TransactionalEventListener(fallbackExecution = true)
+    public void alModificarLibro(LibroModificadoEvent evento) {
+        version.incrementAndGet();
+        entradas.clear();
+    }
+
+    public int tamano() {
+        return entradas.size();
+    }
+
+    private Grid renderizarYGuardar(Clave clave, CompletableFuture<Grid> futuro, Supplier<Grid> renderizar) {
+        long versionAntes = version.get();
+        Grid grid;
+        try {
+            grid = renderizar.get();
+        } catch (RuntimeException e) {
+            entradas.remove(clave, futuro);
+            futuro.completeExceptionally(e);
+            throw e;
+        }
+        futuro.complete(grid);
+        if (version.get() != versionAntes) {
+            entradas.remove(clave, futuro);
+        }
+        return grid;
+    }
+}
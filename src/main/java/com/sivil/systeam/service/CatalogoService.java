@@ -3,14 +3,19 @@ package com.sivil.systeam.service;
 import com.sivil.systeam.entity.Libro;
 import com.sivil.systeam.enums.Estado;
 import com.sivil.systeam.repository.LibroRepository;
+import com.sivil.systeam.repository.LibroSpecifications;
+import com.sivil.systeam.service.dto.FacetasCatalogo;
+import com.sivil.systeam.service.dto.LibroCard;
+import com.sivil.systeam.service.dto.PaginaCursor;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
 
-import java.util.Comparator;
+import java.util.Collection;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -24,8 +29,24 @@ public class CatalogoService {
     @Autowired
     private LibroRepository libroRepository;
 
+    @Autowired
+    private CatalogSearchIndex catalogSearchIndex;
+
+    @Autowired
+    private CatalogoFacetas catalogoFacetas;
+
+    @Autowired
+    private LibroCache libroCache;
+
     private static final int LIBROS_POR_PAGINA = 12;
 
+    // Por encima de este número de coincidencias se filtra con LIKE en lugar de IN (...)
+    private static final int MAX_IDS_FILTRO_INDICE = 1000;
+
+    // Motor de búsqueda del catálogo: "memoria" (CatalogSearchIndex) o "postgres" (texto completo)
+    @Value("${catalogo.busqueda.motor:memoria}")
+    private String motorBusqueda;
+
     /**
      * Obtiene todos los libros disponibles para el catálogo (activos con stock > 0)
      */
@@ -35,107 +56,97 @@ public class CatalogoService {
 
     /**
      * Busca y filtra libros con paginación
-     * @param busqueda término de búsqueda en título (mínimo 3 caracteres)
+     * Los filtros, el orden y la paginación se ejecutan en la base de datos:
+     * solo se traen los 12 libros de la página más el conteo total
+     * @param busqueda término de búsqueda en título, autor o editorial (mínimo 3 caracteres)
      * @param autor filtro por autor específico
      * @param ordenamiento tipo de ordenamiento a aplicar
      * @param pagina número de página (0-based)
-     * @return página con libros filtrados y ordenados
+     * @return página con libros filtrados y ordenados (proyección LibroCard: solo las
+     *         columnas de la tarjeta, sin descripción ni colecciones)
      */
-    public Page<Libro> buscarYFiltrarLibros(String busqueda, String autor, String ordenamiento, int pagina) {
-        // 1. Obtener libros base (activos con stock)
-        List<Libro> libros = obtenerLibrosDisponibles();
-
-        // 2. Aplicar búsqueda por título (si se proporciona y tiene al menos 3 caracteres)
-        if (busqueda != null && !busqueda.trim().isEmpty() && busqueda.trim().length() >= 3) {
-            String busquedaLower = busqueda.toLowerCase().trim();
-            libros = libros.stream()
-                    .filter(libro -> libro.getTitulo().toLowerCase().contains(busquedaLower))
-                    .collect(Collectors.toList());
-        }
-
-        // 3. Aplicar filtro por autor (si se proporciona)
-        if (autor != null && !autor.trim().isEmpty() && !autor.equals("todos")) {
-            String autorBuscado = autor.trim();
-            libros = libros.stream()
-                    .filter(libro -> libro.getAutor() != null && 
-                            libro.getAutor().trim().equalsIgnoreCase(autorBuscado))
-                    .collect(Collectors.toList());
-        }
+    public Page<LibroCard> buscarYFiltrarLibros(String busqueda, String autor, String ordenamiento, int pagina) {
+        // 1-3. Libros base (activos con stock) + búsqueda por título + filtro por autor
+        Specification<Libro> filtro = filtroCatalogo(busqueda, autor);
 
-        // 4. Aplicar ordenamiento
-        libros = aplicarOrdenamiento(libros, ordenamiento);
+        // 4. Ordenamiento (titulo-asc por defecto)
+        filtro = filtro.and(LibroSpecifications.ordenadoPor(normalizarOrden(ordenamiento)));
 
-        // 5. Aplicar paginación
-        return paginarLibros(libros, pagina);
+        // 5. Paginación
+        Pageable pageable = PageRequest.of(Math.max(pagina, 0), LIBROS_POR_PAGINA);
+        return libroRepository.findBy(filtro, q -> q.as(LibroCard.class).page(pageable));
     }
 
     /**
-     * Aplica el ordenamiento especificado a la lista de libros
+     * Variante por cursor (keyset) de buscarYFiltrarLibros.
+     * En lugar de OFFSET continúa después del último libro entregado, por lo que
+     * el costo no crece con la profundidad de la página y no ejecuta conteo.
+     * @param after cursor devuelto por la página anterior (null o vacío = primera página)
+     * @throws IllegalArgumentException si el cursor es inválido o de otro ordenamiento
      */
-    private List<Libro> aplicarOrdenamiento(List<Libro> libros, String ordenamiento) {
-        if (ordenamiento == null || ordenamiento.isEmpty()) {
-            ordenamiento = "titulo-asc"; // Default
+    public PaginaCursor<LibroCard> buscarYFiltrarLibrosDespuesDe(String busqueda, String autor,
+                                                                 String ordenamiento, String after) {
+        String orden = normalizarOrden(ordenamiento);
+        Specification<Libro> filtro = filtroCatalogo(busqueda, autor);
+
+        if (after != null && !after.isBlank()) {
+            CursorPaginacion.Cursor cursor = CursorPaginacion.decodificar(after, orden);
+            filtro = filtro.and(LibroSpecifications.despuesDe(orden, cursor.valor(), cursor.id()));
         }
+        filtro = filtro.and(LibroSpecifications.ordenadoPor(orden));
 
-        switch (ordenamiento) {
-            case "precio-asc":
-                return libros.stream()
-                        .sorted(Comparator.comparing(Libro::getPrecio))
-                        .collect(Collectors.toList());
-            
-            case "precio-desc":
-                return libros.stream()
-                        .sorted(Comparator.comparing(Libro::getPrecio).reversed())
-                        .collect(Collectors.toList());
-            
-            case "titulo-asc":
-                return libros.stream()
-                        .sorted(Comparator.comparing(libro -> libro.getTitulo().toLowerCase()))
-                        .collect(Collectors.toList());
-            
-            case "titulo-desc":
-                return libros.stream()
-                        .sorted(Comparator.comparing((Libro libro) -> libro.getTitulo().toLowerCase()).reversed())
-                        .collect(Collectors.toList());
-            
-            case "stock-asc":
-                return libros.stream()
-                        .sorted(Comparator.comparing(Libro::getCantidad_stock))
-                        .collect(Collectors.toList());
-            
-            case "stock-desc":
-                return libros.stream()
-                        .sorted(Comparator.comparing(Libro::getCantidad_stock).reversed())
-                        .collect(Collectors.toList());
-            
-            default:
-                return libros;
-        }
+        // Se pide una fila extra para saber si existe una página siguiente
+        List<LibroCard> libros = libroRepository.findBy(filtro,
+                q -> q.as(LibroCard.class).limit(LIBROS_POR_PAGINA + 1).all());
+        return PaginaCursor.de(libros, LIBROS_POR_PAGINA, libro ->
+                CursorPaginacion.codificar(orden, LibroSpecifications.valorDeOrden(libro.getPrecio(), libro.getTitulo(), libro.getCantidad_stock(), orden), libro.getId_libro()));
     }
 
     /**
-     * Convierte una lista de libros en una página
+     * Filtros comunes del catálogo: disponibles, búsqueda (mínimo 3 caracteres) y autor.
+     * La búsqueda se resuelve con CatalogSearchIndex (título, autor o editorial) y se
+     * pasa a la consulta como lista de IDs; si el índice no está listo o hay demasiadas
+     * coincidencias se usa LIKE sobre los mismos campos (misma semántica de subcadena).
+     * Con catalogo.busqueda.motor=postgres la condición de texto completo va dentro de la
+     * misma consulta paginada (y de su conteo), sin límite de coincidencias.
      */
-    private Page<Libro> paginarLibros(List<Libro> libros, int numeroPagina) {
-        Pageable pageable = PageRequest.of(numeroPagina, LIBROS_POR_PAGINA);
-        
-        int inicio = (int) pageable.getOffset();
-        int fin = Math.min((inicio + pageable.getPageSize()), libros.size());
-        
-        List<Libro> librosPaginados;
-        if (inicio > libros.size()) {
-            librosPaginados = List.of();
-        } else {
-            librosPaginados = libros.subList(inicio, fin);
+    private Specification<Libro> filtroCatalogo(String busqueda, String autor) {
+        Specification<Libro> filtro = LibroSpecifications.disponibles();
+
+        if (busqueda != null && busqueda.trim().length() >= 3) {
+            String termino = busqueda.trim();
+            if ("postgres".equalsIgnoreCase(motorBusqueda)) {
+                filtro = filtro.and(LibroSpecifications.textoCompleto(termino));
+            } else {
+                Collection<Integer> ids = catalogSearchIndex.estaListo() ? catalogSearchIndex.buscar(termino, true) : null;
+                if (ids != null && ids.size() <= MAX_IDS_FILTRO_INDICE) {
+                    filtro = filtro.and(LibroSpecifications.idEn(ids));
+                } else {
+                    filtro = filtro.and(LibroSpecifications.textoContiene(termino));
+                }
+            }
         }
-        
-        return new PageImpl<>(librosPaginados, pageable, libros.size());
+
+        if (autor != null && !autor.trim().isEmpty() && !autor.equals("todos")) {
+            filtro = filtro.and(LibroSpecifications.autorIgual(autor));
+        }
+        return filtro;
+    }
+
+    private String normalizarOrden(String ordenamiento) {
+        return (ordenamiento == null || ordenamiento.isEmpty()) ? "titulo-asc" : ordenamiento;
     }
 
     /**
      * Obtiene la lista de autores únicos de libros disponibles
+     * Se lee de las facetas en memoria; solo mientras se cargan se consulta la BD
      */
     public List<String> obtenerAutoresDisponibles() {
+        if (catalogoFacetas.estaListo()) {
+            return catalogoFacetas.obtener().autores().stream()
+                    .map(FacetasCatalogo.ValorFaceta::valor)
+                    .collect(Collectors.toList());
+        }
         return obtenerLibrosDisponibles().stream()
                 .map(Libro::getAutor)
                 .filter(autor -> autor != null && !autor.trim().isEmpty())
@@ -145,11 +156,18 @@ public class CatalogoService {
                 .collect(Collectors.toList());
     }
 
+    /**
+     * Autores, categorías y editoriales de libros disponibles con su conteo
+     */
+    public FacetasCatalogo obtenerFacetas() {
+        return catalogoFacetas.obtener();
+    }
+
     /**
      * Obtiene un libro por su ID si está disponible (activo con stock)
      */
     public Libro obtenerLibroDisponiblePorId(Integer id) {
-        return libroRepository.findById(id)
+        return libroCache.obtener(id)
                 .filter(libro -> libro.isActivo() && libro.tieneStock())
                 .orElse(null);
     }
@@ -6,6 +6,7 @@ import com.sivil.systeam.entity.Libro;
 import com.sivil.systeam.entity.Usuario;
 import com.sivil.systeam.enums.EstadoCompra;
 import com.sivil.systeam.enums.MetodoPago;
+import com.sivil.systeam.event.LibroModificadoEvent;
 import com.sivil.systeam.repository.CompraOnlineRepository;
 import com.sivil.systeam.repository.DetalleCompraRepository;
 import com.sivil.systeam.repository.LibroRepository;
@@ -13,21 +14,28 @@ import com.sivil.systeam.repository.UsuarioRepository;
 import com.sivil.systeam.service.dto.CartItemDTO;
 import com.sivil.systeam.service.dto.CheckoutRequest;
 import com.sivil.systeam.service.dto.CheckoutResponse;
+import com.sivil.systeam.service.dto.CompraResumen;
+import com.sivil.systeam.service.dto.PaginaCursor;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.server.ResponseStatusException;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.time.LocalDateTime;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.UUID;
+import java.util.TreeMap;
 
 @Service
 public class CompraService {
@@ -36,8 +44,12 @@ public class CompraService {
     @Autowired private UsuarioRepository usuarioRepository;
     @Autowired private LibroRepository libroRepository;
     @Autowired private DetalleCompraRepository detalleCompraRepository;
+    @Autowired private ApplicationEventPublisher eventPublisher;
+    @Autowired private GeneradorNumeroOrden generadorNumeroOrden;
+    @Autowired private ReservaStockService reservaStockService;
 
     private static final BigDecimal IVA = new BigDecimal("0.13");
+    private static final String ORDEN_FECHA_COMPRA = "fecha_compra-desc";
 
     /**
      * Checkout de compra online.
@@ -64,19 +76,32 @@ public class CompraService {
         // ===== 3) Validar/Descontar stock y calcular subtotal =====
         BigDecimal subtotal = BigDecimal.ZERO;
 
+        // Cantidad total por libro (el mismo libro puede venir en varias líneas)
+        Map<Integer, Integer> cantidades = new TreeMap<>();
         for (CartItemDTO item : request.items()) {
             Integer cantidad = item.cantidad();
-            if (cantidad == null || cantidad <= 0) {
+            if (item.libroId() == null || cantidad == null || cantidad <= 0) {
                 throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Cantidad inválida.");
             }
+            cantidades.merge(item.libroId(), cantidad, Integer::sum);
+        }
+
+        // Bloqueo pesimista de todos los libros en una consulta, ordenados por id,
+        // para evitar carreras de stock y deadlocks entre checkouts concurrentes
+        Map<Integer, Libro> libros = new HashMap<>();
+        for (Libro libro : libroRepository.lockAllByIdForUpdate(cantidades.keySet())) {
+            libros.put(libro.getId_libro(), libro);
+        }
 
-            // Bloqueo pesimista para evitar carreras de stock
-            Libro libro = libroRepository.lockByIdForUpdate(item.libroId())
-                    .orElseThrow(() -> new ResponseStatusException(
-                            HttpStatus.NOT_FOUND, "Libro no existe: " + item.libroId()
-                    ));
+        for (Map.Entry<Integer, Integer> entrada : cantidades.entrySet()) {
+            Integer cantidad = entrada.getValue();
+            Libro libro = libros.get(entrada.getKey());
+            if (libro == null) {
+                throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Libro no existe: " + entrada.getKey());
+            }
 
-            int disponible = (libro.getCantidad_stock() == null) ? 0 : libro.getCantidad_stock();
+            // Las unidades apartadas por compras pendientes de pago no están disponibles
+            int disponible = reservaStockService.disponible(libro);
             if (disponible < cantidad) {
                 throw new ResponseStatusException(
                         HttpStatus.CONFLICT,
@@ -85,7 +110,8 @@ public class CompraService {
             }
 
             // Descontar stock bajo bloqueo
-            libro.setCantidad_stock(disponible - cantidad);
+            libro.setCantidad_stock(libro.getCantidad_stock() - cantidad);
+            eventPublisher.publishEvent(LibroModificadoEvent.guardado(libro));
 
             // Precio desde el libro (si tu DTO trae precio y prefieres usarlo, reemplaza por item.precioUnitario())
             BigDecimal precio = (libro.getPrecio() == null) ? BigDecimal.ZERO : libro.getPrecio();
@@ -97,7 +123,7 @@ public class CompraService {
         BigDecimal total     = subtotal.add(impuestos).setScale(2, RoundingMode.HALF_UP);
 
         // ===== 4) Número de orden =====
-        String numeroOrden = "ORD-" + UUID.randomUUID().toString().substring(0, 8).toUpperCase();
+        String numeroOrden = generadorNumeroOrden.siguiente();
 
         // ===== 5) Cabecera (Compra) =====
         CompraOnline compra = new CompraOnline();
@@ -118,12 +144,9 @@ public class CompraService {
 
         compraOnlineRepository.save(compra); // persistimos para tener id_compra
 
-        // ===== 6) Detalles =====
+        // ===== 6) Detalles (con los libros ya bloqueados, sin volver a consultarlos) =====
         for (CartItemDTO item : request.items()) {
-            Libro libro = libroRepository.findById(item.libroId())
-                    .orElseThrow(() -> new ResponseStatusException(
-                            HttpStatus.NOT_FOUND, "Libro no existe: " + item.libroId()
-                    ));
+            Libro libro = libros.get(item.libroId());
 
             // Si quieres que el detalle refleje el precio del momento:
             BigDecimal precioUnit = (libro.getPrecio() == null)
@@ -184,4 +207,37 @@ public class CompraService {
         return compraOnlineRepository.findAllByComprador(idUsuario, order);
     }
 
+    /**
+     * Compras del usuario que coinciden con el número de orden (vacío = todas),
+     * de la más reciente a la más antigua, como filas del listado.
+     */
+    @Transactional(readOnly = true)
+    public List<CompraResumen> listarResumenesPorUsuario(Integer idUsuario, String numeroOrden) {
+        return (numeroOrden == null || numeroOrden.isBlank())
+                ? compraOnlineRepository.findResumenesByComprador(idUsuario)
+                : compraOnlineRepository.findResumenesByCompradorAndNumero(idUsuario, numeroOrden.trim());
+    }
+
+    /**
+     * Compras del usuario por cursor (keyset) sobre fecha_compra DESC.
+     * @param after cursor de la página anterior (null o vacío = primera página)
+     * @throws IllegalArgumentException si el cursor es inválido
+     */
+    @Transactional(readOnly = true)
+    public PaginaCursor<CompraResumen> listarPorUsuarioDespuesDe(Integer idUsuario, String after, int tamano) {
+        Pageable limite = PageRequest.of(0, tamano + 1);
+        List<CompraResumen> filas;
+        if (after == null || after.isBlank()) {
+            filas = compraOnlineRepository.findPrimerasByComprador(idUsuario, limite);
+        } else {
+            CursorPaginacion.Cursor cursor = CursorPaginacion.decodificar(after, ORDEN_FECHA_COMPRA);
+            LocalDateTime fecha = cursor.valorComoFecha();
+            filas = fecha == null
+                    ? compraOnlineRepository.findSiguientesSinFechaByComprador(idUsuario, cursor.id(), limite)
+                    : compraOnlineRepository.findSiguientesByComprador(idUsuario, fecha, cursor.id(), limite);
+        }
+        return PaginaCursor.de(filas, tamano, c ->
+                CursorPaginacion.codificar(ORDEN_FECHA_COMPRA, c.fechaCompra(), c.idCompra()));
+    }
+
 }
@@ -0,0 +1,56 @@
+package com.sivil.systeam.service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * Token opaco "after" para la paginación por cursor (keyset).
+ * Guarda el ordenamiento con el que se generó, el id del último registro
+ * entregado y el valor de la clave de orden de ese registro.
+ */
+public final class CursorPaginacion {
+
+    public record Cursor(String valor, Integer id) {
+
+        /**
+         * Valor de la clave como fecha (listados ordenados por fecha_venta/fecha_compra).
+         * null si el último registro entregado no tenía fecha.
+         */
+        public LocalDateTime valorComoFecha() {
+            if (valor == null) return null;
+            try {
+                return LocalDateTime.parse(valor);
+            } catch (DateTimeParseException e) {
+                throw new IllegalArgumentException("Cursor de paginación inválido", e);
+            }
+        }
+    }
+
+    private CursorPaginacion() {}
+
+    public static String codificar(String orden, Object valor, Integer id) {
+        String texto = orden + "\n" + id + "\n" + (valor == null ? "" : valor.toString());
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(texto.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @throws IllegalArgumentException si el token está mal formado o fue
+     *                                  generado con otro ordenamiento
+     */
+    public static Cursor decodificar(String token, String ordenEsperado) {
+        try {
+            String texto = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            String[] partes = texto.split("\n", 3);
+            if (partes.length != 3 || !partes[0].equals(ordenEsperado)) {
+                throw new IllegalArgumentException("El cursor no corresponde al ordenamiento solicitado");
+            }
+            return new Cursor(partes[2].isEmpty() ? null : partes[2], Integer.valueOf(partes[1]));
+        } catch (IllegalArgumentException e) {
+            // Incluye errores de Base64 y NumberFormatException
+            throw new IllegalArgumentException("Cursor de paginación inválido", e);
+        }
+    }
+}
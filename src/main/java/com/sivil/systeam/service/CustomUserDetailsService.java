@@ -2,9 +2,9 @@ package com.sivil.systeam.service;
 
 import com.sivil.systeam.entity.Usuario;
 import com.sivil.systeam.repository.UsuarioRepository;
+import com.sivil.systeam.service.dto.UsuarioSesion;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
-import org.springframework.security.core.userdetails.User;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
@@ -27,11 +27,10 @@ public class CustomUserDetailsService implements UserDetailsService {
         // Asignar rol basado en el tipo_usuario (por ejemplo: ADMIN, VENDEDOR, COMPRADOR)
         String authority = "ROLE_" + usuario.getTipo_usuario().name().toUpperCase();
 
-        // Construir objeto UserDetails para Spring Security
-        return User.builder()
-                .username(usuario.getEmail())              // Email como identificador principal
-                .password(usuario.getContraseña())         // Contraseña sin encriptar (NoOpPasswordEncoder)
-                .authorities(Collections.singletonList(new SimpleGrantedAuthority(authority)))
-                .build();
+        // Construir objeto UserDetails para Spring Security: el email es el identificador principal
+        // y los datos del usuario quedan en la sesión (UsuarioService.getSesionActual no vuelve a consultarlos).
+        // Contraseña sin encriptar (NoOpPasswordEncoder)
+        return new UsuarioAutenticado(UsuarioSesion.de(usuario), usuario.getContraseña(),
+                Collections.singletonList(new SimpleGrantedAuthority(authority)));
     }
 }
@@ -0,0 +1,189 @@
+package com.sivil.systeam.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Exportación CSV de ventas, compras online e inventario.
+ *
+ * - Las filas se leen con un cursor de PostgreSQL (fetchSize dentro de una transacción
+ *   de solo lectura) y se escriben directamente en la respuesta: la memoria usada no
+ *   depende de la cantidad de filas
+ * - La salida se vacía cada exportacion.filas-por-envio filas, así el cliente recibe
+ *   datos desde el principio
+ * - El archivo lleva BOM UTF-8 para que Excel muestre bien las tildes
+ */
+@Service
+public class ExportacionService {
+
+    /**
+     * Exportaciones disponibles (nombre usado en la URL)
+     */
+    public enum Tipo {
+        ventas, compras, libros
+    }
+
+    private static final String VENTAS =
+            "SELECT v.id_venta AS id, v.numero_factura, v.fecha_venta, v.nombre_cliente, v.identificacion_cliente, " +
+            "u.nombre_completo AS vendedor, v.subtotal, v.descuento_aplicado, v.impuestos, v.total, " +
+            "v.tipo_pago, v.estado, v.motivo_inactivacion " +
+            "FROM ventas v JOIN usuarios u ON u.id_usuario = v.id_vendedor";
+
+    private static final String COMPRAS =
+            "SELECT c.id_compra AS id, c.numero_orden, c.fecha_compra, u.nombre_completo AS comprador, u.email, " +
+            "c.subtotal, c.impuestos, c.total, c.metodo_pago, c.estado_compra, c.direccion_entrega " +
+            "FROM compras_online c JOIN usuarios u ON u.id_usuario = c.id_comprador";
+
+    private static final String LIBROS =
+            "SELECT id_libro AS id, codigo_libro, titulo, autor, editorial, categoria, año_publicacion, " +
+            "precio, cantidad_stock, estado, fecha_creacion, fecha_ultima_actualizacion " +
+            "FROM libros";
+
+    private static final byte[] BOM = {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF};
+
+    // Número con signo tal como lo devuelve la BD (-12, -3.50)
+    private static final Pattern NUMERO = Pattern.compile("-?\\d+(\\.\\d+)?");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate soloLectura;
+
+    @Value("${exportacion.filas-por-envio:500}")
+    private int filasPorEnvio;
+
+    @Autowired
+    public ExportacionService(DataSource dataSource,
+                              PlatformTransactionManager transactionManager,
+                              @Value("${exportacion.fetch-size:1000}") int fetchSize) {
+        // JdbcTemplate propio: el fetchSize solo aplica a las exportaciones
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate.setFetchSize(fetchSize);
+        this.soloLectura = new TransactionTemplate(transactionManager);
+        this.soloLectura.setReadOnly(true);
+    }
+
+    /**
+     * Escribe la exportación completa en formato CSV
+     * @param desde fecha inicial (inclusive, ignorada para libros); null = sin límite
+     * @param hasta fecha final (inclusive, ignorada para libros); null = sin límite
+     * @param salida destino (no se cierra)
+     * @return cantidad de filas exportadas
+     */
+    public Integer exportarCsv(Tipo tipo, LocalDate desde, LocalDate hasta, OutputStream salida) throws IOException {
+        if (desde != null && hasta != null && desde.isAfter(hasta)) {
+            throw new IllegalArgumentException("La fecha desde no puede ser posterior a la fecha hasta");
+        }
+        StringBuilder sql = new StringBuilder(consulta(tipo));
+        List<Object> parametros = new ArrayList<>();
+        String columnaFecha = columnaFecha(tipo);
+        if (columnaFecha != null) {
+            List<String> condiciones = new ArrayList<>();
+            if (desde != null) {
+                condiciones.add(columnaFecha + " >= ?");
+                parametros.add(Timestamp.valueOf(desde.atStartOfDay()));
+            }
+            if (hasta != null) {
+                condiciones.add(columnaFecha + " < ?");
+                parametros.add(Timestamp.valueOf(hasta.plusDays(1).atStartOfDay()));
+            }
+            if (!condiciones.isEmpty()) sql.append(" WHERE ").append(String.join(" AND ", condiciones));
+        }
+        sql.append(" ORDER BY id");
+
+        salida.write(BOM);
+        EscritorCsv escritor = new EscritorCsv(new BufferedWriter(new OutputStreamWriter(salida, StandardCharsets.UTF_8)));
+        try {
+            return soloLectura.execute(estado -> jdbcTemplate.query(sql.toString(), escritor, parametros.toArray()));
+        } catch (UncheckedIOException e) {
+            throw e.getCause(); // el cliente cerró la conexión
+        }
+    }
+
+    public static String nombreArchivo(Tipo tipo) {
+        return tipo.name() + "-" + LocalDate.now() + ".csv";
+    }
+
+    private static String consulta(Tipo tipo) {
+        return switch (tipo) {
+            case ventas -> VENTAS;
+            case compras -> COMPRAS;
+            case libros -> LIBROS;
+        };
+    }
+
+    private static String columnaFecha(Tipo tipo) {
+        return switch (tipo) {
+            case ventas -> "v.fecha_venta";
+            case compras -> "c.fecha_compra";
+            case libros -> null;
+        };
+    }
+
+    /**
+     * Escribe el encabezado (alias de la consulta) y cada fila del cursor como una línea CSV
+     */
+    private final class EscritorCsv implements ResultSetExtractor<Integer> {
+        private final Writer writer;
+
+        EscritorCsv(Writer writer) {
+            this.writer = writer;
+        }
+
+        @Override
+        public Integer extractData(ResultSet rs) throws SQLException {
+            try {
+                ResultSetMetaData meta = rs.getMetaData();
+                int columnas = meta.getColumnCount();
+                for (int i = 1; i <= columnas; i++) {
+                    if (i > 1) writer.write(',');
+                    writer.write(meta.getColumnLabel(i));
+                }
+                writer.write("\r\n");
+                writer.flush();
+
+                int filas = 0;
+                while (rs.next()) {
+                    for (int i = 1; i <= columnas; i++) {
+                        if (i > 1) writer.write(',');
+                        writer.write(celda(rs.getString(i)));
+                    }
+                    writer.write("\r\n");
+                    if (++filas % filasPorEnvio == 0) writer.flush();
+                }
+                writer.flush();
+                return filas;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    // Comillas cuando hace falta; los textos que Excel interpretaría como fórmula se anteponen con '
+    // (los números negativos se dejan tal cual)
+    static String celda(String valor) {
+        if (valor == null) return "";
+        if (!valor.isEmpty() && "=+-@\t\r".indexOf(valor.charAt(0)) >= 0 && !NUMERO.matcher(valor).matches()) {
+            valor = "'" + valor;
+        }
+        if (valor.indexOf(',') >= 0 || valor.indexOf('"') >= 0 || valor.indexOf('\n') >= 0 || valor.indexOf('\r') >= 0) {
+            return '"' + valor.replace("\"", "\"\"") + '"';
+        }
+        return valor;
+    }
+}
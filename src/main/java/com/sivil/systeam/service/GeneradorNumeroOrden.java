@@ -0,0 +1,58 @@
+package com.sivil.systeam.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generador de números de orden para compras online (ORD-XXXXXXXXXXXXX).
+ *
+ * Cada número es un entero de 63 bits: milisegundos desde 2025-01-01 (41 bits),
+ * ID del nodo (10 bits) y un contador dentro del milisegundo (12 bits),
+ * escrito en base 36 con ancho fijo de 13 caracteres.
+ * - Ordenado por tiempo: los nuevos números se insertan al final del índice único
+ * - Sin colisiones entre instancias mientras cada una tenga su compras.nodo-id
+ * - Sin consultas a la base de datos ni bloqueos (un compareAndSet por número)
+ */
+@Component
+public class GeneradorNumeroOrden {
+
+    private static final long EPOCA = 1735689600000L; // 2025-01-01T00:00:00Z
+    private static final int BITS_NODO = 10;
+    private static final int BITS_CONTADOR = 12;
+    private static final long MAX_NODO = (1L << BITS_NODO) - 1;
+    private static final long MASCARA_CONTADOR = (1L << BITS_CONTADOR) - 1;
+    private static final int ANCHO = 13; // Long.MAX_VALUE en base 36
+
+    private final long nodo;
+
+    // (milisegundos - EPOCA) << BITS_CONTADOR | contador, del último número entregado
+    private final AtomicLong ultimo = new AtomicLong();
+
+    public GeneradorNumeroOrden(@Value("${compras.nodo-id:0}") long nodo) {
+        if (nodo < 0 || nodo > MAX_NODO) {
+            throw new IllegalStateException("compras.nodo-id debe estar entre 0 y " + MAX_NODO + ": " + nodo);
+        }
+        this.nodo = nodo;
+    }
+
+    public String siguiente() {
+        long estado;
+        long previo;
+        do {
+            previo = ultimo.get();
+            long ahora = (System.currentTimeMillis() - EPOCA) << BITS_CONTADOR;
+            // Si el reloj no avanzó (o retrocedió) se continúa desde el último valor;
+            // al agotar el contador se toma prestado el siguiente milisegundo
+            estado = Math.max(ahora, previo + 1);
+        } while (!ultimo.compareAndSet(previo, estado));
+
+        long milisegundos = estado >>> BITS_CONTADOR;
+        long contador = estado & MASCARA_CONTADOR;
+        long valor = (milisegundos << (BITS_NODO + BITS_CONTADOR)) | (nodo << BITS_CONTADOR) | contador;
+
+        String texto = Long.toString(valor, 36).toUpperCase();
+        return "ORD-" + "0".repeat(ANCHO - texto.length()) + texto;
+    }
+}
@@ -0,0 +1,157 @@
+package com.sivil.systeam.service;
+
+import com.sivil.systeam.entity.Pago;
+import com.sivil.systeam.repository.PagoRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * Claves de idempotencia para los formularios de pago.
+ *
+ * - Cada formulario de pago lleva una clave única (campo claveIdempotencia, un UUID)
+ * - La clave vale solo para su dueño (usuario autenticado o sesión, ver EstadoSesion.dueno):
+ *   la clave de otro usuario nunca devuelve su pago
+ * - La primera petición con la clave procesa el pago; los reintentos (doble clic,
+ *   recarga, reenvío del navegador) reciben el mismo Pago sin volver a ejecutar
+ *   la transacción ni tocar el stock
+ * - Si el reintento llega mientras la primera petición sigue en curso, espera su resultado
+ * - Si el pago falla, la clave se libera para poder reintentarlo
+ * - Las claves recientes se guardan en memoria (máximo pagos.idempotencia.max-claves);
+ *   con pagos.idempotencia.persistir=true también se registran en la tabla pago_idempotencia
+ *   dentro de la misma transacción del pago, lo que cubre reinicios y varias instancias
+ */
+@Service
+public class IdempotenciaPagoService {
+
+    private static final long ESPERA_MAXIMA_SEGUNDOS = 30;
+
+    private static final Pattern UUID = Pattern.compile(
+            "^[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}$");
+
+    @Autowired
+    private PagoRepository pagoRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${pagos.idempotencia.max-claves:10000}")
+    private int maxClaves;
+
+    @Value("${pagos.idempotencia.persistir:false}")
+    private boolean persistir;
+
+    // Resultado (o pago en curso) por dueño y clave
+    private final ConcurrentHashMap<String, CompletableFuture<Pago>> resultados = new ConcurrentHashMap<>();
+
+    // Orden de llegada de las claves, para descartar las más antiguas
+    private final ConcurrentLinkedQueue<String> orden = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Ejecuta el pago una sola vez por dueño y clave
+     * @param dueno usuario o sesión que envía el formulario (EstadoSesion.dueno)
+     * @param claveFormulario clave de idempotencia del formulario (null o vacía = sin protección)
+     * @param procesar lógica del pago; se ejecuta en una transacción
+     * @return el Pago creado por la primera petición del mismo dueño con esta clave
+     * @throws IllegalArgumentException si la clave no es un UUID
+     */
+    public Pago ejecutar(String dueno, String claveFormulario, Supplier<Pago> procesar) {
+        if (claveFormulario == null || claveFormulario.isBlank()) {
+            return procesar.get();
+        }
+        if (!UUID.matcher(claveFormulario).matches() || dueno == null || dueno.isBlank()) {
+            throw new IllegalArgumentException("Clave de idempotencia inválida");
+        }
+        String clave = claveFormulario.toLowerCase(Locale.ROOT);
+
+        String claveDueno = dueno + "|" + clave;
+        CompletableFuture<Pago> nuevo = new CompletableFuture<>();
+        CompletableFuture<Pago> existente = resultados.putIfAbsent(claveDueno, nuevo);
+        if (existente != null) {
+            return esperar(existente);
+        }
+        recordar(claveDueno);
+
+        try {
+            Pago pago = persistir ? buscarRegistrado(dueno, clave) : null;
+            if (pago == null) {
+                pago = new TransactionTemplate(transactionManager).execute(estado -> {
+                    Pago creado = procesar.get();
+                    if (persistir) {
+                        jdbcTemplate.update("INSERT INTO pago_idempotencia (dueno, clave, id_pago) VALUES (?, ?, ?)",
+                                dueno, clave, creado.getId_pago());
+                    }
+                    return creado;
+                });
+            }
+            nuevo.complete(pago);
+            return pago;
+        } catch (DuplicateKeyException e) {
+            // Otra instancia procesó la misma clave: se devuelve su pago
+            Pago pago = buscarRegistrado(dueno, clave);
+            if (pago == null) {
+                resultados.remove(claveDueno, nuevo);
+                orden.remove(claveDueno);
+                nuevo.completeExceptionally(e);
+                throw e;
+            }
+            nuevo.complete(pago);
+            return pago;
+        } catch (RuntimeException e) {
+            resultados.remove(claveDueno, nuevo);
+            orden.remove(claveDueno);
+            nuevo.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    private Pago esperar(CompletableFuture<Pago> resultado) {
+        try {
+            return resultado.get(ESPERA_MAXIMA_SEGUNDOS, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            // El mismo error que recibió la primera petición
+            if (e.getCause() instanceof RuntimeException causa) throw causa;
+            throw new IllegalStateException(e.getCause());
+        } catch (TimeoutException e) {
+            throw new IllegalArgumentException("El pago aún se está procesando. Verifique el resultado antes de reintentar.");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Espera del pago interrumpida", e);
+        }
+    }
+
+    private Pago buscarRegistrado(String dueno, String clave) {
+        List<Long> ids = jdbcTemplate.queryForList(
+                "SELECT id_pago FROM pago_idempotencia WHERE dueno = ? AND clave = ?", Long.class, dueno, clave);
+        return ids.isEmpty() ? null : pagoRepository.findById(ids.get(0)).orElse(null);
+    }
+
+    // Mantiene el número de claves en memoria acotado (se descartan las más antiguas ya resueltas)
+    private void recordar(String clave) {
+        orden.add(clave);
+        while (resultados.size() > maxClaves) {
+            String antigua = orden.poll();
+            if (antigua == null) break;
+            CompletableFuture<Pago> resultado = resultados.get(antigua);
+            if (resultado != null && resultado.isDone()) {
+                resultados.remove(antigua, resultado);
+            } else if (resultado != null) {
+                orden.add(antigua); // sigue en curso
+                break;
+            }
+        }
+    }
+}
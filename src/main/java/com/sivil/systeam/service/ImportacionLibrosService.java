@@ -0,0 +1,496 @@
+package com.sivil.systeam.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sivil.systeam.entity.Libro;
+import com.sivil.systeam.enums.Estado;
+import com.sivil.systeam.event.LibroModificadoEvent;
+import com.sivil.systeam.service.dto.ResultadoImportacion;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * Importación masiva de libros desde CSV o JSON Lines.
+ *
+ * - El archivo se lee fila por fila (nunca se carga completo en memoria)
+ * - Cada fila se valida con las mismas reglas de InventarioService.guardarLibro (libros nuevos)
+ *   y actualizarLibro (códigos existentes)
+ * - Los códigos existentes y sus unidades vendidas se cargan una sola vez al empezar;
+ *   un código repetido dentro del archivo se rechaza
+ * - Las filas válidas se envían por lotes (importacion.lote) en un solo
+ *   INSERT ... ON CONFLICT (codigo_libro) DO UPDATE por lote, cada lote en su transacción
+ * - Si un lote falla en la base de datos, sus filas se reintentan una por una para
+ *   identificar cuáles fallan
+ * - Los índices y cachés del catálogo se actualizan con LibroModificadoEvent al confirmar cada lote
+ *
+ * Columnas: codigo_libro, titulo, autor, año_publicacion (o anio_publicacion), precio,
+ * cantidad_stock, categoria, editorial, descripcion, imagen_url
+ */
+@Service
+public class ImportacionLibrosService {
+
+    public enum Formato {
+        csv, jsonl;
+
+        /**
+         * Formato según el nombre del archivo (.jsonl / .ndjson = JSON Lines, otro = CSV)
+         */
+        public static Formato deArchivo(String nombre) {
+            String minusculas = nombre == null ? "" : nombre.toLowerCase(Locale.ROOT);
+            return minusculas.endsWith(".jsonl") || minusculas.endsWith(".ndjson") ? jsonl : csv;
+        }
+    }
+
+    private static final Pattern CODIGO = Pattern.compile("^[a-zA-Z0-9]+$");
+
+    private static final String UPSERT =
+            "INSERT INTO libros (codigo_libro, titulo, autor, año_publicacion, precio, cantidad_stock, " +
+            "                    categoria, editorial, descripcion, imagen_url) " +
+            "SELECT * FROM unnest(?::varchar[], ?::varchar[], ?::varchar[], ?::int[], ?::numeric[], ?::int[], " +
+            "                     ?::varchar[], ?::varchar[], ?::text[], ?::varchar[]) " +
+            "ON CONFLICT (codigo_libro) DO UPDATE SET " +
+            "    titulo = EXCLUDED.titulo, autor = EXCLUDED.autor, año_publicacion = EXCLUDED.año_publicacion, " +
+            "    precio = EXCLUDED.precio, cantidad_stock = EXCLUDED.cantidad_stock, " +
+            "    categoria = EXCLUDED.categoria, editorial = EXCLUDED.editorial, " +
+            "    descripcion = EXCLUDED.descripcion, imagen_url = EXCLUDED.imagen_url " +
+            "RETURNING id_libro, codigo_libro, estado, (xmax = 0) AS insertado";
+
+    // Código existente -> id y unidades vendidas (regla de stock de actualizarLibro)
+    private static final String CODIGOS_EXISTENTES =
+            "SELECT l.id_libro, l.codigo_libro, COALESCE(v.vendidos, 0) AS vendidos FROM libros l " +
+            "LEFT JOIN (SELECT id_libro, SUM(cantidad) AS vendidos FROM detalle_venta GROUP BY id_libro) v " +
+            "ON v.id_libro = l.id_libro";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private ReservaStockService reservaStockService;
+
+    @Value("${importacion.lote:1000}")
+    private int tamanoLote;
+
+    @Value("${importacion.max-errores:1000}")
+    private int maxErrores;
+
+    /**
+     * Importa (crea o actualiza por código) todos los libros del archivo
+     * @param entrada contenido del archivo en UTF-8 (no se cierra)
+     * @return filas leídas, insertadas, actualizadas y errores por fila
+     */
+    public ResultadoImportacion importar(InputStream entrada, Formato formato) throws IOException {
+        Importacion importacion = new Importacion(cargarCodigosExistentes());
+        BufferedReader reader = new BufferedReader(new InputStreamReader(entrada, StandardCharsets.UTF_8));
+        Fuente fuente = formato == Formato.jsonl ? new FuenteJsonl(reader) : new FuenteCsv(reader);
+
+        Registro registro;
+        while ((registro = fuente.siguiente()) != null) {
+            importacion.filasLeidas++;
+            if (registro.error() != null) {
+                importacion.error(registro.fila(), null, registro.error());
+                continue;
+            }
+            String codigo = texto(registro.campos().get("codigo_libro"));
+            try {
+                importacion.agregar(validar(registro.fila(), registro.campos(), importacion));
+            } catch (IllegalArgumentException e) {
+                importacion.error(registro.fila(), codigo, e.getMessage());
+            }
+        }
+        importacion.enviarLote();
+        return importacion.resultado();
+    }
+
+    private Map<String, Existente> cargarCodigosExistentes() {
+        Map<String, Existente> codigos = new HashMap<>();
+        jdbcTemplate.query(CODIGOS_EXISTENTES, rs -> {
+            codigos.put(rs.getString("codigo_libro"), new Existente(rs.getInt("id_libro"), rs.getLong("vendidos")));
+        });
+        return codigos;
+    }
+
+    // ============================================================
+    // VALIDACIÓN (mismas reglas que guardarLibro / actualizarLibro)
+    // ============================================================
+
+    private FilaLibro validar(long fila, Map<String, String> campos, Importacion importacion) {
+        String codigo = obligatorio(campos, "codigo_libro", "El código del libro es obligatorio", 20,
+                "El código del libro no puede exceder 20 caracteres");
+        if (!CODIGO.matcher(codigo).matches()) {
+            throw new IllegalArgumentException("El código del libro solo puede contener caracteres alfanuméricos");
+        }
+        Long filaAnterior = importacion.codigosVistos.get(codigo);
+        if (filaAnterior != null) {
+            throw new IllegalArgumentException("Código repetido en el archivo (ya aparece en la fila " + filaAnterior + ")");
+        }
+
+        String titulo = obligatorio(campos, "titulo", "El título del libro es obligatorio", 200,
+                "El título no puede exceder 200 caracteres");
+        String autor = obligatorio(campos, "autor", "El autor del libro es obligatorio", 100,
+                "El nombre del autor no puede exceder 100 caracteres");
+
+        int anioActual = LocalDate.now().getYear();
+        Integer anio = entero(campos.get("año_publicacion"), "El año de publicación debe ser un número entero");
+        if (anio == null || anio < 1900 || anio > anioActual) {
+            throw new IllegalArgumentException("El año de publicación debe estar entre 1900 y " + anioActual);
+        }
+
+        BigDecimal precio;
+        try {
+            String valor = texto(campos.get("precio"));
+            precio = valor == null ? null : new BigDecimal(valor);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("El precio debe ser un número");
+        }
+        if (precio == null || precio.compareTo(BigDecimal.ZERO) <= 0) {
+            throw new IllegalArgumentException("El precio debe ser mayor a 0");
+        }
+        if (precio.stripTrailingZeros().scale() > 2 || precio.precision() - precio.scale() > 8) {
+            throw new IllegalArgumentException("El precio debe tener máximo 8 dígitos enteros y 2 decimales");
+        }
+
+        Integer stock = entero(campos.get("cantidad_stock"), "El stock debe ser un número entero");
+        Existente existente = importacion.codigosExistentes.get(codigo);
+        if (existente == null) {
+            if (stock == null || stock < 1) {
+                throw new IllegalArgumentException("El stock inicial debe ser al menos 1");
+            }
+        } else {
+            if (stock == null || stock < 0) {
+                throw new IllegalArgumentException("El stock no puede ser negativo");
+            }
+            if (stock < existente.vendidos()) {
+                throw new IllegalArgumentException("El stock no puede ser menor a la cantidad ya vendida (" + existente.vendidos() + ")");
+            }
+            int apartados = reservaStockService.reservado(existente.idLibro());
+            if (stock < apartados) {
+                throw new IllegalArgumentException(
+                        "El stock no puede ser menor a las unidades apartadas por compras pendientes (" + apartados + ")");
+            }
+        }
+
+        importacion.codigosVistos.put(codigo, fila); // solo las filas válidas cuentan como vistas
+        return new FilaLibro(fila, codigo, titulo, autor, anio, precio, stock,
+                opcional(campos, "categoria", 50, "La categoría no puede exceder 50 caracteres"),
+                opcional(campos, "editorial", 100, "La editorial no puede exceder 100 caracteres"),
+                opcional(campos, "descripcion", 1000, "La descripción no puede exceder 1000 caracteres"),
+                opcional(campos, "imagen_url", 500, "La URL de la imagen no puede exceder 500 caracteres"));
+    }
+
+    private static String obligatorio(Map<String, String> campos, String campo, String mensajeVacio,
+                                      int maximo, String mensajeLargo) {
+        String valor = texto(campos.get(campo));
+        if (valor == null) throw new IllegalArgumentException(mensajeVacio);
+        if (valor.length() > maximo) throw new IllegalArgumentException(mensajeLargo);
+        return valor;
+    }
+
+    private static String opcional(Map<String, String> campos, String campo, int maximo, String mensajeLargo) {
+        String valor = texto(campos.get(campo));
+        if (valor != null && valor.length() > maximo) throw new IllegalArgumentException(mensajeLargo);
+        return valor;
+    }
+
+    private static Integer entero(String valor, String mensaje) {
+        String limpio = texto(valor);
+        if (limpio == null) return null;
+        try {
+            return Integer.valueOf(limpio);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(mensaje);
+        }
+    }
+
+    private static String texto(String valor) {
+        if (valor == null) return null;
+        String limpio = valor.trim();
+        return limpio.isEmpty() ? null : limpio;
+    }
+
+    // ============================================================
+    // LOTES
+    // ============================================================
+
+    private record Existente(Integer idLibro, long vendidos) {}
+
+    private record FilaLibro(long fila, String codigo, String titulo, String autor, Integer anio,
+                             BigDecimal precio, Integer stock, String categoria, String editorial,
+                             String descripcion, String imagenUrl) {
+
+        Libro aLibro(Integer idLibro, Estado estado) {
+            Libro libro = new Libro();
+            libro.setId_libro(idLibro);
+            libro.setCodigo_libro(codigo);
+            libro.setTitulo(titulo);
+            libro.setAutor(autor);
+            libro.setAño_publicacion(anio);
+            libro.setPrecio(precio);
+            libro.setCantidad_stock(stock);
+            libro.setCategoria(categoria);
+            libro.setEditorial(editorial);
+            libro.setDescripcion(descripcion);
+            libro.setImagen_url(imagenUrl);
+            libro.setEstado(estado);
+            return libro;
+        }
+    }
+
+    /**
+     * Estado de una importación en curso
+     */
+    private final class Importacion {
+        private final Map<String, Existente> codigosExistentes;
+        private final Map<String, Long> codigosVistos = new HashMap<>();
+        private final List<FilaLibro> lote = new ArrayList<>();
+        private final List<ResultadoImportacion.ErrorFila> errores = new ArrayList<>();
+        private long filasLeidas;
+        private long insertados;
+        private long actualizados;
+        private long totalErrores;
+
+        Importacion(Map<String, Existente> codigosExistentes) {
+            this.codigosExistentes = codigosExistentes;
+        }
+
+        void agregar(FilaLibro fila) {
+            lote.add(fila);
+            if (lote.size() >= tamanoLote) enviarLote();
+        }
+
+        void error(long fila, String codigo, String mensaje) {
+            totalErrores++;
+            if (errores.size() < maxErrores) {
+                errores.add(new ResultadoImportacion.ErrorFila(fila, codigo, mensaje));
+            }
+        }
+
+        void enviarLote() {
+            if (lote.isEmpty()) return;
+            try {
+                upsert(lote);
+            } catch (DataAccessException e) {
+                // Se reintenta fila por fila para aislar las que fallan
+                for (FilaLibro fila : lote) {
+                    try {
+                        upsert(List.of(fila));
+                    } catch (DataAccessException errorFila) {
+                        error(fila.fila(), fila.codigo(), mensajeBaseDatos(errorFila));
+                    }
+                }
+            }
+            lote.clear();
+        }
+
+        private void upsert(List<FilaLibro> filas) {
+            Map<String, FilaLibro> porCodigo = new HashMap<>();
+            filas.forEach(f -> porCodigo.put(f.codigo(), f));
+            Object[] columnas = {
+                    filas.stream().map(FilaLibro::codigo).toArray(String[]::new),
+                    filas.stream().map(FilaLibro::titulo).toArray(String[]::new),
+                    filas.stream().map(FilaLibro::autor).toArray(String[]::new),
+                    filas.stream().map(FilaLibro::anio).toArray(Integer[]::new),
+                    filas.stream().map(f -> f.precio().toPlainString()).toArray(String[]::new),
+                    filas.stream().map(FilaLibro::stock).toArray(Integer[]::new),
+                    filas.stream().map(FilaLibro::categoria).toArray(String[]::new),
+                    filas.stream().map(FilaLibro::editorial).toArray(String[]::new),
+                    filas.stream().map(FilaLibro::descripcion).toArray(String[]::new),
+                    filas.stream().map(FilaLibro::imagenUrl).toArray(String[]::new)
+            };
+
+            long[] contadores = new long[2];
+            new TransactionTemplate(transactionManager).executeWithoutResult(estado ->
+                    jdbcTemplate.query(UPSERT, rs -> {
+                        FilaLibro fila = porCodigo.get(rs.getString("codigo_libro"));
+                        Estado estadoLibro = Estado.valueOf(rs.getString("estado"));
+                        contadores[rs.getBoolean("insertado") ? 0 : 1]++;
+                        // Los oyentes lo reciben después del commit del lote
+                        eventPublisher.publishEvent(LibroModificadoEvent.guardado(fila.aLibro(rs.getInt("id_libro"), estadoLibro)));
+                    }, columnas));
+            insertados += contadores[0];
+            actualizados += contadores[1];
+        }
+
+        ResultadoImportacion resultado() {
+            return new ResultadoImportacion(filasLeidas, insertados, actualizados, totalErrores, List.copyOf(errores));
+        }
+    }
+
+    private static String mensajeBaseDatos(DataAccessException e) {
+        Throwable causa = NestedExceptionUtils.getMostSpecificCause(e);
+        return "Error de base de datos: " + (causa.getMessage() != null ? causa.getMessage() : e.getMessage());
+    }
+
+    // ============================================================
+    // LECTURA DE ARCHIVOS
+    // ============================================================
+
+    /**
+     * Fila leída del archivo: campos por nombre de columna, o el error de formato
+     */
+    private record Registro(long fila, Map<String, String> campos, String error) {}
+
+    private interface Fuente {
+        /**
+         * @return siguiente fila o null al terminar el archivo
+         */
+        Registro siguiente() throws IOException;
+    }
+
+    // Nombres de columna aceptados -> nombre interno
+    private static String columna(String nombre) {
+        String limpio = nombre.replace("\uFEFF", "").trim().toLowerCase(Locale.ROOT);
+        return switch (limpio) {
+            case "anio_publicacion", "ano_publicacion" -> "año_publicacion";
+            case "codigo" -> "codigo_libro";
+            case "stock" -> "cantidad_stock";
+            default -> limpio;
+        };
+    }
+
+    /**
+     * CSV con encabezado, separado por comas; admite campos entre comillas (con comas,
+     * comillas dobles "" y saltos de línea).
+     * El número de fila de cada registro es la línea del archivo donde empieza, así que
+     * coincide con lo que muestra un editor aunque haya campos con saltos de línea
+     */
+    private static final class FuenteCsv implements Fuente {
+        private final BufferedReader reader;
+        private List<String> encabezado;
+        // Saltos de línea leídos hasta ahora (también los que están dentro de comillas)
+        private long lineas = 0;
+
+        FuenteCsv(BufferedReader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public Registro siguiente() throws IOException {
+            if (encabezado == null) {
+                List<String> nombres = leerRegistro();
+                if (nombres == null) return null;
+                encabezado = nombres.stream().map(ImportacionLibrosService::columna).toList();
+                if (!encabezado.contains("codigo_libro")) {
+                    throw new IllegalArgumentException("El archivo CSV debe tener un encabezado con la columna codigo_libro");
+                }
+            }
+            List<String> valores;
+            long fila;
+            do {
+                fila = lineas + 1;
+                valores = leerRegistro();
+                if (valores == null) return null;
+            } while (valores.size() == 1 && valores.get(0).isBlank()); // líneas vacías
+
+            if (valores.size() != encabezado.size()) {
+                return new Registro(fila, Map.of(), "Se esperaban " + encabezado.size()
+                        + " columnas y la fila tiene " + valores.size());
+            }
+            Map<String, String> campos = new HashMap<>();
+            for (int i = 0; i < valores.size(); i++) {
+                campos.put(encabezado.get(i), valores.get(i));
+            }
+            return new Registro(fila, campos, null);
+        }
+
+        private List<String> leerRegistro() throws IOException {
+            int c = reader.read();
+            if (c == -1) return null;
+
+            List<String> valores = new ArrayList<>();
+            StringBuilder actual = new StringBuilder();
+            boolean entreComillas = false;
+            while (c != -1) {
+                char ch = (char) c;
+                if (entreComillas) {
+                    if (ch == '"') {
+                        reader.mark(1);
+                        int siguiente = reader.read();
+                        if (siguiente == '"') {
+                            actual.append('"');
+                        } else {
+                            entreComillas = false;
+                            if (siguiente != -1) reader.reset();
+                        }
+                    } else {
+                        if (ch == '\n') lineas++;
+                        actual.append(ch);
+                    }
+                } else if (ch == '"' && actual.isEmpty()) {
+                    entreComillas = true;
+                } else if (ch == ',') {
+                    valores.add(actual.toString());
+                    actual.setLength(0);
+                } else if (ch == '\n') {
+                    lineas++;
+                    break;
+                } else if (ch != '\r') {
+                    actual.append(ch);
+                }
+                c = reader.read();
+            }
+            valores.add(actual.toString());
+            return valores;
+        }
+    }
+
+    /**
+     * Un objeto JSON por línea; las líneas vacías se ignoran
+     */
+    private final class FuenteJsonl implements Fuente {
+        private final BufferedReader reader;
+        private long fila = 0;
+
+        FuenteJsonl(BufferedReader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public Registro siguiente() throws IOException {
+            String linea;
+            do {
+                linea = reader.readLine();
+                if (linea == null) return null;
+                fila++;
+            } while (linea.isBlank());
+
+            try {
+                JsonNode nodo = objectMapper.readTree(linea);
+                if (nodo == null || !nodo.isObject()) {
+                    return new Registro(fila, Map.of(), "La línea no es un objeto JSON");
+                }
+                Map<String, String> campos = new HashMap<>();
+                for (Map.Entry<String, JsonNode> campo : nodo.properties()) {
+                    JsonNode valor = campo.getValue();
+                    campos.put(columna(campo.getKey()), valor.isNull() ? null : valor.asText());
+                }
+                return new Registro(fila, campos, null);
+            } catch (JsonProcessingException e) {
+                return new Registro(fila, Map.of(), "JSON inválido: " + e.getOriginalMessage());
+            }
+        }
+    }
+}
@@ -2,8 +2,14 @@ package com.sivil.systeam.service;
 
 import com.sivil.systeam.entity.Libro;
 import com.sivil.systeam.enums.Estado;
+import com.sivil.systeam.event.LibroModificadoEvent;
 import com.sivil.systeam.repository.InventarioRepository;
+import com.sivil.systeam.repository.LibroRepository;
+import com.sivil.systeam.service.dto.LibroCard;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -24,13 +30,34 @@ public class InventarioService {
     @Autowired
     private InventarioRepository inventarioRepository;
 
+    @Autowired
+    private LibroRepository libroRepository;
+
+    @Autowired
+    private CatalogSearchIndex catalogSearchIndex;
+
+    // "memoria" (CatalogSearchIndex) o "postgres" (texto completo con ts_rank)
+    @Value("${catalogo.busqueda.motor:memoria}")
+    private String motorBusqueda;
+
+    private static final int MAX_RESULTADOS_BUSQUEDA = 200;
+
+    // Notifica los cambios de libros (índice de búsqueda, cachés) después del commit
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    // Unidades apartadas por compras online pendientes: el stock no puede quedar por debajo
+    @Autowired
+    private ReservaStockService reservaStockService;
+
     // ============================================================
     // MÉTODOS QUE USA TU LibroController / InventarioController
     // ============================================================
 
+    // Listado del inventario como proyección: solo las columnas de la tabla
     @Transactional(readOnly = true)
-    public List<Libro> obtenerTodosLosLibros() {
-        return inventarioRepository.findByEstadoOrderByFecha_creacionDesc(Estado.activo);
+    public List<LibroCard> obtenerTodosLosLibros() {
+        return libroRepository.findCardsByEstadoOrderByFecha_creacionDesc(Estado.activo);
     }
 
     @Transactional(readOnly = true)
@@ -48,9 +75,28 @@ public class InventarioService {
         return inventarioRepository.findByCategoriaAndEstado(categoria, Estado.activo);
     }
 
+    /**
+     * Busca libros activos por título, autor o editorial.
+     * - motor "postgres": texto completo en PostgreSQL, ordenado por relevancia
+     * - motor "memoria": índice en memoria, ordenado por ID y con el mismo límite
+     *   (MAX_RESULTADOS_BUSQUEDA); mientras no esté cargado se usa LIKE
+     */
     @Transactional(readOnly = true)
     public List<Libro> buscarPorTitulo(String titulo) {
-        return inventarioRepository.findByTituloContainingIgnoreCaseAndEstado(titulo, Estado.activo);
+        if ("postgres".equalsIgnoreCase(motorBusqueda)) {
+            return libroRepository.buscarTextoCompleto(titulo, PageRequest.of(0, MAX_RESULTADOS_BUSQUEDA));
+        }
+        if (!catalogSearchIndex.estaListo()) {
+            return inventarioRepository.findByTituloContainingIgnoreCaseAndEstado(titulo, Estado.activo);
+        }
+        List<Integer> ids = catalogSearchIndex.buscar(titulo, true).stream()
+                .sorted()
+                .limit(MAX_RESULTADOS_BUSQUEDA)
+                .toList();
+        if (ids.isEmpty()) return List.of();
+        List<Libro> libros = new ArrayList<>(inventarioRepository.findAllById(ids));
+        libros.sort(Comparator.comparing(Libro::getId_libro));
+        return libros;
     }
 
     @Transactional(readOnly = true)
@@ -90,7 +136,9 @@ public class InventarioService {
         }
 
         // Guardar libro en BD
-        return inventarioRepository.save(libro);
+        Libro guardado = inventarioRepository.save(libro);
+        eventPublisher.publishEvent(LibroModificadoEvent.guardado(guardado));
+        return guardado;
     }
 
     @Transactional(readOnly = true)
@@ -171,6 +219,7 @@ public class InventarioService {
         if (vendidos != null && stockNuevo < vendidos.intValue()) {
             throw new IllegalArgumentException("El stock no puede ser menor a la cantidad ya vendida (" + vendidos + ")");
         }
+        validarApartados(id, stockNuevo);
 
         // Detectar cambios relevantes para notificación
         boolean precioCambio = actual.getPrecio() != null && actual.getPrecio().compareTo(precio) != 0;
@@ -191,6 +240,7 @@ public class InventarioService {
         actual.setEstado(cambios.getEstado()); // si quieres permitir activar/desactivar en HU014
 
         Libro guardado = inventarioRepository.save(actual);
+        eventPublisher.publishEvent(LibroModificadoEvent.guardado(guardado));
 
         // Notificación simple por consola (puedes integrar email/eventos más adelante)
         if (precioCambio || disponibilidadCambio) {
@@ -241,15 +291,20 @@ public class InventarioService {
         Libro libro = buscarPorCodigoLibro(codigo_libro);
         if (libro == null) throw new IllegalArgumentException("No se encontró el libro con código: " + codigo_libro);
         if (nuevaCantidad < 0) throw new IllegalArgumentException("La cantidad no puede ser negativa");
+        validarApartados(libro.getId_libro(), nuevaCantidad);
         libro.setCantidad_stock(nuevaCantidad);
-        return inventarioRepository.save(libro);
+        Libro guardado = inventarioRepository.save(libro);
+        eventPublisher.publishEvent(LibroModificadoEvent.guardado(guardado));
+        return guardado;
     }
 
     public Libro desactivarLibro(String codigo_libro) {
         Libro libro = buscarPorCodigoLibro(codigo_libro);
         if (libro == null) throw new IllegalArgumentException("No se encontró el libro con código: " + codigo_libro);
         libro.setEstado(Estado.inactivo);
-        return inventarioRepository.save(libro);
+        Libro guardado = inventarioRepository.save(libro);
+        eventPublisher.publishEvent(LibroModificadoEvent.guardado(guardado));
+        return guardado;
     }
 
     @Transactional(readOnly = true)
@@ -261,11 +316,21 @@ public class InventarioService {
     public void reducirStock(String codigo_libro, int cantidadVendida) {
         Libro libro = buscarPorCodigoLibro(codigo_libro);
         if (libro == null) throw new IllegalArgumentException("No se encontró el libro con código: " + codigo_libro);
-        if (libro.getCantidad_stock() < cantidadVendida) {
-            throw new IllegalArgumentException("Stock insuficiente. Disponible: " + libro.getCantidad_stock());
+        int disponible = reservaStockService.disponible(libro);
+        if (disponible < cantidadVendida) {
+            throw new IllegalArgumentException("Stock insuficiente. Disponible: " + disponible);
         }
         libro.setCantidad_stock(libro.getCantidad_stock() - cantidadVendida);
         inventarioRepository.save(libro);
+        eventPublisher.publishEvent(LibroModificadoEvent.guardado(libro));
+    }
+
+    private void validarApartados(Integer idLibro, int stockNuevo) {
+        int apartados = reservaStockService.reservado(idLibro);
+        if (stockNuevo < apartados) {
+            throw new IllegalArgumentException(
+                    "El stock no puede ser menor a las unidades apartadas por compras pendientes (" + apartados + ")");
+        }
     }
 
     public void incrementarStock(String codigo_libro, int cantidadAgregar) {
@@ -273,6 +338,7 @@ public class InventarioService {
         if (libro == null) throw new IllegalArgumentException("No se encontró el libro con código: " + codigo_libro);
         libro.setCantidad_stock(libro.getCantidad_stock() + cantidadAgregar);
         inventarioRepository.save(libro);
+        eventPublisher.publishEvent(LibroModificadoEvent.guardado(libro));
     }
 
     // ============================================================
@@ -300,6 +366,7 @@ public class InventarioService {
 
         // Eliminación física del libro de la base de datos
         inventarioRepository.deleteById(id);
+        eventPublisher.publishEvent(LibroModificadoEvent.eliminado(id));
     }
 
     public void eliminarLibroPorCodigo(String codigo_libro) {
@@ -308,5 +375,6 @@ public class InventarioService {
             throw new IllegalArgumentException("No se encontró el libro con código: " + codigo_libro);
         }
         inventarioRepository.delete(libro);
+        eventPublisher.publishEvent(LibroModificadoEvent.eliminado(libro.getId_libro()));
     }
 }
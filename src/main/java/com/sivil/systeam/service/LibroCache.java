@@ -0,0 +1,170 @@
+package com.sivil.systeam.service;
+
+import com.sivil.systeam.entity.Libro;
+import com.sivil.systeam.event.LibroModificadoEvent;
+import com.sivil.systeam.repository.LibroRepository;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caché en memoria de libros por ID para las lecturas frecuentes (detalle del catálogo,
+ * consultas de stock, agregar al carrito).
+ *
+ * - Acotada por cantidad de libros y por tamaño aproximado (textos incluidos);
+ *   al superar cualquiera de los dos límites se descartan los menos usados
+ * - Guarda copias sin relaciones y entrega una copia nueva en cada lectura:
+ *   quien la recibe puede modificarla sin afectar a la caché
+ * - Cada LibroModificadoEvent (después del commit), incluido un cambio solo de stock,
+ *   quita el libro y la siguiente lectura lo trae de la BD: no se copia el stock del
+ *   evento porque los de transacciones concurrentes pueden llegar desordenados.
+ *   Una lectura que empezó antes de una invalidación no se guarda, para no reinsertar
+ *   datos viejos
+ * - Métricas en Micrometer: catalogo.cache.libros.{aciertos,fallos,desalojos,tamano}
+ */
+@Component
+public class LibroCache {
+
+    private static final int BYTES_FIJOS_POR_LIBRO = 200;
+
+    @Autowired
+    private LibroRepository libroRepository;
+
+    private final int maxLibros;
+    private final long maxBytes;
+
+    // Orden de acceso: el primero es el menos usado recientemente
+    private final LinkedHashMap<Integer, Entrada> entradas = new LinkedHashMap<>(256, 0.75f, true);
+    private long bytes = 0;
+
+    // Se incrementa con cada invalidación
+    private final AtomicLong version = new AtomicLong();
+
+    private final AtomicLong aciertos = new AtomicLong();
+    private final AtomicLong fallos = new AtomicLong();
+    private final AtomicLong desalojos = new AtomicLong();
+
+    private record Entrada(Libro libro, long bytes) {}
+
+    public LibroCache(@Value("${catalogo.cache.max-libros:5000}") int maxLibros,
+                      @Value("${catalogo.cache.max-kb:16384}") long maxKb,
+                      MeterRegistry registry) {
+        this.maxLibros = maxLibros;
+        this.maxBytes = maxKb * 1024;
+        FunctionCounter.builder("catalogo.cache.libros.aciertos", aciertos, AtomicLong::get)
+                .description("Lecturas de libros resueltas desde la caché").register(registry);
+        FunctionCounter.builder("catalogo.cache.libros.fallos", fallos, AtomicLong::get)
+                .description("Lecturas de libros que consultaron la base de datos").register(registry);
+        FunctionCounter.builder("catalogo.cache.libros.desalojos", desalojos, AtomicLong::get)
+                .description("Libros descartados por los límites de la caché").register(registry);
+        Gauge.builder("catalogo.cache.libros.tamano", this, LibroCache::tamano)
+                .description("Libros en la caché").register(registry);
+    }
+
+    /**
+     * Libro por ID (copia independiente, sin relaciones cargadas)
+     */
+    public Optional<Libro> obtener(Integer idLibro) {
+        if (idLibro == null) return Optional.empty();
+        synchronized (this) {
+            Entrada entrada = entradas.get(idLibro);
+            if (entrada != null) {
+                aciertos.incrementAndGet();
+                return Optional.of(copiar(entrada.libro()));
+            }
+        }
+        fallos.incrementAndGet();
+
+        long versionAntes = version.get();
+        Optional<Libro> libro = libroRepository.findById(idLibro).map(LibroCache::copiar);
+        libro.ifPresent(l -> guardar(l, versionAntes));
+        return libro.map(LibroCache::copiar);
+    }
+
+    /**
+     * Quita el libro cuando su cambio ya está confirmado
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void alModificarLibro(LibroModificadoEvent evento) {
+        synchronized (this) {
+            version.incrementAndGet();
+            Entrada anterior = entradas.remove(evento.idLibro());
+            if (anterior != null) bytes -= anterior.bytes();
+        }
+    }
+
+    public synchronized int tamano() {
+        return entradas.size();
+    }
+
+    public long aciertos() {
+        return aciertos.get();
+    }
+
+    public long fallos() {
+        return fallos.get();
+    }
+
+    public long desalojos() {
+        return desalojos.get();
+    }
+
+    private synchronized void guardar(Libro libro, long versionAntes) {
+        // Hubo una invalidación mientras se leía: el valor podría ser anterior al commit
+        if (version.get() != versionAntes) return;
+
+        Entrada nueva = new Entrada(libro, tamanoAproximado(libro));
+        Entrada anterior = entradas.put(libro.getId_libro(), nueva);
+        bytes += nueva.bytes() - (anterior != null ? anterior.bytes() : 0);
+
+        Iterator<Map.Entry<Integer, Entrada>> menosUsados = entradas.entrySet().iterator();
+        while ((entradas.size() > maxLibros || bytes > maxBytes) && menosUsados.hasNext()) {
+            Entrada descartada = menosUsados.next().getValue();
+            menosUsados.remove();
+            bytes -= descartada.bytes();
+            desalojos.incrementAndGet();
+        }
+    }
+
+    // Textos en UTF-16 (2 bytes por carácter) más un costo fijo por objeto
+    private static long tamanoAproximado(Libro libro) {
+        long caracteres = largo(libro.getCodigo_libro()) + largo(libro.getTitulo()) + largo(libro.getAutor())
+                + largo(libro.getCategoria()) + largo(libro.getEditorial()) + largo(libro.getDescripcion())
+                + largo(libro.getImagen_url());
+        return BYTES_FIJOS_POR_LIBRO + 2 * caracteres;
+    }
+
+    private static int largo(String texto) {
+        return texto == null ? 0 : texto.length();
+    }
+
+    // Copia de los campos propios del libro (sin detallesVenta/detallesCompra)
+    private static Libro copiar(Libro origen) {
+        Libro copia = new Libro();
+        copia.setId_libro(origen.getId_libro());
+        copia.setCodigo_libro(origen.getCodigo_libro());
+        copia.setTitulo(origen.getTitulo());
+        copia.setAutor(origen.getAutor());
+        copia.setAño_publicacion(origen.getAño_publicacion());
+        copia.setPrecio(origen.getPrecio());
+        copia.setCantidad_stock(origen.getCantidad_stock());
+        copia.setCategoria(origen.getCategoria());
+        copia.setEditorial(origen.getEditorial());
+        copia.setDescripcion(origen.getDescripcion());
+        copia.setImagen_url(origen.getImagen_url());
+        copia.setEstado(origen.getEstado());
+        copia.setFecha_creacion(origen.getFecha_creacion());
+        copia.setFecha_ultima_actualizacion(origen.getFecha_ultima_actualizacion());
+        return copia;
+    }
+}
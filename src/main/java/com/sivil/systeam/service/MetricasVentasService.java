@@ -0,0 +1,145 @@
+package com.sivil.systeam.service;
+
+import com.sivil.systeam.enums.MetodoPago;
+import com.sivil.systeam.event.VentaModificadaEvent;
+import com.sivil.systeam.service.dto.MetricasVentas;
+import com.sivil.systeam.service.dto.MetricasVentas.Acumulado;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Métricas de ventas mantenidas en memoria con acumulados incrementales.
+ *
+ * - Al iniciar se calculan con una sola consulta agrupada (día, vendedor, método de pago)
+ * - Cada VentaModificadaEvent (venta finalizada, inactivada, reactivada o con total
+ *   modificado) suma o resta solo esa venta
+ * - Las lecturas devuelven una copia inmutable que se regenera únicamente cuando hubo
+ *   cambios o cambió el día, así que el dashboard no consulta la BD
+ */
+@Service
+public class MetricasVentasService {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final Contador global = new Contador();
+    private final Map<LocalDate, Contador> porDia = new HashMap<>();
+    private final Map<Integer, Contador> porVendedor = new HashMap<>();
+    private final Map<MetodoPago, Contador> porMetodoPago = new EnumMap<>(MetodoPago.class);
+
+    private volatile MetricasVentas instantanea;
+    private volatile LocalDate diaInstantanea;
+
+    /**
+     * Recalcula todos los acumulados desde la BD
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void reconstruir() {
+        global.reiniciar();
+        porDia.clear();
+        porVendedor.clear();
+        porMetodoPago.clear();
+        jdbcTemplate.query(
+                "SELECT CAST(fecha_venta AS DATE) AS dia, id_vendedor, CAST(tipo_pago AS TEXT) AS tipo_pago, " +
+                "COUNT(*) AS cantidad, COALESCE(SUM(total), 0) AS total " +
+                "FROM ventas WHERE estado <> 'inactiva' " +
+                "GROUP BY CAST(fecha_venta AS DATE), id_vendedor, tipo_pago",
+                rs -> {
+                    Date dia = rs.getDate("dia");
+                    String tipoPago = rs.getString("tipo_pago");
+                    aplicar(dia != null ? dia.toLocalDate() : null,
+                            (Integer) rs.getObject("id_vendedor"),
+                            tipoPago != null ? MetodoPago.valueOf(tipoPago) : null,
+                            rs.getLong("cantidad"), rs.getBigDecimal("total"));
+                });
+        instantanea = null;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public synchronized void alModificarVenta(VentaModificadaEvent evento) {
+        aplicar(evento.dia(), evento.idVendedor(), evento.tipoPago(),
+                evento.signo(), evento.total().multiply(BigDecimal.valueOf(evento.signo())));
+        instantanea = null;
+    }
+
+    /**
+     * KPIs actuales
+     */
+    public MetricasVentas obtener() {
+        LocalDate hoy = LocalDate.now();
+        MetricasVentas actual = instantanea;
+        if (actual == null || !hoy.equals(diaInstantanea)) {
+            synchronized (this) {
+                if (instantanea == null || !hoy.equals(diaInstantanea)) {
+                    Contador delDia = porDia.getOrDefault(hoy, new Contador());
+                    instantanea = new MetricasVentas(
+                            global.cantidad, global.total, global.promedio(),
+                            delDia.cantidad, delDia.total,
+                            copiar(porVendedor), copiar(porMetodoPago));
+                    diaInstantanea = hoy;
+                }
+                actual = instantanea;
+            }
+        }
+        return actual;
+    }
+
+    /**
+     * Acumulado de un día (cantidad y monto)
+     */
+    public synchronized Acumulado delDia(LocalDate dia) {
+        return porDia.getOrDefault(dia, new Contador()).congelar();
+    }
+
+    private void aplicar(LocalDate dia, Integer idVendedor, MetodoPago tipoPago, long cantidad, BigDecimal total) {
+        global.sumar(cantidad, total);
+        if (dia != null) sumar(porDia, dia, cantidad, total);
+        if (idVendedor != null) sumar(porVendedor, idVendedor, cantidad, total);
+        if (tipoPago != null) sumar(porMetodoPago, tipoPago, cantidad, total);
+    }
+
+    private static <K> void sumar(Map<K, Contador> mapa, K clave, long cantidad, BigDecimal total) {
+        Contador contador = mapa.computeIfAbsent(clave, k -> new Contador());
+        contador.sumar(cantidad, total);
+        if (contador.cantidad <= 0) mapa.remove(clave);
+    }
+
+    private static <K> Map<K, Acumulado> copiar(Map<K, Contador> mapa) {
+        Map<K, Acumulado> copia = new HashMap<>();
+        mapa.forEach((k, c) -> copia.put(k, c.congelar()));
+        return Collections.unmodifiableMap(copia);
+    }
+
+    private static final class Contador {
+        long cantidad;
+        BigDecimal total = BigDecimal.ZERO;
+
+        void sumar(long n, BigDecimal monto) {
+            cantidad += n;
+            total = total.add(monto);
+        }
+
+        void reiniciar() {
+            cantidad = 0;
+            total = BigDecimal.ZERO;
+        }
+
+        BigDecimal promedio() {
+            return cantidad <= 0 ? BigDecimal.ZERO : total.divide(BigDecimal.valueOf(cantidad), 2, RoundingMode.HALF_UP);
+        }
+
+        Acumulado congelar() {
+            return new Acumulado(cantidad, total);
+        }
+    }
+}
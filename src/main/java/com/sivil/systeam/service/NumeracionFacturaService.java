@@ -1,70 +1,135 @@
 package com.sivil.systeam.service;
 
-import com.sivil.systeam.repository.VentaRepository;
-import com.sivil.systeam.repository.CompraOnlineRepository;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Supplier;
 
+/**
+ * Numeración de facturas de venta con secuencias de PostgreSQL.
+ * (Los números de orden de compras online los genera GeneradorNumeroOrden.)
+ *
+ * - Secuencia seq_factura_{sucursal}, formato {sucursal}-0000000001
+ * - PagoService pide el número al registrar la venta pagada, no al armar la venta pendiente
+ * - Con facturacion.bloque > 1 se piden varios valores por consulta y se entregan desde
+ *   memoria; los valores no usados al detener la aplicación quedan como saltos
+ * - Si la secuencia no existe se crea y se alinea con el mayor número ya registrado,
+ *   bajo un advisory lock: solo la instancia que la crea ajusta su valor, así que otra
+ *   instancia nunca la hace retroceder (ver "Numeración con secuencias" en docs/sivil_database_design.md)
+ */
 @Service
 public class NumeracionFacturaService {
 
     @Value("${sucursal.numero:01}")
     private String sucursal;
 
-    private Long ultimoCorrelativo = null;
+    @Value("${facturacion.bloque:1}")
+    private int tamanoBloque;
 
-    public synchronized String generarNumeroFactura(VentaRepository ventaRepository) {
-        // SIEMPRE obtener el último correlativo de la base de datos
-        ultimoCorrelativo = obtenerUltimoCorrelativo(ventaRepository);
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
 
-        // INCREMENTAR para obtener el siguiente número
-        ultimoCorrelativo++;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
 
-        return sucursal + "-" + String.format("%010d", ultimoCorrelativo);
+    private final Secuencia facturas = new Secuencia();
+
+    // Secuencias cuya existencia ya se verificó
+    private final Set<String> secuenciasListas = ConcurrentHashMap.newKeySet();
+
+    public String generarNumeroFactura() {
+        String nombre = "seq_factura_" + sucursalValida();
+        long correlativo = siguiente(facturas, () -> reservar(nombre, "ventas", "numero_factura", sucursal + "-"));
+        return sucursal + "-" + String.format("%010d", correlativo);
     }
 
-    public synchronized String generarNumeroFactura(CompraOnlineRepository compraOnlineRepository) {
-        // Para compras online usamos un prefijo diferente
-        ultimoCorrelativo = obtenerUltimoCorrelativoCompra(compraOnlineRepository);
+    /**
+     * Texto a mostrar en el formulario antes de confirmar (no consume un número)
+     */
+    public String vistaPreviaNumeroFactura() {
+        return sucursal + "-(se asigna al confirmar)";
+    }
 
-        // INCREMENTAR para obtener el siguiente número
-        ultimoCorrelativo++;
+    // Sin bloques cada número es un nextval directo: PostgreSQL garantiza la atomicidad
+    private long siguiente(Secuencia secuencia, Supplier<List<Long>> reservarBloque) {
+        return tamanoBloque <= 1 ? reservarBloque.get().get(0) : secuencia.siguiente(reservarBloque);
+    }
 
-        return "ORD-" + String.format("%010d", ultimoCorrelativo);
+    // Pide a PostgreSQL el siguiente bloque de valores de la secuencia
+    private List<Long> reservar(String secuencia, String tabla, String columna, String prefijo) {
+        asegurarSecuencia(secuencia, tabla, columna, prefijo);
+        return jdbcTemplate.queryForList(
+                "SELECT nextval('" + secuencia + "') FROM generate_series(1, ?)",
+                Long.class, Math.max(tamanoBloque, 1));
     }
 
-    private Long obtenerUltimoCorrelativoCompra(CompraOnlineRepository compraOnlineRepository) {
-        try {
-            String prefijoBusqueda = "ORD-";
-            // Necesitamos implementar un método similar en CompraOnlineRepository
-            // Por ahora, contamos todas las compras existentes y agregamos 1
-            Long count = compraOnlineRepository.count();
-            return count;
-        } catch (Exception e) {
-            // Si hay error, empezar desde 0
-            return 0L;
+    private void asegurarSecuencia(String secuencia, String tabla, String columna, String prefijo) {
+        if (secuenciasListas.contains(secuencia)) return;
+        if (!existeSecuencia(secuencia)) {
+            // Transacción propia: el advisory lock dura hasta su commit, junto con el CREATE
+            TransactionTemplate transaccion = new TransactionTemplate(transactionManager);
+            transaccion.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+            transaccion.executeWithoutResult(estado -> crearSecuencia(secuencia, tabla, columna, prefijo));
         }
+        secuenciasListas.add(secuencia);
     }
 
-    private Long obtenerUltimoCorrelativo(VentaRepository ventaRepository) {
-        try {
-            String prefijoBusqueda = sucursal + "-";
-            List<String> facturas = ventaRepository.findTopByNumeroFacturaStartingWith(prefijoBusqueda);
+    private boolean existeSecuencia(String secuencia) {
+        Integer existe = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM pg_class WHERE relkind = 'S' AND relname = ?", Integer.class, secuencia);
+        return existe != null && existe > 0;
+    }
 
-            if (!facturas.isEmpty()) {
-                String ultimaFactura = facturas.get(0);
-                // Extraer el número correlativo (después del guión)
-                String correlativoStr = ultimaFactura.substring(prefijoBusqueda.length());
-                return Long.parseLong(correlativoStr);
-            }
-        } catch (Exception e) {
-            // Si hay error, empezar desde 0
-            return 0L;
+    // Se vuelve a verificar con el lock tomado: si otra instancia ya la creó no se toca su valor
+    private void crearSecuencia(String secuencia, String tabla, String columna, String prefijo) {
+        jdbcTemplate.queryForList("SELECT pg_advisory_xact_lock(hashtext(?))", secuencia);
+        if (existeSecuencia(secuencia)) return;
+
+        jdbcTemplate.execute("CREATE SEQUENCE " + secuencia);
+        // Continuar después del mayor correlativo numérico ya usado con este prefijo
+        Long ultimo = jdbcTemplate.queryForObject(
+                "SELECT COALESCE(MAX(CAST(SUBSTRING(" + columna + " FROM ?) AS BIGINT)), 0) FROM " + tabla
+                        + " WHERE " + columna + " ~ ?",
+                Long.class, prefijo.length() + 1, "^" + prefijo + "[0-9]+$");
+        if (ultimo != null && ultimo > 0) {
+            jdbcTemplate.queryForObject("SELECT setval('" + secuencia + "', ?)", Long.class, ultimo);
         }
+    }
+
+    // El número de sucursal forma parte del nombre de la secuencia
+    private String sucursalValida() {
+        if (sucursal == null || !sucursal.matches("\\d{1,10}")) {
+            throw new IllegalStateException("sucursal.numero debe ser numérico: " + sucursal);
+        }
+        return sucursal;
+    }
 
-        // Si no hay facturas previas, empezar desde 0
-        return 0L;
+    /**
+     * Valores ya reservados en memoria; solo se bloquea cuando hay que pedir otro bloque
+     */
+    private static final class Secuencia {
+        private final ConcurrentLinkedQueue<Long> disponibles = new ConcurrentLinkedQueue<>();
+
+        long siguiente(Supplier<List<Long>> reservarBloque) {
+            Long valor = disponibles.poll();
+            while (valor == null) {
+                synchronized (this) {
+                    if (disponibles.isEmpty()) {
+                        disponibles.addAll(reservarBloque.get());
+                    }
+                }
+                valor = disponibles.poll();
+            }
+            return valor;
+        }
     }
-}
\ No newline at end of file
+}
@@ -7,7 +7,9 @@ import com.sivil.systeam.enums.EstadoPago;
 import com.sivil.systeam.enums.EstadoVenta;
 import com.sivil.systeam.enums.EstadoCompra;
 import com.sivil.systeam.enums.MetodoPago;
+import com.sivil.systeam.event.VentaModificadaEvent;
 import com.sivil.systeam.repository.*;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -16,7 +18,8 @@ import java.time.LocalDate;
 import java.time.YearMonth;
 import java.util.UUID;
 import java.util.regex.Pattern;
-import java.util.Optional;
+import java.util.HashMap;
+import java.util.Map;
 
 @Service
 public class PagoService {
@@ -28,6 +31,10 @@ public class PagoService {
     private final CompraOnlineRepository compraOnlineRepository;
     private final DetalleCompraRepository detalleCompraRepository;
     private final UsuarioRepository usuarioRepository;
+    private final StockService stockService;
+    private final ReservaStockService reservaStockService;
+    private final ApplicationEventPublisher eventPublisher;
+    private final NumeracionFacturaService numeracionFacturaService;
 
     private static final Pattern NUMERO_TARJETA_PATTERN = Pattern.compile("\\d{16}");
     private static final Pattern FECHA_VENCIMIENTO_PATTERN = Pattern.compile("(0[1-9]|1[0-2])/\\d{2}");
@@ -36,7 +43,9 @@ public class PagoService {
     public PagoService(PagoRepository pagoRepository, VentaRepository ventaRepository,
                       DetalleVentaRepository detalleVentaRepository, LibroRepository libroRepository,
                       CompraOnlineRepository compraOnlineRepository, DetalleCompraRepository detalleCompraRepository,
-                      UsuarioRepository usuarioRepository) {
+                      UsuarioRepository usuarioRepository, StockService stockService,
+                      ReservaStockService reservaStockService, ApplicationEventPublisher eventPublisher,
+                      NumeracionFacturaService numeracionFacturaService) {
         this.pagoRepository = pagoRepository;
         this.ventaRepository = ventaRepository;
         this.detalleVentaRepository = detalleVentaRepository;
@@ -44,6 +53,10 @@ public class PagoService {
         this.compraOnlineRepository = compraOnlineRepository;
         this.detalleCompraRepository = detalleCompraRepository;
         this.usuarioRepository = usuarioRepository;
+        this.stockService = stockService;
+        this.reservaStockService = reservaStockService;
+        this.eventPublisher = eventPublisher;
+        this.numeracionFacturaService = numeracionFacturaService;
     }
 
     public Pago procesarPago(String numeroTarjeta, String fechaVencimiento, String cvv, 
@@ -90,30 +103,16 @@ public class PagoService {
         // 1. Validar datos de tarjeta
         validarDatosTarjeta(numeroTarjeta, fechaVencimiento, cvv, nombreTitular, email);
 
-        // 2. Verificar que el número de factura no exista
-        if (ventaRepository.existsByNumeroFactura(ventaTemporal.getNumeroFactura())) {
-            throw new IllegalArgumentException("El número de factura ya existe: " + ventaTemporal.getNumeroFactura());
-        }
+        // 2. Descontar el stock de todos los libros con un solo UPDATE condicional (falla si alguno no alcanza)
+        stockService.descontar(cantidadesPorLibro(ventaTemporal));
 
-        // 3. Verificar stock disponible para todos los libros antes de crear la venta
-        for (VentaTemporalDTO.DetalleVentaTemporalDTO detalleTemporal : ventaTemporal.getDetallesVenta()) {
-            Optional<Libro> libroOpt = libroRepository.findById(detalleTemporal.getIdLibro());
-            if (libroOpt.isEmpty()) {
-                throw new IllegalArgumentException("Libro no encontrado: " + detalleTemporal.getIdLibro());
-            }
-
-            Libro libro = libroOpt.get();
-            if (libro.getCantidad_stock() < detalleTemporal.getCantidad()) {
-                throw new IllegalArgumentException("Stock insuficiente para: " + libro.getTitulo() +
-                        ". Stock disponible: " + libro.getCantidad_stock() +
-                        ". Cantidad solicitada: " + detalleTemporal.getCantidad());
-            }
-        }
+        // 3. Número de factura: se toma recién aquí, cuando la venta se va a registrar
+        ventaTemporal.setNumeroFactura(numeracionFacturaService.generarNumeroFactura());
 
         // 4. Crear la venta en la base de datos
         Venta nuevaVenta = new Venta();
         nuevaVenta.setNumero_factura(ventaTemporal.getNumeroFactura());
-        nuevaVenta.setVendedor(ventaTemporal.getVendedor());
+        nuevaVenta.setVendedor(ventaTemporal.getVendedor() != null ? ventaTemporal.getVendedor().comoReferencia() : null);
         nuevaVenta.setNombre_cliente(ventaTemporal.getNombreCliente());
         nuevaVenta.setContacto_cliente(ventaTemporal.getContactoCliente());
         nuevaVenta.setIdentificacion_cliente(ventaTemporal.getIdentificacionCliente());
@@ -126,10 +125,12 @@ public class PagoService {
         nuevaVenta.setFecha_venta(ventaTemporal.getFechaVenta());
 
         Venta ventaGuardada = ventaRepository.save(nuevaVenta);
+        eventPublisher.publishEvent(VentaModificadaEvent.contabilizada(ventaGuardada));
 
-        // 5. Crear detalles de venta y actualizar stock
+        // 5. Crear detalles de venta
         for (VentaTemporalDTO.DetalleVentaTemporalDTO detalleTemporal : ventaTemporal.getDetallesVenta()) {
-            Libro libro = libroRepository.findById(detalleTemporal.getIdLibro()).get();
+            // Referencia sin consulta: el stock ya se descontó arriba
+            Libro libro = libroRepository.getReferenceById(detalleTemporal.getIdLibro());
 
             // Crear detalle de venta
             DetalleVenta detalle = new DetalleVenta();
@@ -140,10 +141,6 @@ public class PagoService {
             detalle.setSubtotal_item(detalleTemporal.getSubtotalItem());
 
             detalleVentaRepository.save(detalle);
-
-            // Actualizar stock del libro
-            libro.setCantidad_stock(libro.getCantidad_stock() - detalleTemporal.getCantidad());
-            libroRepository.save(libro);
         }
 
         // 6. Procesar el pago
@@ -177,26 +174,16 @@ public class PagoService {
         // No necesitamos crear un usuario temporal ya que el usuario está logueado
         // El usuario será asignado desde el controlador que tiene acceso a la sesión
 
-        // 4. Verificar stock disponible para todos los libros antes de crear la compra
-        for (CompraTemporalDTO.DetalleCompraTemporalDTO detalleTemporal : compraTemporal.getDetallesCompra()) {
-            Optional<Libro> libroOpt = libroRepository.findById(detalleTemporal.getLibroId());
-            if (libroOpt.isEmpty()) {
-                throw new IllegalArgumentException("Libro no encontrado: " + detalleTemporal.getLibroId());
-            }
-
-            Libro libro = libroOpt.get();
-            if (libro.getCantidad_stock() < detalleTemporal.getCantidad()) {
-                throw new IllegalArgumentException("Stock insuficiente para: " + libro.getTitulo() +
-                        ". Stock disponible: " + libro.getCantidad_stock() +
-                        ". Cantidad solicitada: " + detalleTemporal.getCantidad());
-            }
-        }
+        // 4. Descontar el stock de todos los libros con un solo UPDATE condicional (falla si alguno no alcanza)
+        stockService.descontar(cantidadesPorLibro(compraTemporal), compraTemporal.getNumeroOrden());
+        // La reserva hecha al crear la compra se libera al confirmar la transacción
+        reservaStockService.confirmar(compraTemporal.getNumeroOrden());
 
         // 5. Crear la compra online en la base de datos
         CompraOnline nuevaCompra = new CompraOnline();
         nuevaCompra.setNumero_orden(compraTemporal.getNumeroOrden());
 
-        nuevaCompra.setComprador(compraTemporal.getComprador());
+        nuevaCompra.setComprador(compraTemporal.getComprador() != null ? compraTemporal.getComprador().comoReferencia() : null);
         nuevaCompra.setSubtotal(compraTemporal.getSubtotal());
         nuevaCompra.setImpuestos(compraTemporal.getImpuestos());
         nuevaCompra.setTotal(compraTemporal.getTotal());
@@ -206,9 +193,10 @@ public class PagoService {
 
         CompraOnline compraGuardada = compraOnlineRepository.save(nuevaCompra);
 
-        // 6. Crear detalles de compra y actualizar stock
+        // 6. Crear detalles de compra
         for (CompraTemporalDTO.DetalleCompraTemporalDTO detalleTemporal : compraTemporal.getDetallesCompra()) {
-            Libro libro = libroRepository.findById(detalleTemporal.getLibroId()).get();
+            // Referencia sin consulta: el stock ya se descontó arriba
+            Libro libro = libroRepository.getReferenceById(detalleTemporal.getLibroId());
 
             // Crear detalle de compra
             DetalleCompra detalle = new DetalleCompra();
@@ -219,10 +207,6 @@ public class PagoService {
             detalle.setSubtotal_item(detalleTemporal.getSubtotal());
 
             detalleCompraRepository.save(detalle);
-
-            // Actualizar stock del libro
-            libro.setCantidad_stock(libro.getCantidad_stock() - detalleTemporal.getCantidad());
-            libroRepository.save(libro);
         }
 
         // 7. Procesar el pago
@@ -282,6 +266,23 @@ public class PagoService {
         }
     }
     
+    // Cantidad total por libro (el mismo libro puede venir en varias líneas)
+    private static Map<Integer, Integer> cantidadesPorLibro(VentaTemporalDTO ventaTemporal) {
+        Map<Integer, Integer> cantidades = new HashMap<>();
+        for (VentaTemporalDTO.DetalleVentaTemporalDTO detalle : ventaTemporal.getDetallesVenta()) {
+            cantidades.merge(detalle.getIdLibro(), detalle.getCantidad(), Integer::sum);
+        }
+        return cantidades;
+    }
+
+    private static Map<Integer, Integer> cantidadesPorLibro(CompraTemporalDTO compraTemporal) {
+        Map<Integer, Integer> cantidades = new HashMap<>();
+        for (CompraTemporalDTO.DetalleCompraTemporalDTO detalle : compraTemporal.getDetallesCompra()) {
+            cantidades.merge(detalle.getLibroId(), detalle.getCantidad(), Integer::sum);
+        }
+        return cantidades;
+    }
+
     private String simularEncriptacion(String numeroTarjeta, String fechaVencimiento, String cvv) {
         // En una implementación real, aquí habría encriptación real
         // Por ahora solo guardamos los últimos 4 dígitos y ocultamos el resto
@@ -339,30 +340,16 @@ public class PagoService {
                     ") es menor al total de la venta (" + ventaTemporal.getTotal() + ")");
         }
 
-        // 2. Verificar que el número de factura no exista
-        if (ventaRepository.existsByNumeroFactura(ventaTemporal.getNumeroFactura())) {
-            throw new IllegalArgumentException("El número de factura ya existe: " + ventaTemporal.getNumeroFactura());
-        }
+        // 2. Descontar el stock de todos los libros con un solo UPDATE condicional (falla si alguno no alcanza)
+        stockService.descontar(cantidadesPorLibro(ventaTemporal));
 
-        // 3. Verificar stock disponible para todos los libros antes de crear la venta
-        for (VentaTemporalDTO.DetalleVentaTemporalDTO detalleTemporal : ventaTemporal.getDetallesVenta()) {
-            Optional<Libro> libroOpt = libroRepository.findById(detalleTemporal.getIdLibro());
-            if (libroOpt.isEmpty()) {
-                throw new IllegalArgumentException("Libro no encontrado: " + detalleTemporal.getIdLibro());
-            }
-
-            Libro libro = libroOpt.get();
-            if (libro.getCantidad_stock() < detalleTemporal.getCantidad()) {
-                throw new IllegalArgumentException("Stock insuficiente para: " + libro.getTitulo() +
-                        ". Stock disponible: " + libro.getCantidad_stock() +
-                        ". Cantidad solicitada: " + detalleTemporal.getCantidad());
-            }
-        }
+        // 3. Número de factura: se toma recién aquí, cuando la venta se va a registrar
+        ventaTemporal.setNumeroFactura(numeracionFacturaService.generarNumeroFactura());
 
         // 4. Crear la venta en la base de datos
         Venta nuevaVenta = new Venta();
         nuevaVenta.setNumero_factura(ventaTemporal.getNumeroFactura());
-        nuevaVenta.setVendedor(ventaTemporal.getVendedor());
+        nuevaVenta.setVendedor(ventaTemporal.getVendedor() != null ? ventaTemporal.getVendedor().comoReferencia() : null);
         nuevaVenta.setNombre_cliente(ventaTemporal.getNombreCliente());
         nuevaVenta.setContacto_cliente(ventaTemporal.getContactoCliente());
         nuevaVenta.setIdentificacion_cliente(ventaTemporal.getIdentificacionCliente());
@@ -375,10 +362,12 @@ public class PagoService {
         nuevaVenta.setFecha_venta(ventaTemporal.getFechaVenta());
 
         Venta ventaGuardada = ventaRepository.save(nuevaVenta);
+        eventPublisher.publishEvent(VentaModificadaEvent.contabilizada(ventaGuardada));
 
-        // 5. Crear detalles de venta y actualizar stock
+        // 5. Crear detalles de venta
         for (VentaTemporalDTO.DetalleVentaTemporalDTO detalleTemporal : ventaTemporal.getDetallesVenta()) {
-            Libro libro = libroRepository.findById(detalleTemporal.getIdLibro()).get();
+            // Referencia sin consulta: el stock ya se descontó arriba
+            Libro libro = libroRepository.getReferenceById(detalleTemporal.getIdLibro());
 
             // Crear detalle de venta
             DetalleVenta detalle = new DetalleVenta();
@@ -389,10 +378,6 @@ public class PagoService {
             detalle.setSubtotal_item(detalleTemporal.getSubtotalItem());
 
             detalleVentaRepository.save(detalle);
-
-            // Actualizar stock del libro
-            libro.setCantidad_stock(libro.getCantidad_stock() - detalleTemporal.getCantidad());
-            libroRepository.save(libro);
         }
 
         // 6. Procesar el pago en efectivo
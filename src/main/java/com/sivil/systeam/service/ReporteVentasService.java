@@ -0,0 +1,128 @@
+package com.sivil.systeam.service;
+
+import com.sivil.systeam.service.dto.IngresoPeriodo;
+import com.sivil.systeam.service.dto.LibroMasVendido;
+import com.sivil.systeam.service.dto.RendimientoVendedor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reportes de ventas leídos de las tablas resumen diarias (RollupVentasService),
+ * sin recorrer ventas ni detalles.
+ * Si las tablas resumen no están habilitadas los reportes lanzan IllegalStateException.
+ */
+@Service
+public class ReporteVentasService {
+
+    public static final int MAX_RESULTADOS = 100;
+
+    // Unidad de date_trunc por período
+    private static final Map<String, String> PERIODOS = Map.of(
+            "dia", "day",
+            "semana", "week",
+            "mes", "month");
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private RollupVentasService rollupVentasService;
+
+    /**
+     * Libros más vendidos en el rango (ambos canales)
+     * @param limite cantidad de libros (1 a MAX_RESULTADOS)
+     */
+    public List<LibroMasVendido> librosMasVendidos(LocalDate desde, LocalDate hasta, int limite) {
+        rollupVentasService.verificarHabilitado();
+        validarRango(desde, hasta);
+        return jdbcTemplate.query(
+                "SELECT r.id_libro, l.codigo_libro, l.titulo, l.autor, r.unidades, r.ingresos " +
+                "FROM (SELECT id_libro, SUM(unidades) AS unidades, SUM(ingresos) AS ingresos " +
+                "      FROM ventas_diarias_por_libro WHERE dia BETWEEN ? AND ? " +
+                "      GROUP BY id_libro ORDER BY SUM(unidades) DESC, id_libro LIMIT ?) r " +
+                "JOIN libros l ON l.id_libro = r.id_libro " +
+                "ORDER BY r.unidades DESC, r.id_libro",
+                (rs, i) -> new LibroMasVendido(
+                        rs.getInt("id_libro"),
+                        rs.getString("codigo_libro"),
+                        rs.getString("titulo"),
+                        rs.getString("autor"),
+                        rs.getLong("unidades"),
+                        rs.getBigDecimal("ingresos")),
+                Date.valueOf(desde), Date.valueOf(hasta), Math.min(Math.max(limite, 1), MAX_RESULTADOS));
+    }
+
+    /**
+     * Ingresos agrupados por día, semana o mes
+     * @param periodo "dia", "semana" o "mes"
+     */
+    public List<IngresoPeriodo> ingresosPorPeriodo(LocalDate desde, LocalDate hasta, String periodo) {
+        rollupVentasService.verificarHabilitado();
+        validarRango(desde, hasta);
+        String unidad = PERIODOS.get(periodo == null ? "" : periodo.toLowerCase());
+        if (unidad == null) {
+            throw new IllegalArgumentException("Período no válido: " + periodo + " (use dia, semana o mes)");
+        }
+        return jdbcTemplate.query(
+                "SELECT CAST(date_trunc('" + unidad + "', dia) AS DATE) AS inicio, " +
+                "       SUM(unidades) AS unidades, " +
+                "       COALESCE(SUM(ingresos) FILTER (WHERE canal = 'pos'), 0) AS pos, " +
+                "       COALESCE(SUM(ingresos) FILTER (WHERE canal = 'online'), 0) AS online, " +
+                "       SUM(ingresos) AS total " +
+                "FROM ventas_diarias_por_libro WHERE dia BETWEEN ? AND ? " +
+                "GROUP BY 1 ORDER BY 1",
+                (rs, i) -> new IngresoPeriodo(
+                        rs.getDate("inicio").toLocalDate(),
+                        rs.getLong("unidades"),
+                        rs.getBigDecimal("pos"),
+                        rs.getBigDecimal("online"),
+                        rs.getBigDecimal("total")),
+                Date.valueOf(desde), Date.valueOf(hasta));
+    }
+
+    /**
+     * Ventas, unidades e ingresos por vendedor, de mayor a menor ingreso
+     */
+    public List<RendimientoVendedor> rendimientoVendedores(LocalDate desde, LocalDate hasta) {
+        rollupVentasService.verificarHabilitado();
+        validarRango(desde, hasta);
+        return jdbcTemplate.query(
+                "SELECT r.id_vendedor, u.nombre_completo, r.ventas, r.unidades, r.ingresos " +
+                "FROM (SELECT id_vendedor, SUM(ventas) AS ventas, SUM(unidades) AS unidades, SUM(ingresos) AS ingresos " +
+                "      FROM ventas_diarias_por_vendedor WHERE dia BETWEEN ? AND ? GROUP BY id_vendedor) r " +
+                "JOIN usuarios u ON u.id_usuario = r.id_vendedor " +
+                "ORDER BY r.ingresos DESC, r.id_vendedor",
+                (rs, i) -> {
+                    long ventas = rs.getLong("ventas");
+                    BigDecimal ingresos = rs.getBigDecimal("ingresos");
+                    BigDecimal promedio = ventas > 0
+                            ? ingresos.divide(BigDecimal.valueOf(ventas), 2, RoundingMode.HALF_UP)
+                            : BigDecimal.ZERO;
+                    return new RendimientoVendedor(
+                            rs.getInt("id_vendedor"),
+                            rs.getString("nombre_completo"),
+                            ventas,
+                            rs.getLong("unidades"),
+                            ingresos,
+                            promedio);
+                },
+                Date.valueOf(desde), Date.valueOf(hasta));
+    }
+
+    private static void validarRango(LocalDate desde, LocalDate hasta) {
+        if (desde == null || hasta == null) {
+            throw new IllegalArgumentException("Debe indicar las fechas desde y hasta");
+        }
+        if (desde.isAfter(hasta)) {
+            throw new IllegalArgumentException("La fecha desde no puede ser posterior a la fecha hasta");
+        }
+    }
+}
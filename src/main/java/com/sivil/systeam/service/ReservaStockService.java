@@ -0,0 +1,239 @@
+package com.sivil.systeam.service;
+
+import com.sivil.systeam.entity.Libro;
+import com.sivil.systeam.event.LibroModificadoEvent;
+import com.sivil.systeam.repository.LibroRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reservas temporales de stock para compras pendientes de pago.
+ *
+ * - Una reserva aparta unidades de uno o varios libros bajo una clave (número de orden)
+ *   y vence a los reservas.ttl-minutos; un proceso periódico libera las vencidas
+ * - Disponible para vender = último stock conocido - unidades reservadas.
+ *   Ambos valores viven en memoria, así que reservar no consulta ni bloquea la tabla libros
+ *   (el stock de un libro se lee la primera vez que se reserva y de nuevo después de
+ *   cada cambio confirmado: el evento solo descarta el valor guardado, así un evento que
+ *   llega fuera de orden no puede dejar un stock viejo)
+ * - El contador de reservado es por libro y se actualiza con compare-and-set:
+ *   reservas de libros distintos nunca compiten entre sí
+ * - Confirmar libera la reserva después del commit del pago; el descuento real del stock
+ *   lo hace StockService con su UPDATE condicional
+ * - Los demás movimientos que bajan el stock (ventas en tienda, ajustes, edición e
+ *   importación de libros) no pueden dejarlo por debajo de las unidades reservadas
+ */
+@Service
+public class ReservaStockService {
+
+    @Autowired
+    private LibroRepository libroRepository;
+
+    @Autowired
+    private LibroCache libroCache;
+
+    @Value("${reservas.ttl-minutos:15}")
+    private long ttlMinutos;
+
+    // Reservas vigentes por clave
+    private final ConcurrentHashMap<String, Reserva> reservas = new ConcurrentHashMap<>();
+
+    // Unidades reservadas por libro
+    private final ConcurrentHashMap<Integer, AtomicInteger> reservado = new ConcurrentHashMap<>();
+
+    // Stock leído de la BD de los libros reservados, hasta su siguiente cambio confirmado
+    private final ConcurrentHashMap<Integer, Integer> stock = new ConcurrentHashMap<>();
+
+    // Cambios de stock confirmados: una lectura que se cruza con uno no se guarda
+    private final AtomicLong cambios = new AtomicLong();
+
+    private record Reserva(Map<Integer, Integer> cantidades, long venceEn) {}
+
+    /**
+     * Aparta stock para una compra pendiente. Si la clave ya tenía una reserva, se reemplaza.
+     * @param clave identificador de la reserva (por ejemplo, el número de orden)
+     * @param cantidades cantidad por ID de libro
+     * @throws IllegalArgumentException si algún libro no existe o no tiene unidades disponibles;
+     *         en ese caso no queda nada reservado
+     */
+    public void reservar(String clave, Map<Integer, Integer> cantidades) {
+        liberar(clave);
+
+        TreeMap<Integer, Integer> ordenadas = new TreeMap<>();
+        for (Map.Entry<Integer, Integer> entrada : cantidades.entrySet()) {
+            if (entrada.getKey() == null || entrada.getValue() == null || entrada.getValue() <= 0) {
+                throw new IllegalArgumentException("Cantidad inválida para el libro: " + entrada.getKey());
+            }
+            ordenadas.merge(entrada.getKey(), entrada.getValue(), Integer::sum);
+        }
+        Map<Integer, Integer> stockActual = cargarStock(ordenadas.keySet());
+
+        Map<Integer, Integer> tomadas = new HashMap<>();
+        try {
+            for (Map.Entry<Integer, Integer> entrada : ordenadas.entrySet()) {
+                tomar(entrada.getKey(), entrada.getValue(), stockActual.get(entrada.getKey()));
+                tomadas.put(entrada.getKey(), entrada.getValue());
+            }
+        } catch (RuntimeException e) {
+            devolver(tomadas);
+            throw e;
+        }
+        reservas.put(clave, new Reserva(Map.copyOf(ordenadas), System.currentTimeMillis() + ttlMinutos * 60_000L));
+    }
+
+    /**
+     * Marca la reserva como usada. Dentro de una transacción se libera al hacer commit
+     * (si hay rollback se conserva para poder reintentar el pago hasta que venza).
+     */
+    public void confirmar(String clave) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    liberar(clave);
+                }
+            });
+        } else {
+            liberar(clave);
+        }
+    }
+
+    /**
+     * Devuelve las unidades apartadas por la clave (no hace nada si no existe)
+     */
+    public void liberar(String clave) {
+        if (clave == null) return;
+        Reserva reserva = reservas.remove(clave);
+        if (reserva != null) devolver(reserva.cantidades());
+    }
+
+    /**
+     * Libera las reservas vencidas
+     */
+    @Scheduled(fixedDelayString = "${reservas.limpieza-ms:60000}")
+    public void liberarVencidas() {
+        long ahora = System.currentTimeMillis();
+        for (Map.Entry<String, Reserva> entrada : reservas.entrySet()) {
+            Reserva reserva = entrada.getValue();
+            if (reserva.venceEn() < ahora && reservas.remove(entrada.getKey(), reserva)) {
+                devolver(reserva.cantidades());
+            }
+        }
+    }
+
+    /**
+     * Unidades reservadas de un libro por compras pendientes
+     */
+    public int reservado(Integer idLibro) {
+        AtomicInteger contador = reservado.get(idLibro);
+        return contador == null ? 0 : contador.get();
+    }
+
+    /**
+     * Unidades reservadas de un libro por compras pendientes distintas de la indicada
+     * (la compra que se está pagando puede usar sus propias unidades apartadas)
+     * @param claveExcluida clave de la reserva que no se cuenta (null = contar todas)
+     */
+    public int reservadoPorOtros(Integer idLibro, String claveExcluida) {
+        int total = reservado(idLibro);
+        Reserva propia = claveExcluida != null ? reservas.get(claveExcluida) : null;
+        if (propia != null) {
+            total -= propia.cantidades().getOrDefault(idLibro, 0);
+        }
+        return Math.max(total, 0);
+    }
+
+    /**
+     * Unidades reservadas de todos los libros que tienen alguna reserva vigente
+     */
+    public Map<Integer, Integer> apartados() {
+        Map<Integer, Integer> resultado = new HashMap<>();
+        reservado.forEach((idLibro, contador) -> {
+            int cantidad = contador.get();
+            if (cantidad > 0) resultado.put(idLibro, cantidad);
+        });
+        return resultado;
+    }
+
+    /**
+     * Stock disponible para vender (stock - reservado)
+     */
+    public int disponible(Libro libro) {
+        int stockActual = libro.getCantidad_stock() == null ? 0 : libro.getCantidad_stock();
+        return Math.max(stockActual - reservado(libro.getId_libro()), 0);
+    }
+
+    /**
+     * Descarta el stock guardado del libro cuando cambia (se vuelve a leer en la
+     * siguiente reserva). No se copia el valor del evento porque los eventos de
+     * transacciones concurrentes pueden llegar en otro orden que sus commits.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void alModificarLibro(LibroModificadoEvent evento) {
+        cambios.incrementAndGet();
+        stock.remove(evento.idLibro());
+    }
+
+    // Suma al reservado del libro solo si no supera el stock conocido (null = libro inexistente)
+    private void tomar(Integer idLibro, int cantidad, Integer stockLibro) {
+        if (stockLibro == null) {
+            throw new IllegalArgumentException("Libro no encontrado: " + idLibro);
+        }
+        AtomicInteger contador = reservado.computeIfAbsent(idLibro, k -> new AtomicInteger());
+        while (true) {
+            int actual = contador.get();
+            if (stockLibro - actual < cantidad) {
+                throw new IllegalArgumentException(mensajeSinStock(idLibro, Math.max(stockLibro - actual, 0), cantidad));
+            }
+            if (contador.compareAndSet(actual, actual + cantidad)) return;
+        }
+    }
+
+    private void devolver(Map<Integer, Integer> cantidades) {
+        cantidades.forEach((idLibro, cantidad) -> {
+            AtomicInteger contador = reservado.get(idLibro);
+            if (contador != null) contador.addAndGet(-cantidad);
+        });
+    }
+
+    // Stock de los libros indicados; lee de la BD solo los que no están guardados.
+    // Lo leído se guarda solo si mientras tanto no se confirmó ningún cambio de stock
+    private Map<Integer, Integer> cargarStock(Set<Integer> ids) {
+        Map<Integer, Integer> resultado = new HashMap<>();
+        List<Integer> faltantes = new ArrayList<>();
+        for (Integer id : ids) {
+            Integer conocido = stock.get(id);
+            if (conocido != null) resultado.put(id, conocido);
+            else faltantes.add(id);
+        }
+        if (faltantes.isEmpty()) return resultado;
+
+        long cambiosAntes = cambios.get();
+        Map<Integer, Integer> leidos = new HashMap<>();
+        for (Libro libro : libroRepository.findAllById(faltantes)) {
+            leidos.put(libro.getId_libro(), libro.getCantidad_stock() == null ? 0 : libro.getCantidad_stock());
+        }
+        resultado.putAll(leidos);
+        if (cambios.get() == cambiosAntes) {
+            stock.putAll(leidos);
+        }
+        return resultado;
+    }
+
+    private String mensajeSinStock(Integer idLibro, int disponible, int cantidad) {
+        String titulo = libroCache.obtener(idLibro).map(Libro::getTitulo).orElse("libro " + idLibro);
+        return "Stock insuficiente para: " + titulo +
+                ". Stock disponible: " + disponible +
+                ". Cantidad solicitada: " + cantidad;
+    }
+}
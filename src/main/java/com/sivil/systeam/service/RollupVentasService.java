@@ -0,0 +1,187 @@
+package com.sivil.systeam.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * Tablas resumen de ventas por día (ventas_diarias_por_libro y ventas_diarias_por_vendedor).
+ *
+ * - Un proceso periódico busca las ventas y compras online modificadas desde la última
+ *   marca de agua (fecha_ultima_actualizacion) y recalcula solo los días afectados
+ * - Recalcular un día completo (DELETE + INSERT agrupado) es idempotente, así que
+ *   inactivaciones, reactivaciones y ediciones quedan reflejadas sin llevar deltas
+ * - La marca se consulta con un margen hacia atrás para no perder transacciones que
+ *   confirmaron después de otras más recientes
+ * - Un advisory lock evita que dos instancias procesen a la vez
+ * - Desactivado por defecto: requiere crear las tablas y reportes.rollup.habilitado=true
+ * (ver "Tablas resumen de ventas" en docs/sivil_database_design.md)
+ */
+@Service
+public class RollupVentasService {
+
+    private static final String MARCA_VENTAS = "ventas";
+    private static final String MARCA_COMPRAS = "compras_online";
+    // Identificador del advisory lock del proceso
+    private static final long CANDADO = 1701_0017L;
+    private static final int MARGEN_MINUTOS = 5;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    // true solo si ya existen las tablas resumen (ver docs)
+    @Value("${reportes.rollup.habilitado:false}")
+    private boolean habilitado;
+
+    public boolean estaHabilitado() {
+        return habilitado;
+    }
+
+    /**
+     * Proceso periódico; no hace nada si las tablas resumen no están habilitadas
+     */
+    @Scheduled(fixedDelayString = "${reportes.rollup.intervalo-ms:60000}",
+               initialDelayString = "${reportes.rollup.retraso-inicial-ms:30000}")
+    public void actualizarPeriodicamente() {
+        if (habilitado) actualizar();
+    }
+
+    /**
+     * Procesa los cambios pendientes
+     * @return cantidad de días recalculados (ventas + compras online)
+     * @throws IllegalStateException si las tablas resumen no están habilitadas
+     */
+    public int actualizar() {
+        verificarHabilitado();
+        Integer dias = new TransactionTemplate(transactionManager).execute(estado -> procesarPendientes());
+        return dias != null ? dias : 0;
+    }
+
+    /**
+     * @throws IllegalStateException si las tablas resumen no están habilitadas
+     */
+    public void verificarHabilitado() {
+        if (!habilitado) {
+            throw new IllegalStateException("Los reportes no están disponibles: las tablas resumen de ventas " +
+                    "no están habilitadas (reportes.rollup.habilitado)");
+        }
+    }
+
+    private int procesarPendientes() {
+        Boolean candado = jdbcTemplate.queryForObject("SELECT pg_try_advisory_xact_lock(?)", Boolean.class, CANDADO);
+        if (!Boolean.TRUE.equals(candado)) return 0; // otra instancia está procesando
+
+        int dias = 0;
+
+        Map<LocalDate, LocalDateTime> ventas = diasModificados(MARCA_VENTAS,
+                "SELECT CAST(fecha_venta AS DATE) AS dia, MAX(fecha_ultima_actualizacion) AS marca " +
+                "FROM ventas WHERE fecha_ultima_actualizacion > ? GROUP BY CAST(fecha_venta AS DATE)");
+        if (!ventas.isEmpty()) {
+            recalcularVentas(ventas.keySet());
+            guardarMarca(MARCA_VENTAS, Collections.max(ventas.values()));
+            dias += ventas.size();
+        }
+
+        Map<LocalDate, LocalDateTime> compras = diasModificados(MARCA_COMPRAS,
+                "SELECT CAST(fecha_compra AS DATE) AS dia, MAX(fecha_ultima_actualizacion) AS marca " +
+                "FROM compras_online WHERE fecha_ultima_actualizacion > ? GROUP BY CAST(fecha_compra AS DATE)");
+        if (!compras.isEmpty()) {
+            recalcularCompras(compras.keySet());
+            guardarMarca(MARCA_COMPRAS, Collections.max(compras.values()));
+            dias += compras.size();
+        }
+        return dias;
+    }
+
+    // Días con filas modificadas desde la marca (menos el margen) y la última modificación de cada uno
+    private Map<LocalDate, LocalDateTime> diasModificados(String nombreMarca, String sql) {
+        LocalDateTime desde = leerMarca(nombreMarca).minusMinutes(MARGEN_MINUTOS);
+        Map<LocalDate, LocalDateTime> dias = new HashMap<>();
+        jdbcTemplate.query(sql, rs -> {
+            Date dia = rs.getDate("dia");
+            Timestamp marca = rs.getTimestamp("marca");
+            if (dia != null && marca != null) dias.put(dia.toLocalDate(), marca.toLocalDateTime());
+        }, Timestamp.valueOf(desde));
+        return dias;
+    }
+
+    // Ventas POS (no inactivas) por libro y por vendedor
+    private void recalcularVentas(Set<LocalDate> dias) {
+        String[] fechas = fechas(dias);
+        Timestamp inicio = inicio(dias);
+        Timestamp fin = fin(dias);
+
+        jdbcTemplate.update("DELETE FROM ventas_diarias_por_libro WHERE canal = 'pos' AND dia = ANY(?::date[])", (Object) fechas);
+        jdbcTemplate.update(
+                "INSERT INTO ventas_diarias_por_libro (dia, canal, id_libro, unidades, ingresos) " +
+                "SELECT CAST(v.fecha_venta AS DATE), 'pos', d.id_libro, SUM(d.cantidad), SUM(d.subtotal_item) " +
+                "FROM ventas v JOIN detalle_venta d ON d.id_venta = v.id_venta " +
+                "WHERE v.estado <> 'inactiva' AND v.fecha_venta >= ? AND v.fecha_venta < ? " +
+                "AND CAST(v.fecha_venta AS DATE) = ANY(?::date[]) " +
+                "GROUP BY CAST(v.fecha_venta AS DATE), d.id_libro",
+                inicio, fin, fechas);
+
+        jdbcTemplate.update("DELETE FROM ventas_diarias_por_vendedor WHERE dia = ANY(?::date[])", (Object) fechas);
+        jdbcTemplate.update(
+                "INSERT INTO ventas_diarias_por_vendedor (dia, id_vendedor, ventas, unidades, ingresos) " +
+                "SELECT CAST(v.fecha_venta AS DATE), v.id_vendedor, COUNT(*), COALESCE(SUM(u.unidades), 0), SUM(v.total) " +
+                "FROM ventas v LEFT JOIN LATERAL " +
+                "    (SELECT SUM(d.cantidad) AS unidades FROM detalle_venta d WHERE d.id_venta = v.id_venta) u ON TRUE " +
+                "WHERE v.estado <> 'inactiva' AND v.fecha_venta >= ? AND v.fecha_venta < ? " +
+                "AND CAST(v.fecha_venta AS DATE) = ANY(?::date[]) " +
+                "GROUP BY CAST(v.fecha_venta AS DATE), v.id_vendedor",
+                inicio, fin, fechas);
+    }
+
+    // Compras online por libro
+    private void recalcularCompras(Set<LocalDate> dias) {
+        String[] fechas = fechas(dias);
+        jdbcTemplate.update("DELETE FROM ventas_diarias_por_libro WHERE canal = 'online' AND dia = ANY(?::date[])", (Object) fechas);
+        jdbcTemplate.update(
+                "INSERT INTO ventas_diarias_por_libro (dia, canal, id_libro, unidades, ingresos) " +
+                "SELECT CAST(c.fecha_compra AS DATE), 'online', d.id_libro, SUM(d.cantidad), SUM(d.subtotal_item) " +
+                "FROM compras_online c JOIN detalle_compra d ON d.id_compra = c.id_compra " +
+                "WHERE c.fecha_compra >= ? AND c.fecha_compra < ? AND CAST(c.fecha_compra AS DATE) = ANY(?::date[]) " +
+                "GROUP BY CAST(c.fecha_compra AS DATE), d.id_libro",
+                inicio(dias), fin(dias), fechas);
+    }
+
+    private LocalDateTime leerMarca(String nombre) {
+        List<Timestamp> marca = jdbcTemplate.queryForList(
+                "SELECT marca FROM rollup_marca WHERE nombre = ?", Timestamp.class, nombre);
+        return marca.isEmpty() ? LocalDateTime.of(1970, 1, 1, 0, 0) : marca.get(0).toLocalDateTime();
+    }
+
+    private void guardarMarca(String nombre, LocalDateTime marca) {
+        jdbcTemplate.update(
+                "INSERT INTO rollup_marca (nombre, marca) VALUES (?, ?) " +
+                "ON CONFLICT (nombre) DO UPDATE SET marca = GREATEST(rollup_marca.marca, EXCLUDED.marca)",
+                nombre, Timestamp.valueOf(marca));
+    }
+
+    // El driver envía String[] como arreglo de texto; la consulta lo convierte a date[]
+    private static String[] fechas(Set<LocalDate> dias) {
+        return dias.stream().map(LocalDate::toString).toArray(String[]::new);
+    }
+
+    private static Timestamp inicio(Set<LocalDate> dias) {
+        return Timestamp.valueOf(Collections.min(dias).atStartOfDay());
+    }
+
+    private static Timestamp fin(Set<LocalDate> dias) {
+        return Timestamp.valueOf(Collections.max(dias).plusDays(1).atStartOfDay());
+    }
+}
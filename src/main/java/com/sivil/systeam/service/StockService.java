@@ -0,0 +1,156 @@
+package com.sivil.systeam.service;
+
+import com.sivil.systeam.event.LibroModificadoEvent;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Movimientos de stock con UPDATE condicionales (uno solo para todos los libros de un descuento).
+ *
+ * - El descuento solo se aplica si hay stock suficiente sin tocar las unidades apartadas
+ *   por compras online pendientes (cantidad_stock - apartado >= cantidad, ver ReservaStockService);
+ *   si no se actualizó ninguna fila, el stock no alcanza o el libro no existe
+ * - PostgreSQL bloquea la fila durante el UPDATE, así que dos ventas concurrentes
+ *   no pueden pisarse el stock
+ * - Los libros se bloquean en orden de ID para evitar deadlocks entre transacciones
+ * - Varios libros se descuentan con un único UPDATE ... FROM unnest(...): una venta de
+ *   50 líneas es un solo viaje a la BD
+ * - Debe llamarse dentro de la transacción de la venta/compra: si un libro falla,
+ *   la excepción revierte también los descuentos anteriores
+ */
+@Service
+public class StockService {
+
+    private static final String DESCONTAR =
+            "UPDATE libros SET cantidad_stock = cantidad_stock - ? " +
+            "WHERE id_libro = ? AND cantidad_stock - ? >= ? RETURNING cantidad_stock";
+
+    // Bloquea en orden de ID y descuenta todos los libros que tienen stock suficiente
+    private static final String DESCONTAR_VARIOS =
+            "WITH pedido AS (SELECT * FROM unnest(?::int[], ?::int[], ?::int[]) AS p(id_libro, cantidad, apartado)), " +
+            "bloqueados AS (SELECT l.id_libro FROM libros l JOIN pedido p ON p.id_libro = l.id_libro " +
+            "               ORDER BY l.id_libro FOR UPDATE OF l) " +
+            "UPDATE libros l SET cantidad_stock = l.cantidad_stock - p.cantidad " +
+            "FROM pedido p " +
+            "WHERE l.id_libro = p.id_libro AND l.cantidad_stock - p.apartado >= p.cantidad " +
+            "AND l.id_libro IN (SELECT id_libro FROM bloqueados) " +
+            "RETURNING l.id_libro, l.cantidad_stock";
+
+    private static final String REPONER =
+            "UPDATE libros SET cantidad_stock = COALESCE(cantidad_stock, 0) + ? " +
+            "WHERE id_libro = ? RETURNING cantidad_stock";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private ReservaStockService reservaStockService;
+
+    /**
+     * Descuenta el stock de varios libros (venta en tienda, reactivación de ventas):
+     * no puede usar unidades apartadas por compras online pendientes
+     * @param cantidades cantidad a descontar por ID de libro
+     * @throws IllegalArgumentException si algún libro no existe o no tiene stock suficiente
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void descontar(Map<Integer, Integer> cantidades) {
+        descontar(cantidades, null);
+    }
+
+    /**
+     * Descuenta el stock de una compra que tenía reserva: sus propias unidades apartadas
+     * sí se pueden usar, las de otras reservas no
+     * @param cantidades cantidad a descontar por ID de libro
+     * @param claveReserva clave de la reserva de la compra (null si no tiene)
+     * @throws IllegalArgumentException si algún libro no existe o no tiene stock suficiente
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void descontar(Map<Integer, Integer> cantidades, String claveReserva) {
+        TreeMap<Integer, Integer> pedido = ordenadas(cantidades);
+        Map<Integer, Integer> apartado = new HashMap<>();
+        pedido.keySet().forEach(id -> apartado.put(id, reservaStockService.reservadoPorOtros(id, claveReserva)));
+
+        if (pedido.size() == 1) {
+            Map.Entry<Integer, Integer> entrada = pedido.firstEntry();
+            List<Integer> stock = jdbcTemplate.queryForList(DESCONTAR, Integer.class,
+                    entrada.getValue(), entrada.getKey(), apartado.get(entrada.getKey()), entrada.getValue());
+            if (stock.isEmpty()) {
+                throw new IllegalArgumentException(
+                        mensajeSinStock(entrada.getKey(), entrada.getValue(), apartado.get(entrada.getKey())));
+            }
+            eventPublisher.publishEvent(LibroModificadoEvent.stockActualizado(entrada.getKey(), stock.get(0)));
+            return;
+        }
+
+        Map<Integer, Integer> stockFinal = new HashMap<>();
+        jdbcTemplate.query(DESCONTAR_VARIOS,
+                rs -> { stockFinal.put(rs.getInt("id_libro"), rs.getInt("cantidad_stock")); },
+                pedido.keySet().toArray(new Integer[0]), pedido.values().toArray(new Integer[0]),
+                pedido.keySet().stream().map(apartado::get).toArray(Integer[]::new));
+
+        // Un libro sin fila devuelta no existe o no tenía stock: la excepción revierte el resto
+        for (Map.Entry<Integer, Integer> entrada : pedido.entrySet()) {
+            if (!stockFinal.containsKey(entrada.getKey())) {
+                throw new IllegalArgumentException(
+                        mensajeSinStock(entrada.getKey(), entrada.getValue(), apartado.get(entrada.getKey())));
+            }
+        }
+        stockFinal.forEach((idLibro, stock) ->
+                eventPublisher.publishEvent(LibroModificadoEvent.stockActualizado(idLibro, stock)));
+    }
+
+    /**
+     * Devuelve stock a varios libros (por ejemplo, al inactivar una venta)
+     * @param cantidades cantidad a sumar por ID de libro
+     * @throws IllegalArgumentException si algún libro no existe
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void reponer(Map<Integer, Integer> cantidades) {
+        for (Map.Entry<Integer, Integer> entrada : ordenadas(cantidades).entrySet()) {
+            Integer idLibro = entrada.getKey();
+            List<Integer> stock = jdbcTemplate.queryForList(REPONER, Integer.class, entrada.getValue(), idLibro);
+            if (stock.isEmpty()) {
+                throw new IllegalArgumentException("Libro no encontrado: " + idLibro);
+            }
+            eventPublisher.publishEvent(LibroModificadoEvent.stockActualizado(idLibro, stock.get(0)));
+        }
+    }
+
+    // Valida las cantidades y las ordena por ID de libro
+    private static TreeMap<Integer, Integer> ordenadas(Map<Integer, Integer> cantidades) {
+        TreeMap<Integer, Integer> resultado = new TreeMap<>();
+        for (Map.Entry<Integer, Integer> entrada : cantidades.entrySet()) {
+            if (entrada.getKey() == null || entrada.getValue() == null || entrada.getValue() <= 0) {
+                throw new IllegalArgumentException("Cantidad inválida para el libro: " + entrada.getKey());
+            }
+            resultado.put(entrada.getKey(), entrada.getValue());
+        }
+        return resultado;
+    }
+
+    // Solo se consulta el libro cuando el descuento falla, para armar el mensaje
+    private String mensajeSinStock(Integer idLibro, int cantidad, int apartado) {
+        List<Map<String, Object>> filas = jdbcTemplate.queryForList(
+                "SELECT titulo, cantidad_stock FROM libros WHERE id_libro = ?", idLibro);
+        if (filas.isEmpty()) {
+            return "Libro no encontrado: " + idLibro;
+        }
+        Map<String, Object> libro = filas.get(0);
+        int stock = libro.get("cantidad_stock") == null ? 0 : ((Number) libro.get("cantidad_stock")).intValue();
+        return "Stock insuficiente para: " + libro.get("titulo") +
+                ". Stock disponible: " + Math.max(stock - apartado, 0) +
+                ". Cantidad solicitada: " + cantidad;
+    }
+}
@@ -0,0 +1,217 @@
+package com.sivil.systeam.service;
+
+import com.sivil.systeam.entity.Libro;
+import com.sivil.systeam.event.LibroModificadoEvent;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Niveles de stock en tiempo real por Server-Sent Events (/api/stock/stream).
+ *
+ * - Cada conexión se suscribe a una lista de id_libro y recibe primero el stock actual
+ *   de esos libros y luego solo los cambios
+ * - Los cambios llegan con LibroModificadoEvent después del commit (ventas, compras,
+ *   inactivaciones, ajustes, edición de libros) y se agrupan: cada
+ *   stock.stream.intervalo-ms se envía a cada suscriptor un solo evento "stock" con el
+ *   último valor de cada libro que cambió
+ * - Las conexiones son asíncronas (no ocupan un hilo del servidor mientras esperan) y
+ *   los envíos se hacen en hilos virtuales, uno por suscriptor con envíos pendientes:
+ *   un cliente lento no retrasa a los demás y sus cambios se siguen agrupando
+ */
+@Service
+public class StockStreamService {
+
+    public static final int MAX_LIBROS_POR_SUSCRIPCION = 500;
+
+    @Autowired
+    private LibroCache libroCache;
+
+    @Value("${stock.stream.max-conexiones:10000}")
+    private int maxConexiones;
+
+    @Value("${stock.stream.timeout-ms:1800000}")
+    private long timeoutMs;
+
+    // Cambio de stock enviado al cliente
+    public record NivelStock(Integer idLibro, int stock) {}
+
+    private static final class Suscripcion {
+        final SseEmitter emitter;
+        final Set<Integer> libros;
+        // id_libro -> último stock aún no enviado
+        final Map<Integer, Integer> porEnviar = new ConcurrentHashMap<>();
+        final AtomicBoolean enviando = new AtomicBoolean();
+
+        Suscripcion(SseEmitter emitter, Set<Integer> libros) {
+            this.emitter = emitter;
+            this.libros = libros;
+        }
+    }
+
+    // id_libro -> suscripciones interesadas
+    private final Map<Integer, Set<Suscripcion>> porLibro = new ConcurrentHashMap<>();
+    private final Set<Suscripcion> suscripciones = ConcurrentHashMap.newKeySet();
+
+    // Cambios confirmados desde el último envío (id_libro -> último stock)
+    private final Map<Integer, Integer> cambios = new ConcurrentHashMap<>();
+
+    private final ExecutorService envios = Executors.newVirtualThreadPerTaskExecutor();
+
+    /**
+     * Abre una suscripción para los libros indicados
+     * @throws IllegalArgumentException si no hay libros o son demasiados
+     * @throws IllegalStateException si se alcanzó el máximo de conexiones
+     */
+    public SseEmitter suscribir(Collection<Integer> idsLibros) {
+        Set<Integer> libros = new LinkedHashSet<>();
+        for (Integer id : idsLibros) {
+            if (id != null) libros.add(id);
+        }
+        if (libros.isEmpty()) {
+            throw new IllegalArgumentException("Debe indicar al menos un libro");
+        }
+        if (libros.size() > MAX_LIBROS_POR_SUSCRIPCION) {
+            throw new IllegalArgumentException("No se puede seguir más de " + MAX_LIBROS_POR_SUSCRIPCION + " libros por conexión");
+        }
+        if (suscripciones.size() >= maxConexiones) {
+            throw new IllegalStateException("Se alcanzó el máximo de conexiones de stock en tiempo real");
+        }
+
+        Suscripcion suscripcion = new Suscripcion(new SseEmitter(timeoutMs), Set.copyOf(libros));
+        suscripcion.emitter.onCompletion(() -> quitar(suscripcion));
+        suscripcion.emitter.onTimeout(() -> quitar(suscripcion));
+        suscripcion.emitter.onError(e -> quitar(suscripcion));
+
+        suscripciones.add(suscripcion);
+        for (Integer id : suscripcion.libros) {
+            porLibro.computeIfAbsent(id, k -> ConcurrentHashMap.newKeySet()).add(suscripcion);
+        }
+
+        // Stock actual como primer evento (un cambio que llegue mientras tanto lo reemplaza)
+        for (Integer id : suscripcion.libros) {
+            libroCache.obtener(id).ifPresent(libro ->
+                    suscripcion.porEnviar.putIfAbsent(id, stockDe(libro)));
+        }
+        programarEnvio(suscripcion);
+        return suscripcion.emitter;
+    }
+
+    /**
+     * Registra el stock final de un libro cuando su cambio ya está confirmado
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void alModificarLibro(LibroModificadoEvent evento) {
+        if (!porLibro.containsKey(evento.idLibro())) return; // nadie lo sigue
+        int stock = evento.esEliminacion() ? 0
+                : evento.cantidadStock() != null ? evento.cantidadStock()
+                : stockDe(evento.libro());
+        cambios.put(evento.idLibro(), stock);
+    }
+
+    /**
+     * Reparte los cambios acumulados entre los suscriptores de cada libro
+     */
+    @Scheduled(fixedDelayString = "${stock.stream.intervalo-ms:250}")
+    public void enviarCambios() {
+        if (cambios.isEmpty()) return;
+
+        Set<Suscripcion> afectadas = new HashSet<>();
+        for (Integer id : new ArrayList<>(cambios.keySet())) {
+            Integer stock = cambios.remove(id);
+            Set<Suscripcion> interesadas = porLibro.get(id);
+            if (stock == null || interesadas == null) continue;
+            for (Suscripcion suscripcion : interesadas) {
+                suscripcion.porEnviar.put(id, stock);
+                afectadas.add(suscripcion);
+            }
+        }
+        afectadas.forEach(this::programarEnvio);
+    }
+
+    /**
+     * Comentario periódico para que proxies y balanceadores no cierren conexiones inactivas
+     */
+    @Scheduled(fixedDelayString = "${stock.stream.heartbeat-ms:25000}")
+    public void mantenerConexiones() {
+        for (Suscripcion suscripcion : suscripciones) {
+            envios.execute(() -> {
+                try {
+                    suscripcion.emitter.send(SseEmitter.event().comment("ping"));
+                } catch (IOException | IllegalStateException e) {
+                    cerrar(suscripcion, e);
+                }
+            });
+        }
+    }
+
+    public int conexiones() {
+        return suscripciones.size();
+    }
+
+    @PreDestroy
+    public void detener() {
+        suscripciones.forEach(s -> s.emitter.complete());
+        envios.shutdownNow();
+    }
+
+    // Un solo envío en curso por suscriptor; lo que llegue mientras tanto sale en la siguiente vuelta
+    private void programarEnvio(Suscripcion suscripcion) {
+        if (!suscripcion.porEnviar.isEmpty() && suscripcion.enviando.compareAndSet(false, true)) {
+            envios.execute(() -> enviarPendientes(suscripcion));
+        }
+    }
+
+    private void enviarPendientes(Suscripcion suscripcion) {
+        try {
+            while (true) {
+                List<NivelStock> lote = new ArrayList<>();
+                for (Integer id : new ArrayList<>(suscripcion.porEnviar.keySet())) {
+                    Integer stock = suscripcion.porEnviar.remove(id);
+                    if (stock != null) lote.add(new NivelStock(id, stock));
+                }
+                if (lote.isEmpty()) break;
+                suscripcion.emitter.send(SseEmitter.event().name("stock").data(lote, MediaType.APPLICATION_JSON));
+            }
+        } catch (IOException | IllegalStateException e) {
+            cerrar(suscripcion, e);
+            return;
+        } finally {
+            suscripcion.enviando.set(false);
+        }
+        // Cambios que llegaron justo después de vaciar la cola
+        programarEnvio(suscripcion);
+    }
+
+    // El cliente se desconectó o la respuesta ya no acepta escrituras
+    private void cerrar(Suscripcion suscripcion, Exception causa) {
+        quitar(suscripcion);
+        suscripcion.emitter.completeWithError(causa);
+    }
+
+    private void quitar(Suscripcion suscripcion) {
+        if (!suscripciones.remove(suscripcion)) return;
+        for (Integer id : suscripcion.libros) {
+            porLibro.computeIfPresent(id, (k, interesadas) -> {
+                interesadas.remove(suscripcion);
+                return interesadas.isEmpty() ? null : interesadas;
+            });
+        }
+    }
+
+    private static int stockDe(Libro libro) {
+        return libro == null || libro.getCantidad_stock() == null ? 0 : libro.getCantidad_stock();
+    }
+}
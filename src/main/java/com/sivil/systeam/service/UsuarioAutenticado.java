@@ -0,0 +1,27 @@
+package com.sivil.systeam.service;
+
+import com.sivil.systeam.service.dto.UsuarioSesion;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.userdetails.User;
+
+import java.util.Collection;
+
+/**
+ * Principal de Spring Security con los datos del usuario ya cargados al iniciar sesión
+ */
+public class UsuarioAutenticado extends User {
+
+    private static final long serialVersionUID = 1L;
+
+    private final UsuarioSesion usuario;
+
+    public UsuarioAutenticado(UsuarioSesion usuario, String contraseña,
+                              Collection<? extends GrantedAuthority> authorities) {
+        super(usuario.email(), contraseña, authorities);
+        this.usuario = usuario;
+    }
+
+    public UsuarioSesion getUsuario() {
+        return usuario;
+    }
+}
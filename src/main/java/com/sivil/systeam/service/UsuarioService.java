@@ -3,25 +3,43 @@ package com.sivil.systeam.service;
 import com.sivil.systeam.entity.Usuario;
 import com.sivil.systeam.enums.TipoUsuario;
 import com.sivil.systeam.repository.UsuarioRepository;
+import com.sivil.systeam.service.dto.UsuarioSesion;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 @Service
 public class UsuarioService {
     
     @Autowired
     private UsuarioRepository usuarioRepository;
+
+    // Datos más recientes de usuarios modificados con sesión ya iniciada (por ID);
+    // reemplazan a los que quedaron en el principal al iniciar sesión.
+    // Acotado a usuarios.sesion.max-actualizados: al superarlo se olvidan los más antiguos
+    // y esas sesiones vuelven a mostrar los datos de su inicio de sesión
+    private final ConcurrentHashMap<Integer, UsuarioSesion> actualizados = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<Integer> ordenActualizados = new ConcurrentLinkedQueue<>();
+
+    @Value("${usuarios.sesion.max-actualizados:1000}")
+    private int maxActualizados;
     
     public Usuario validarLogin(String email, String contraseña) {
         Optional<Usuario> usuario = usuarioRepository.findByEmailAndContraseña(email, contraseña);
         return usuario.orElse(null);
     }
     
+    /**
+     * Entidad completa del usuario autenticado (consulta la BD).
+     * Para id, email, nombre o tipo usar getSesionActual().
+     */
     public Usuario getUsuarioActual() {
         Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
         if (authentication != null && authentication.isAuthenticated() && !"anonymousUser".equals(authentication.getName())) {
@@ -30,15 +48,35 @@ public class UsuarioService {
         }
         return null;
     }
+
+    /**
+     * Datos del usuario autenticado sin consultar la BD (se cargan al iniciar sesión)
+     * @return null si no hay usuario autenticado
+     */
+    public UsuarioSesion getSesionActual() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication == null || !authentication.isAuthenticated() || "anonymousUser".equals(authentication.getName())) {
+            return null;
+        }
+        UsuarioSesion usuario;
+        if (authentication.getPrincipal() instanceof UsuarioAutenticado autenticado) {
+            usuario = autenticado.getUsuario();
+        } else {
+            // Principal sin datos precargados (otro mecanismo de autenticación)
+            usuario = usuarioRepository.findByEmail(authentication.getName()).map(UsuarioSesion::de).orElse(null);
+        }
+        if (usuario == null) return null;
+        return actualizados.getOrDefault(usuario.idUsuario(), usuario);
+    }
     
     public boolean esAdministrador() {
-        Usuario usuario = getUsuarioActual();
-        return usuario != null && usuario.getTipo_usuario() == TipoUsuario.admin;
+        UsuarioSesion usuario = getSesionActual();
+        return usuario != null && usuario.esAdmin();
     }
     
     public TipoUsuario getTipoUsuarioActual() {
-        Usuario usuario = getUsuarioActual();
-        return usuario != null ? usuario.getTipo_usuario() : null;
+        UsuarioSesion usuario = getSesionActual();
+        return usuario != null ? usuario.tipoUsuario() : null;
     }
     
     public boolean existeEmail(String email) {
@@ -167,7 +205,21 @@ public class UsuarioService {
             }
         }
         
-        return usuarioRepository.save(usuario);
+        Usuario guardado = usuarioRepository.save(usuario);
+        // Las sesiones abiertas de este usuario ven los datos nuevos (los permisos cambian al volver a iniciar sesión)
+        registrarActualizado(UsuarioSesion.de(guardado));
+        return guardado;
+    }
+
+    private void registrarActualizado(UsuarioSesion usuario) {
+        if (actualizados.put(usuario.idUsuario(), usuario) == null) {
+            ordenActualizados.add(usuario.idUsuario());
+        }
+        while (actualizados.size() > maxActualizados) {
+            Integer masAntiguo = ordenActualizados.poll();
+            if (masAntiguo == null) break;
+            actualizados.remove(masAntiguo);
+        }
     }
     
     /**
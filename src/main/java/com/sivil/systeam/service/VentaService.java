@@ -1,17 +1,30 @@
 package com.sivil.systeam.service;
 
 import com.sivil.systeam.entity.DetalleVenta;
-import com.sivil.systeam.entity.Libro;
 import com.sivil.systeam.entity.Venta;
 import com.sivil.systeam.enums.EstadoVenta;
+import com.sivil.systeam.event.VentaModificadaEvent;
 import com.sivil.systeam.repository.DetalleVentaRepository;
 import com.sivil.systeam.repository.LibroRepository;
 import com.sivil.systeam.repository.VentaRepository;
+import com.sivil.systeam.repository.VentaSpecifications;
+import com.sivil.systeam.service.dto.FiltroVentas;
+import com.sivil.systeam.service.dto.PaginaCursor;
+import com.sivil.systeam.service.dto.VentaResumen;
 import jakarta.transaction.Transactional;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
 
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 @Service
@@ -20,14 +33,22 @@ public class VentaService {
     private final VentaRepository ventaRepository;
     private final DetalleVentaRepository detalleVentaRepository;
     private final LibroRepository libroRepository;
+    private final StockService stockService;
+    private final ApplicationEventPublisher eventPublisher;
+
+    private static final String ORDEN_FECHA_VENTA = "fecha_venta-desc";
 
     @Autowired
     public VentaService(VentaRepository ventaRepository,
                         DetalleVentaRepository detalleVentaRepository,
-                        LibroRepository libroRepository) {
+                        LibroRepository libroRepository,
+                        StockService stockService,
+                        ApplicationEventPublisher eventPublisher) {
         this.ventaRepository = ventaRepository;
         this.detalleVentaRepository = detalleVentaRepository;
         this.libroRepository = libroRepository;
+        this.stockService = stockService;
+        this.eventPublisher = eventPublisher;
     }
 
     /** Listar ventas FINALIZADAS (arreglo del bug) */
@@ -40,6 +61,48 @@ public class VentaService {
         return ventaRepository.findAllVisiblesOrderByFechaVentaDesc();
     }
 
+    /**
+     * Listado de ventas (todas, incluyendo inactivas) por cursor sobre fecha_venta DESC.
+     * @param after cursor de la página anterior (null o vacío = primera página)
+     * @throws IllegalArgumentException si el cursor es inválido
+     */
+    public PaginaCursor<VentaResumen> listarVentasDespuesDe(String after, int tamano) {
+        Pageable limite = PageRequest.of(0, tamano + 1);
+        List<VentaResumen> filas;
+        if (after == null || after.isBlank()) {
+            filas = ventaRepository.findPrimerasOrderByFechaVentaDesc(limite);
+        } else {
+            CursorPaginacion.Cursor cursor = CursorPaginacion.decodificar(after, ORDEN_FECHA_VENTA);
+            LocalDateTime fecha = cursor.valorComoFecha();
+            filas = fecha == null
+                    ? ventaRepository.findSiguientesSinFechaOrderByFechaVentaDesc(cursor.id(), limite)
+                    : ventaRepository.findSiguientesOrderByFechaVentaDesc(fecha, cursor.id(), limite);
+        }
+        return PaginaCursor.de(filas, tamano, v ->
+                CursorPaginacion.codificar(ORDEN_FECHA_VENTA, v.fechaVenta(), v.idVenta()));
+    }
+
+    /**
+     * Listado de ventas filtrado, ordenado y paginado en la BD.
+     * Las filas se construyen en la consulta como VentaResumen (con el nombre del vendedor).
+     * @param ordenamiento fecha-desc (por defecto), fecha-asc o total-desc
+     * @throws IllegalArgumentException si el rango de fechas es inválido
+     */
+    public Page<VentaResumen> buscarVentas(FiltroVentas filtro, String ordenamiento, int pagina, int tamano) {
+        if (filtro.desde() != null && filtro.hasta() != null && filtro.desde().isAfter(filtro.hasta())) {
+            throw new IllegalArgumentException("La fecha inicial no puede ser posterior a la fecha final");
+        }
+        Specification<Venta> spec = VentaSpecifications.ordenadoPor(ordenamiento);
+        if (filtro.desde() != null) spec = spec.and(VentaSpecifications.desde(filtro.desde()));
+        if (filtro.hasta() != null) spec = spec.and(VentaSpecifications.hasta(filtro.hasta()));
+        if (filtro.estado() != null) spec = spec.and(VentaSpecifications.conEstado(filtro.estado()));
+        if (filtro.idVendedor() != null) spec = spec.and(VentaSpecifications.deVendedor(filtro.idVendedor()));
+        if (filtro.cliente() != null && !filtro.cliente().isBlank()) {
+            spec = spec.and(VentaSpecifications.clienteContiene(filtro.cliente()));
+        }
+        return ventaRepository.buscarResumenes(spec, PageRequest.of(Math.max(pagina, 0), tamano));
+    }
+
     /** Obtener venta por ID */
     public Optional<Venta> obtenerVentaPorId(Integer id) {
         return ventaRepository.findById(id);
@@ -62,17 +125,13 @@ public class VentaService {
 
         // Restaurar stock por cada detalle
         List<DetalleVenta> detalles = detalleVentaRepository.findByVentaIdWithLibro(venta.getId_venta());
-        for (DetalleVenta d : detalles) {
-            Libro libro = d.getLibro();
-            int stockActual = (libro.getCantidad_stock() == null) ? 0 : libro.getCantidad_stock();
-            libro.setCantidad_stock(stockActual + d.getCantidad());
-            libroRepository.save(libro);
-        }
+        stockService.reponer(cantidadesPorLibro(detalles));
 
         // Marcar venta y guardar motivo
         venta.setEstado(EstadoVenta.inactiva);
         venta.setMotivo_inactivacion(motivo);
         ventaRepository.save(venta);
+        eventPublisher.publishEvent(VentaModificadaEvent.descontada(venta));
     }
 
     /** Reactivar venta inactiva + descontar inventario nuevamente */
@@ -85,29 +144,54 @@ public class VentaService {
             throw new IllegalStateException("Solo se pueden reactivar ventas inactivas.");
         }
 
-        // Verificar stock disponible antes de reactivar
+        // Descontar stock por cada detalle (falla si algún libro ya no tiene suficiente)
         List<DetalleVenta> detalles = detalleVentaRepository.findByVentaIdWithLibro(venta.getId_venta());
-        for (DetalleVenta d : detalles) {
-            Libro libro = d.getLibro();
-            int stockActual = (libro.getCantidad_stock() == null) ? 0 : libro.getCantidad_stock();
-            if (stockActual < d.getCantidad()) {
-                throw new IllegalStateException("Stock insuficiente para reactivar. Libro: " + libro.getTitulo() + 
-                        ". Stock disponible: " + stockActual + ". Cantidad requerida: " + d.getCantidad());
-            }
-        }
-
-        // Descontar stock por cada detalle
-        for (DetalleVenta d : detalles) {
-            Libro libro = d.getLibro();
-            int stockActual = (libro.getCantidad_stock() == null) ? 0 : libro.getCantidad_stock();
-            libro.setCantidad_stock(stockActual - d.getCantidad());
-            libroRepository.save(libro);
-        }
+        stockService.descontar(cantidadesPorLibro(detalles));
 
         // Reactivar venta como finalizada
         venta.setEstado(EstadoVenta.finalizada);
         venta.setMotivo_inactivacion(null); // Limpiar motivo
         ventaRepository.save(venta);
+        eventPublisher.publishEvent(VentaModificadaEvent.contabilizada(venta));
     }
 
+    /**
+     * Guarda la modificación de una venta (cantidades editadas y líneas quitadas) en una
+     * sola transacción. El stock se ajusta con StockService: los aumentos de cantidad se
+     * descuentan con el UPDATE condicional (sin tocar unidades apartadas) y las
+     * reducciones se reponen; si un libro no alcanza no se guarda nada.
+     * @param cambiosStock diferencia de stock por libro (positivo = se devuelve, negativo = se descuenta)
+     * @throws IllegalArgumentException si algún libro no tiene stock suficiente
+     */
+    @Transactional
+    public void guardarModificacion(Venta venta, List<DetalleVenta> detallesModificados,
+                                    List<DetalleVenta> detallesEliminados, Map<Integer, Integer> cambiosStock,
+                                    BigDecimal totalAnterior) {
+        Map<Integer, Integer> descontar = new HashMap<>();
+        Map<Integer, Integer> reponer = new HashMap<>();
+        cambiosStock.forEach((idLibro, diferencia) -> {
+            if (diferencia < 0) descontar.put(idLibro, -diferencia);
+            else if (diferencia > 0) reponer.put(idLibro, diferencia);
+        });
+        if (!descontar.isEmpty()) stockService.descontar(descontar);
+        if (!reponer.isEmpty()) stockService.reponer(reponer);
+
+        detalleVentaRepository.saveAll(detallesModificados);
+        detalleVentaRepository.deleteAll(detallesEliminados);
+        ventaRepository.save(venta);
+        if (venta.getEstado() != EstadoVenta.inactiva && totalAnterior != null
+                && totalAnterior.compareTo(venta.getTotal()) != 0) {
+            eventPublisher.publishEvent(VentaModificadaEvent.descontada(venta, totalAnterior));
+            eventPublisher.publishEvent(VentaModificadaEvent.contabilizada(venta));
+        }
+    }
+
+    // Cantidad total por libro de los detalles de una venta
+    private static Map<Integer, Integer> cantidadesPorLibro(List<DetalleVenta> detalles) {
+        Map<Integer, Integer> cantidades = new HashMap<>();
+        for (DetalleVenta d : detalles) {
+            cantidades.merge(d.getLibro().getId_libro(), d.getCantidad(), Integer::sum);
+        }
+        return cantidades;
+    }
 }
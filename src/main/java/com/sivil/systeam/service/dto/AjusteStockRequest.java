@@ -0,0 +1,17 @@
+package com.sivil.systeam.service.dto;
+
+import java.util.List;
+
+/**
+ * Ajuste de stock por lote (por ejemplo, recepción de un envío)
+ *
+ * @param referencia documento de origen (guía, factura del proveedor); opcional
+ * @param lineas     cambios de stock; delta positivo suma, negativo resta
+ */
+public record AjusteStockRequest(
+        String referencia,
+        String motivo,
+        List<Linea> lineas
+) {
+    public record Linea(String codigo, Integer delta) {}
+}
@@ -0,0 +1,23 @@
+package com.sivil.systeam.service.dto;
+
+import com.sivil.systeam.enums.EstadoCompra;
+import com.sivil.systeam.enums.MetodoPago;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Tarjeta del listado "Mis compras" (solo lo que muestra la vista).
+ * Se construye directamente en la consulta, sin cargar la entidad ni sus detalles.
+ */
+public record CompraResumen(
+        Integer idCompra,
+        String numeroOrden,
+        LocalDateTime fechaCompra,
+        EstadoCompra estadoCompra,
+        MetodoPago metodoPago,
+        String direccionEntrega,
+        BigDecimal subtotal,
+        BigDecimal impuestos,
+        BigDecimal total
+) {}
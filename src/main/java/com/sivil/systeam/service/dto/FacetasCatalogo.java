@@ -0,0 +1,15 @@
+package com.sivil.systeam.service.dto;
+
+import java.util.List;
+
+/**
+ * Valores disponibles para filtrar el catálogo, con la cantidad de libros
+ * disponibles (activos con stock) que tiene cada uno.
+ */
+public record FacetasCatalogo(
+        List<ValorFaceta> autores,
+        List<ValorFaceta> categorias,
+        List<ValorFaceta> editoriales
+) {
+    public record ValorFaceta(String valor, long cantidad) {}
+}
@@ -0,0 +1,22 @@
+package com.sivil.systeam.service.dto;
+
+import com.sivil.systeam.enums.EstadoVenta;
+
+import java.time.LocalDate;
+
+/**
+ * Filtros opcionales del listado de ventas (null = sin filtrar por ese campo)
+ *
+ * @param desde      fecha de venta mínima (inclusive)
+ * @param hasta      fecha de venta máxima (inclusive)
+ * @param estado     estado de la venta
+ * @param idVendedor ID del usuario vendedor
+ * @param cliente    texto contenido en el nombre o la identificación del cliente
+ */
+public record FiltroVentas(LocalDate desde, LocalDate hasta, EstadoVenta estado,
+                           Integer idVendedor, String cliente) {
+
+    public static FiltroVentas ninguno() {
+        return new FiltroVentas(null, null, null, null, null);
+    }
+}
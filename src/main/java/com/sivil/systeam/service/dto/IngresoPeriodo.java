@@ -0,0 +1,17 @@
+package com.sivil.systeam.service.dto;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * Ingresos de un período (día, semana o mes) separados por canal
+ *
+ * @param inicio primer día del período
+ */
+public record IngresoPeriodo(
+        LocalDate inicio,
+        long unidades,
+        BigDecimal ingresosPos,
+        BigDecimal ingresosOnline,
+        BigDecimal ingresosTotal
+) {}
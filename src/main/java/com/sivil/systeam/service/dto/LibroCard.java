@@ -0,0 +1,41 @@
+package com.sivil.systeam.service.dto;
+
+import com.sivil.systeam.enums.Estado;
+
+import java.math.BigDecimal;
+
+/**
+ * Proyección de libro para los listados (tarjetas del catálogo, tabla de inventario).
+ * Solo trae las columnas que se muestran: sin descripción, fechas ni colecciones.
+ * Los getters siguen los nombres de Libro, así las plantillas usan los mismos campos.
+ */
+public interface LibroCard {
+
+    Integer getId_libro();
+
+    String getCodigo_libro();
+
+    String getTitulo();
+
+    String getAutor();
+
+    Integer getAño_publicacion();
+
+    BigDecimal getPrecio();
+
+    Integer getCantidad_stock();
+
+    String getCategoria();
+
+    String getEditorial();
+
+    String getImagen_url();
+
+    Estado getEstado();
+
+    // Mismo criterio que Libro.tieneStockBajo()
+    default boolean tieneStockBajo() {
+        Integer stock = getCantidad_stock();
+        return stock != null && stock > 0 && stock < 5;
+    }
+}
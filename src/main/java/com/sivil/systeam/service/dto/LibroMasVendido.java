@@ -0,0 +1,15 @@
+package com.sivil.systeam.service.dto;
+
+import java.math.BigDecimal;
+
+/**
+ * Libro en el ranking de más vendidos (ventas POS + compras online)
+ */
+public record LibroMasVendido(
+        Integer idLibro,
+        String codigoLibro,
+        String titulo,
+        String autor,
+        long unidades,
+        BigDecimal ingresos
+) {}
@@ -0,0 +1,24 @@
+package com.sivil.systeam.service.dto;
+
+import com.sivil.systeam.enums.MetodoPago;
+
+import java.math.BigDecimal;
+import java.util.Map;
+
+/**
+ * KPIs de ventas (solo ventas no inactivas)
+ *
+ * @param porVendedor   acumulado por ID de vendedor
+ * @param porMetodoPago acumulado por método de pago
+ */
+public record MetricasVentas(
+        long ventasActivas,
+        BigDecimal montoTotal,
+        BigDecimal promedioVenta,
+        long ventasHoy,
+        BigDecimal montoHoy,
+        Map<Integer, Acumulado> porVendedor,
+        Map<MetodoPago, Acumulado> porMetodoPago
+) {
+    public record Acumulado(long cantidad, BigDecimal total) {}
+}
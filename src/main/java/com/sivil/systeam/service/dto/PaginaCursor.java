@@ -0,0 +1,31 @@
+package com.sivil.systeam.service.dto;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Página de resultados para paginación por cursor (keyset).
+ * siguienteCursor es null cuando no hay más registros.
+ */
+public record PaginaCursor<T>(
+        List<T> contenido,
+        String siguienteCursor
+) {
+
+    public boolean haySiguiente() {
+        return siguienteCursor != null;
+    }
+
+    /**
+     * Construye la página a partir de una consulta que pidió tamano + 1 filas:
+     * si llegó la fila extra hay más resultados y el cursor apunta al último
+     * registro entregado.
+     */
+    public static <T> PaginaCursor<T> de(List<T> filas, int tamano, Function<T, String> cursorDe) {
+        if (filas.size() <= tamano) {
+            return new PaginaCursor<>(filas, null);
+        }
+        List<T> contenido = filas.subList(0, tamano);
+        return new PaginaCursor<>(contenido, cursorDe.apply(contenido.get(tamano - 1)));
+    }
+}
@@ -0,0 +1,15 @@
+package com.sivil.systeam.service.dto;
+
+import java.math.BigDecimal;
+
+/**
+ * Desempeño de un vendedor en un rango de fechas
+ */
+public record RendimientoVendedor(
+        Integer idVendedor,
+        String nombreVendedor,
+        long ventas,
+        long unidades,
+        BigDecimal ingresos,
+        BigDecimal promedioVenta
+) {}
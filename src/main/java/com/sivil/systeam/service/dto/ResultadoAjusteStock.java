@@ -0,0 +1,31 @@
+package com.sivil.systeam.service.dto;
+
+import java.util.List;
+
+/**
+ * Resultado de un ajuste de stock por lote
+ *
+ * @param idAjuste ID del documento de ajuste registrado (auditoría)
+ */
+public record ResultadoAjusteStock(
+        Integer idAjuste,
+        int lineasAplicadas,
+        int lineasRechazadas,
+        List<Linea> lineas
+) {
+    /**
+     * @param linea         posición en la petición (desde 1)
+     * @param stockAnterior stock del libro antes del ajuste (null si la línea fue rechazada)
+     * @param stockFinal    stock del libro después del ajuste (null si la línea fue rechazada)
+     * @param mensaje       motivo del rechazo (null si se aplicó)
+     */
+    public record Linea(
+            int linea,
+            String codigo,
+            Integer delta,
+            boolean aplicada,
+            Integer stockAnterior,
+            Integer stockFinal,
+            String mensaje
+    ) {}
+}
@@ -0,0 +1,24 @@
+package com.sivil.systeam.service.dto;
+
+import java.util.List;
+
+/**
+ * Resultado de una importación masiva de libros
+ *
+ * @param filasLeidas  filas de datos procesadas (sin contar el encabezado)
+ * @param totalErrores cantidad total de filas rechazadas
+ * @param errores      detalle de las primeras filas rechazadas
+ */
+public record ResultadoImportacion(
+        long filasLeidas,
+        long insertados,
+        long actualizados,
+        long totalErrores,
+        List<ErrorFila> errores
+) {
+    /**
+     * @param fila línea del archivo donde empieza la fila (el encabezado CSV es la línea 1;
+     *             en CSV un campo entre comillas con saltos de línea ocupa varias líneas)
+     */
+    public record ErrorFila(long fila, String codigo, String mensaje) {}
+}
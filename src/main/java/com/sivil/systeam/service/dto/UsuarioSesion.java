@@ -0,0 +1,45 @@
+package com.sivil.systeam.service.dto;
+
+import com.sivil.systeam.entity.Usuario;
+import com.sivil.systeam.enums.TipoUsuario;
+
+import java.io.Serializable;
+
+/**
+ * Datos del usuario autenticado que se usan en cada petición (vistas, permisos,
+ * vendedor/comprador de ventas y compras). Se arma una vez al iniciar sesión y
+ * viaja en el principal de Spring Security, sin consultar la base de datos.
+ */
+public record UsuarioSesion(
+        Integer idUsuario,
+        String email,
+        String nombreUsuario,
+        String nombreCompleto,
+        TipoUsuario tipoUsuario
+) implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public static UsuarioSesion de(Usuario usuario) {
+        return new UsuarioSesion(usuario.getId_usuario(), usuario.getEmail(), usuario.getNombre_usuario(),
+                usuario.getNombre_completo(), usuario.getTipo_usuario());
+    }
+
+    public boolean esAdmin() {
+        return tipoUsuario == TipoUsuario.admin;
+    }
+
+    /**
+     * Usuario con solo el ID y los datos de la sesión, para asignarlo como vendedor o
+     * comprador (las relaciones no tienen cascada: JPA solo usa el ID)
+     */
+    public Usuario comoReferencia() {
+        Usuario usuario = new Usuario();
+        usuario.setId_usuario(idUsuario);
+        usuario.setEmail(email);
+        usuario.setNombre_usuario(nombreUsuario);
+        usuario.setNombre_completo(nombreCompleto);
+        usuario.setTipo_usuario(tipoUsuario);
+        return usuario;
+    }
+}
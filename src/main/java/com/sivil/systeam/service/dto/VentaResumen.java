@@ -0,0 +1,26 @@
+package com.sivil.systeam.service.dto;
+
+import com.sivil.systeam.enums.EstadoVenta;
+import com.sivil.systeam.enums.MetodoPago;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Fila del listado de ventas (solo lo que muestra la tabla).
+ * Se construye directamente en las consultas de VentaRepository (constructor en JPQL/Criteria),
+ * por lo que el orden de los parámetros debe coincidir con esas consultas.
+ */
+public record VentaResumen(
+        Integer idVenta,
+        String numeroFactura,
+        LocalDateTime fechaVenta,
+        String nombreCliente,
+        String nombreVendedor,
+        BigDecimal subtotal,
+        BigDecimal impuestos,
+        BigDecimal total,
+        MetodoPago tipoPago,
+        EstadoVenta estado,
+        String motivoInactivacion
+) {}
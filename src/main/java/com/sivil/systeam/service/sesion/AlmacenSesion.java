@@ -0,0 +1,34 @@
+package com.sivil.systeam.service.sesion;
+
+import java.io.Serializable;
+import java.time.Instant;
+import java.util.Optional;
+
+/**
+ * Almacén del estado de sesión que debe sobrevivir a reinicios y compartirse entre
+ * instancias (carrito, venta y compra pendientes de pago).
+ *
+ * Implementaciones:
+ * - AlmacenSesionMemoria: mapa en memoria (una sola instancia, pruebas)
+ * - AlmacenSesionJdbc: tabla sesion_estado en PostgreSQL
+ *
+ * Se elige con la propiedad sesion.almacen (memoria | jdbc).
+ */
+public interface AlmacenSesion {
+
+    /**
+     * @param dueno    identificador del dueño (usuario autenticado o sesión)
+     * @param atributo nombre del atributo ("carrito", "ventaPendiente", ...)
+     */
+    Optional<Object> obtener(String dueno, String atributo);
+
+    void guardar(String dueno, String atributo, Serializable valor);
+
+    void eliminar(String dueno, String atributo);
+
+    /**
+     * Elimina los atributos que no se modifican desde antes de la fecha indicada
+     * @return cantidad de atributos eliminados
+     */
+    int eliminarAnterioresA(Instant limite);
+}
@@ -0,0 +1,76 @@
+package com.sivil.systeam.service.sesion;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.io.*;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Estado de sesión en PostgreSQL (tabla sesion_estado).
+ * Los valores se guardan serializados y comprimidos en una columna BYTEA,
+ * con un upsert por (dueno, atributo). Ver "Estado de sesión compartido"
+ * en docs/sivil_database_design.md.
+ */
+@Component
+@ConditionalOnProperty(name = "sesion.almacen", havingValue = "jdbc")
+public class AlmacenSesionJdbc implements AlmacenSesion {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Override
+    public Optional<Object> obtener(String dueno, String atributo) {
+        List<byte[]> filas = jdbcTemplate.query(
+                "SELECT datos FROM sesion_estado WHERE dueno = ? AND atributo = ?",
+                (rs, i) -> rs.getBytes(1), dueno, atributo);
+        return filas.isEmpty() ? Optional.empty() : Optional.ofNullable(deserializar(filas.get(0)));
+    }
+
+    @Override
+    public void guardar(String dueno, String atributo, Serializable valor) {
+        jdbcTemplate.update("""
+                INSERT INTO sesion_estado (dueno, atributo, datos, fecha_actualizacion)
+                VALUES (?, ?, ?, CURRENT_TIMESTAMP)
+                ON CONFLICT (dueno, atributo)
+                DO UPDATE SET datos = EXCLUDED.datos, fecha_actualizacion = CURRENT_TIMESTAMP
+                """, dueno, atributo, serializar(valor));
+    }
+
+    @Override
+    public void eliminar(String dueno, String atributo) {
+        jdbcTemplate.update("DELETE FROM sesion_estado WHERE dueno = ? AND atributo = ?", dueno, atributo);
+    }
+
+    @Override
+    public int eliminarAnterioresA(Instant limite) {
+        return jdbcTemplate.update("DELETE FROM sesion_estado WHERE fecha_actualizacion < ?",
+                Timestamp.from(limite));
+    }
+
+    private static byte[] serializar(Serializable valor) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(new GZIPOutputStream(bytes))) {
+            out.writeObject(valor);
+        } catch (IOException e) {
+            throw new IllegalStateException("No se pudo serializar el estado de sesión", e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Object deserializar(byte[] datos) {
+        try (ObjectInputStream in = new ObjectInputStream(new GZIPInputStream(new ByteArrayInputStream(datos)))) {
+            return in.readObject();
+        } catch (IOException | ClassNotFoundException e) {
+            // Estado guardado por una versión incompatible: se descarta
+            return null;
+        }
+    }
+}
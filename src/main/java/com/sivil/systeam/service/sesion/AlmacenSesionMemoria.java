@@ -0,0 +1,49 @@
+package com.sivil.systeam.service.sesion;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.Serializable;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Estado de sesión en memoria. Se conserva la referencia al objeto (igual que HttpSession),
+ * por lo que no sobrevive a reinicios ni se comparte entre instancias.
+ */
+@Component
+@ConditionalOnProperty(name = "sesion.almacen", havingValue = "memoria", matchIfMissing = true)
+public class AlmacenSesionMemoria implements AlmacenSesion {
+
+    private record Entrada(Serializable valor, Instant actualizado) {}
+
+    private final ConcurrentHashMap<String, Entrada> entradas = new ConcurrentHashMap<>();
+
+    @Override
+    public Optional<Object> obtener(String dueno, String atributo) {
+        Entrada entrada = entradas.get(clave(dueno, atributo));
+        return entrada == null ? Optional.empty() : Optional.of(entrada.valor());
+    }
+
+    @Override
+    public void guardar(String dueno, String atributo, Serializable valor) {
+        entradas.put(clave(dueno, atributo), new Entrada(valor, Instant.now()));
+    }
+
+    @Override
+    public void eliminar(String dueno, String atributo) {
+        entradas.remove(clave(dueno, atributo));
+    }
+
+    @Override
+    public int eliminarAnterioresA(Instant limite) {
+        int antes = entradas.size();
+        entradas.values().removeIf(e -> e.actualizado().isBefore(limite));
+        return antes - entradas.size();
+    }
+
+    private static String clave(String dueno, String atributo) {
+        return dueno + "|" + atributo;
+    }
+}
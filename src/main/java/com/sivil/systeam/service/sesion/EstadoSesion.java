@@ -0,0 +1,68 @@
+package com.sivil.systeam.service.sesion;
+
+import jakarta.servlet.http.HttpSession;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+
+import java.io.Serializable;
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Acceso al estado de sesión (carrito, ventaPendiente, compraPendiente) a través
+ * de AlmacenSesion en lugar de HttpSession.
+ * El dueño es el usuario autenticado, de modo que su estado se encuentra desde
+ * cualquier instancia; sin autenticación se usa el ID de la sesión.
+ */
+@Component
+public class EstadoSesion {
+
+    @Autowired
+    private AlmacenSesion almacen;
+
+    @Value("${sesion.inactividad-horas:24}")
+    private long inactividadHoras;
+
+    public Object obtener(HttpSession session, String atributo) {
+        return almacen.obtener(dueno(session), atributo).orElse(null);
+    }
+
+    public void guardar(HttpSession session, String atributo, Object valor) {
+        if (valor == null) {
+            eliminar(session, atributo);
+            return;
+        }
+        if (!(valor instanceof Serializable serializable)) {
+            throw new IllegalArgumentException("El atributo de sesión '" + atributo + "' no es serializable");
+        }
+        almacen.guardar(dueno(session), atributo, serializable);
+    }
+
+    public void eliminar(HttpSession session, String atributo) {
+        almacen.eliminar(dueno(session), atributo);
+    }
+
+    /**
+     * Descarta el estado sin cambios durante más de sesion.inactividad-horas
+     */
+    @Scheduled(fixedDelayString = "${sesion.limpieza-ms:600000}")
+    public void eliminarInactivos() {
+        almacen.eliminarAnterioresA(Instant.now().minus(Duration.ofHours(inactividadHoras)));
+    }
+
+    /**
+     * Dueño del estado: "usuario:{email}" si hay usuario autenticado, si no "sesion:{id}"
+     */
+    public String dueno(HttpSession session) {
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        if (auth != null && auth.isAuthenticated() && !(auth instanceof AnonymousAuthenticationToken)) {
+            return "usuario:" + auth.getName();
+        }
+        return "sesion:" + session.getId();
+    }
+}
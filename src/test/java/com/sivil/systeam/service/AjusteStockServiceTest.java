@@ -0,0 +1,114 @@
+package com.sivil.systeam.service;
+
+import com.sivil.systeam.event.LibroModificadoEvent;
+import com.sivil.systeam.service.dto.AjusteStockRequest;
+import com.sivil.systeam.service.dto.AjusteStockRequest.Linea;
+import com.sivil.systeam.service.dto.ResultadoAjusteStock;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.stubbing.Answer;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class AjusteStockServiceTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @Mock
+    private ReservaStockService reservaStockService;
+
+    @InjectMocks
+    private AjusteStockService ajusteStockService;
+
+    @Test
+    void cadaLineaInformaSiSeAplicoYPorQue() throws Exception {
+        // Libro 3 (C): stock 5 con 2 unidades apartadas
+        when(reservaStockService.apartados()).thenReturn(Map.of(3, 2));
+        // El UPDATE solo aplicó A (10 + 5 + 2 = 17)
+        ResultSet aplicado = fila(Map.of("id_libro", 1, "codigo_libro", "A", "cantidad_stock", 17));
+        doAnswer(entregar(aplicado)).when(jdbcTemplate)
+                .query(contains("UPDATE libros"), any(RowCallbackHandler.class), any(), any(), any(), any());
+        // Explicación de los códigos no aplicados; D no existe
+        ResultSet sinStock = fila(Map.of("id_libro", 3, "codigo_libro", "C", "estado", "activo", "stock", 5));
+        ResultSet inactivo = fila(Map.of("id_libro", 5, "codigo_libro", "E", "estado", "inactivo", "stock", 4));
+        doAnswer(entregar(sinStock, inactivo)).when(jdbcTemplate)
+                .query(contains("codigo_libro = ANY"), any(RowCallbackHandler.class), any(Object.class));
+        when(jdbcTemplate.queryForObject(contains("INSERT INTO ajustes_stock"), eq(Integer.class),
+                any(), any(), any(), any(), any())).thenReturn(77);
+
+        ResultadoAjusteStock resultado = ajusteStockService.ajustar(new AjusteStockRequest("GUIA-1", "Recepción",
+                Arrays.asList(
+                        new Linea("A", 5),
+                        new Linea(" ", 3),
+                        new Linea("B", 0),
+                        new Linea("A ", 2),
+                        new Linea("C", -4),
+                        new Linea("D", 1),
+                        new Linea("E", 1))), "admin");
+
+        assertEquals(77, resultado.idAjuste());
+        assertEquals(2, resultado.lineasAplicadas());
+        assertEquals(5, resultado.lineasRechazadas());
+        List<ResultadoAjusteStock.Linea> lineas = resultado.lineas();
+        assertEquals(new ResultadoAjusteStock.Linea(1, "A", 5, true, 10, 17, null), lineas.get(0));
+        assertEquals(new ResultadoAjusteStock.Linea(2, null, 3, false, null, null,
+                "El código del libro es obligatorio"), lineas.get(1));
+        assertEquals(new ResultadoAjusteStock.Linea(3, "B", 0, false, null, null,
+                "La cantidad debe ser distinta de 0"), lineas.get(2));
+        assertEquals(new ResultadoAjusteStock.Linea(4, "A", 2, true, 10, 17, null), lineas.get(3));
+        assertEquals("Stock insuficiente. Disponible: 3", lineas.get(4).mensaje());
+        assertEquals("No se encontró el libro con código: D", lineas.get(5).mensaje());
+        assertEquals("El libro no está activo", lineas.get(6).mensaje());
+
+        verify(eventPublisher).publishEvent(LibroModificadoEvent.stockActualizado(1, 17));
+        verifyNoMoreInteractions(eventPublisher);
+    }
+
+    @Test
+    void ajusteSinLineasSeRechaza() {
+        assertThrows(IllegalArgumentException.class,
+                () -> ajusteStockService.ajustar(new AjusteStockRequest(null, null, List.of()), "admin"));
+
+        verifyNoInteractions(jdbcTemplate, eventPublisher);
+    }
+
+    // Entrega las filas indicadas al RowCallbackHandler de la consulta
+    private static Answer<Void> entregar(ResultSet... filas) {
+        return inv -> {
+            RowCallbackHandler handler = inv.getArgument(1);
+            for (ResultSet fila : filas) handler.processRow(fila);
+            return null;
+        };
+    }
+
+    private static ResultSet fila(Map<String, Object> columnas) throws SQLException {
+        ResultSet rs = mock(ResultSet.class);
+        for (Map.Entry<String, Object> columna : columnas.entrySet()) {
+            if (columna.getValue() instanceof Integer numero) {
+                lenient().when(rs.getInt(columna.getKey())).thenReturn(numero);
+            } else {
+                lenient().when(rs.getString(columna.getKey())).thenReturn((String) columna.getValue());
+            }
+        }
+        return rs;
+    }
+}
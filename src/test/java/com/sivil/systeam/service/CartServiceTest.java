@@ -0,0 +1,63 @@
+package com.sivil.systeam.service;
+
+import com.sivil.systeam.service.dto.CartItemDTO;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CartServiceTest {
+
+    private CartService cartService;
+
+    @BeforeEach
+    void setUp() {
+        cartService = new CartService();
+        ReflectionTestUtils.setField(cartService, "inactividadMinutos", 60L);
+        ReflectionTestUtils.setField(cartService, "maxCarritos", 3);
+        ReflectionTestUtils.setField(cartService, "maxItems", 100);
+    }
+
+    @Test
+    void alSuperarElMaximoSeDescartaElCarritoMasAntiguoSinActividad() throws InterruptedException {
+        agregar("a");
+        agregar("b");
+        agregar("c");
+        Thread.sleep(5);
+        cartService.getItems("a"); // actividad: "a" tiene segunda oportunidad
+
+        agregar("d");
+
+        assertFalse(cartService.getItems("a").isEmpty());
+        assertTrue(cartService.getItems("b").isEmpty());
+        assertFalse(cartService.getItems("c").isEmpty());
+        assertFalse(cartService.getItems("d").isEmpty());
+    }
+
+    @Test
+    void agregarAUnCarritoExistenteSumaCantidadesYSubtotal() {
+        agregar("a");
+        agregar("a");
+
+        assertEquals(1, cartService.getItems("a").size());
+        assertEquals(2, cartService.getItems("a").get(0).cantidad());
+        assertEquals(new BigDecimal("20.00"), cartService.getTotal("a"));
+    }
+
+    @Test
+    void losCarritosInactivosSeEliminan() {
+        ReflectionTestUtils.setField(cartService, "inactividadMinutos", -1L);
+        agregar("a");
+
+        cartService.eliminarCarritosInactivos();
+
+        assertTrue(cartService.getItems("a").isEmpty());
+    }
+
+    private void agregar(String dueno) {
+        cartService.addItem(dueno, new CartItemDTO(1, "Rayuela", new BigDecimal("10.00"), 1));
+    }
+}
@@ -0,0 +1,97 @@
+package com.sivil.systeam.service;
+
+import com.sivil.systeam.entity.Libro;
+import com.sivil.systeam.enums.Estado;
+import com.sivil.systeam.event.LibroModificadoEvent;
+import com.sivil.systeam.repository.LibroRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class CatalogSearchIndexTest {
+
+    @Mock
+    private LibroRepository libroRepository;
+
+    @InjectMocks
+    private CatalogSearchIndex indice;
+
+    @BeforeEach
+    void setUp() {
+        when(libroRepository.findAll()).thenReturn(List.of(
+                libro(1, "Cien años de soledad", "Gabriel García Márquez", Estado.activo),
+                libro(2, "La ciudad y los perros", "Mario Vargas Llosa", Estado.activo)));
+        indice.reconstruir();
+    }
+
+    @Test
+    void buscaSinDistinguirMayusculasNiTildes() {
+        assertTrue(indice.estaListo());
+        assertEquals(Set.of(1), indice.buscar("GARCIA anos", true));
+        assertEquals(Set.of(2), indice.buscar("perros", true));
+        assertEquals(Set.of(), indice.buscar("quijote", true));
+    }
+
+    @Test
+    void libroGuardadoSeAgregaAlIndice() {
+        indice.alModificarLibro(LibroModificadoEvent.guardado(
+                libro(3, "Don Quijote de la Mancha", "Miguel de Cervantes", Estado.activo)));
+
+        assertEquals(Set.of(3), indice.buscar("quijote", true));
+        assertEquals(3, indice.tamano());
+    }
+
+    @Test
+    void libroEditadoDejaDeCoincidirConElTextoAnterior() {
+        indice.alModificarLibro(LibroModificadoEvent.guardado(
+                libro(2, "Conversación en La Catedral", "Mario Vargas Llosa", Estado.activo)));
+
+        assertEquals(Set.of(), indice.buscar("perros", true));
+        assertEquals(Set.of(2), indice.buscar("catedral", true));
+    }
+
+    @Test
+    void libroEliminadoSeQuitaDelIndice() {
+        indice.alModificarLibro(LibroModificadoEvent.eliminado(1));
+
+        assertEquals(Set.of(), indice.buscar("soledad", false));
+        assertEquals(1, indice.tamano());
+    }
+
+    @Test
+    void libroInactivoSoloApareceSiSeIncluyenInactivos() {
+        indice.alModificarLibro(LibroModificadoEvent.guardado(
+                libro(1, "Cien años de soledad", "Gabriel García Márquez", Estado.inactivo)));
+
+        assertEquals(Set.of(), indice.buscar("soledad", true));
+        assertEquals(Set.of(1), indice.buscar("soledad", false));
+    }
+
+    @Test
+    void cambioDeStockNoAlteraElIndice() {
+        indice.alModificarLibro(LibroModificadoEvent.stockActualizado(1, 0));
+
+        assertEquals(Set.of(1), indice.buscar("soledad", true));
+        assertEquals(2, indice.tamano());
+    }
+
+    private static Libro libro(int id, String titulo, String autor, Estado estado) {
+        Libro libro = new Libro();
+        libro.setId_libro(id);
+        libro.setTitulo(titulo);
+        libro.setAutor(autor);
+        libro.setEditorial("Editorial");
+        libro.setEstado(estado);
+        return libro;
+    }
+}
@@ -0,0 +1,82 @@
+package com.sivil.systeam.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CursorPaginacionTest {
+
+    @Test
+    void codificarYDecodificarConservaValorEId() {
+        LocalDateTime fecha = LocalDateTime.of(2025, 3, 14, 10, 30, 15, 123_000_000);
+
+        String token = CursorPaginacion.codificar("fecha_venta", fecha, 42);
+        CursorPaginacion.Cursor cursor = CursorPaginacion.decodificar(token, "fecha_venta");
+
+        assertEquals(42, cursor.id());
+        assertEquals(fecha, cursor.valorComoFecha());
+    }
+
+    @Test
+    void valorConSaltosDeLineaSeConservaCompleto() {
+        String token = CursorPaginacion.codificar("titulo", "Primera\nSegunda", 7);
+
+        CursorPaginacion.Cursor cursor = CursorPaginacion.decodificar(token, "titulo");
+
+        assertEquals("Primera\nSegunda", cursor.valor());
+        assertEquals(7, cursor.id());
+    }
+
+    @Test
+    void fechaNulaSeDecodificaSinError() {
+        String token = CursorPaginacion.codificar("fecha_compra", null, 9);
+
+        CursorPaginacion.Cursor cursor = CursorPaginacion.decodificar(token, "fecha_compra");
+
+        assertNull(cursor.valor());
+        assertNull(cursor.valorComoFecha());
+        assertEquals(9, cursor.id());
+    }
+
+    @Test
+    void cursorDeOtroOrdenamientoSeRechaza() {
+        String token = CursorPaginacion.codificar("precio-asc", "10.00", 3);
+
+        assertThrows(IllegalArgumentException.class, () -> CursorPaginacion.decodificar(token, "precio-desc"));
+    }
+
+    @Test
+    void cursorQueNoEsBase64SeRechaza() {
+        assertThrows(IllegalArgumentException.class, () -> CursorPaginacion.decodificar("no es base64!", "fecha_venta"));
+    }
+
+    @Test
+    void cursorConIdAlteradoSeRechaza() {
+        String token = codificarTexto("fecha_venta\nabc\n2025-01-01T00:00");
+
+        assertThrows(IllegalArgumentException.class, () -> CursorPaginacion.decodificar(token, "fecha_venta"));
+    }
+
+    @Test
+    void cursorIncompletoSeRechaza() {
+        String token = codificarTexto("fecha_venta\n5");
+
+        assertThrows(IllegalArgumentException.class, () -> CursorPaginacion.decodificar(token, "fecha_venta"));
+    }
+
+    @Test
+    void fechaAlteradaSeRechazaAlLeerla() {
+        CursorPaginacion.Cursor cursor = CursorPaginacion.decodificar(
+                codificarTexto("fecha_venta\n5\nayer"), "fecha_venta");
+
+        assertThrows(IllegalArgumentException.class, cursor::valorComoFecha);
+    }
+
+    private static String codificarTexto(String texto) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(texto.getBytes(StandardCharsets.UTF_8));
+    }
+}
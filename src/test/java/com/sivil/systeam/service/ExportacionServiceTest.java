@@ -0,0 +1,31 @@
+package com.sivil.systeam.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ExportacionServiceTest {
+
+    @Test
+    void textosQueEmpiezanComoFormulaSeNeutralizan() {
+        assertEquals("'=SUM(A1:A3)", ExportacionService.celda("=SUM(A1:A3)"));
+        assertEquals("'+1+2", ExportacionService.celda("+1+2"));
+        assertEquals("'@cmd", ExportacionService.celda("@cmd"));
+        assertEquals("'-2+3", ExportacionService.celda("-2+3"));
+        assertEquals("'-A1", ExportacionService.celda("-A1"));
+    }
+
+    @Test
+    void numerosNegativosSeConservan() {
+        assertEquals("-12", ExportacionService.celda("-12"));
+        assertEquals("-3.50", ExportacionService.celda("-3.50"));
+    }
+
+    @Test
+    void valoresConComasOComillasVanEntreComillas() {
+        assertEquals("\"Pérez, Juan\"", ExportacionService.celda("Pérez, Juan"));
+        assertEquals("\"El \"\"libro\"\"\"", ExportacionService.celda("El \"libro\""));
+        assertEquals("\"'=1,2\"", ExportacionService.celda("=1,2"));
+        assertEquals("", ExportacionService.celda(null));
+    }
+}
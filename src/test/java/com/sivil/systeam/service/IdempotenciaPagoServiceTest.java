@@ -0,0 +1,93 @@
+package com.sivil.systeam.service;
+
+import com.sivil.systeam.entity.Pago;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(MockitoExtension.class)
+class IdempotenciaPagoServiceTest {
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @InjectMocks
+    private IdempotenciaPagoService idempotenciaPagoService;
+
+    private final AtomicInteger ejecuciones = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(idempotenciaPagoService, "maxClaves", 100);
+    }
+
+    @Test
+    void unReintentoConLaMismaClaveDevuelveElPagoOriginal() {
+        String clave = UUID.randomUUID().toString();
+
+        Pago primero = idempotenciaPagoService.ejecutar("usuario:ana@sivil.com", clave, nuevoPago());
+        Pago reintento = idempotenciaPagoService.ejecutar("usuario:ana@sivil.com", clave.toUpperCase(), nuevoPago());
+
+        assertSame(primero, reintento);
+        assertEquals(1, ejecuciones.get());
+    }
+
+    @Test
+    void laClaveDeOtroUsuarioNoDevuelveSuPago() {
+        String clave = UUID.randomUUID().toString();
+
+        Pago deAna = idempotenciaPagoService.ejecutar("usuario:ana@sivil.com", clave, nuevoPago());
+        Pago deLuis = idempotenciaPagoService.ejecutar("usuario:luis@sivil.com", clave, nuevoPago());
+
+        assertNotSame(deAna, deLuis);
+        assertEquals(2, ejecuciones.get());
+    }
+
+    @Test
+    void rechazaClavesQueNoSonUuid() {
+        assertThrows(IllegalArgumentException.class,
+                () -> idempotenciaPagoService.ejecutar("sesion:abc", "123", nuevoPago()));
+        assertThrows(IllegalArgumentException.class,
+                () -> idempotenciaPagoService.ejecutar("sesion:abc", UUID.randomUUID() + "' OR 1=1", nuevoPago()));
+        assertEquals(0, ejecuciones.get());
+    }
+
+    @Test
+    void siElPagoFallaLaClaveSeLiberaParaReintentar() {
+        String clave = UUID.randomUUID().toString();
+
+        assertThrows(IllegalArgumentException.class, () -> idempotenciaPagoService.ejecutar("sesion:abc", clave, () -> {
+            throw new IllegalArgumentException("Tarjeta rechazada");
+        }));
+        Pago pago = idempotenciaPagoService.ejecutar("sesion:abc", clave, nuevoPago());
+
+        assertNotNull(pago);
+        assertEquals(1, ejecuciones.get());
+    }
+
+    @Test
+    void sinClaveNoHayProteccion() {
+        idempotenciaPagoService.ejecutar("sesion:abc", null, nuevoPago());
+        idempotenciaPagoService.ejecutar("sesion:abc", " ", nuevoPago());
+
+        assertEquals(2, ejecuciones.get());
+    }
+
+    private Supplier<Pago> nuevoPago() {
+        return () -> {
+            ejecuciones.incrementAndGet();
+            return new Pago();
+        };
+    }
+}
@@ -0,0 +1,116 @@
+package com.sivil.systeam.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sivil.systeam.service.dto.ResultadoImportacion;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ImportacionLibrosServiceTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @Mock
+    private ReservaStockService reservaStockService;
+
+    @InjectMocks
+    private ImportacionLibrosService importacionLibrosService;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        ReflectionTestUtils.setField(importacionLibrosService, "objectMapper", new ObjectMapper());
+        ReflectionTestUtils.setField(importacionLibrosService, "tamanoLote", 1000);
+        ReflectionTestUtils.setField(importacionLibrosService, "maxErrores", 1000);
+
+        // Libro existente EXIST1 (id 7) con 5 unidades vendidas
+        ResultSet existente = mock(ResultSet.class);
+        when(existente.getString("codigo_libro")).thenReturn("EXIST1");
+        when(existente.getInt("id_libro")).thenReturn(7);
+        when(existente.getLong("vendidos")).thenReturn(5L);
+        doAnswer(invocacion -> {
+            invocacion.getArgument(1, RowCallbackHandler.class).processRow(existente);
+            return null;
+        }).when(jdbcTemplate).query(startsWith("SELECT l.id_libro"), any(RowCallbackHandler.class));
+    }
+
+    @Test
+    void csvRechazaFilasInvalidasConSuLineaEnElArchivo() throws IOException {
+        String csv = """
+                codigo_libro,titulo,autor,anio_publicacion,precio,stock,descripcion
+                NUEVO1,Rayuela,Cortázar,1963,10.50,3,
+                NUEVO2,"Título, con coma",Autor,2020,10,0,"Primera línea
+                segunda línea"
+                EXIST1,Existente,Autor,2020,10,4,
+                NUEVO1,Repetido,Autor,2020,10,3,
+                NUEVO3,Faltan columnas
+                """;
+
+        ResultadoImportacion resultado = importar(csv, ImportacionLibrosService.Formato.csv);
+
+        assertEquals(5, resultado.filasLeidas());
+        assertEquals(4, resultado.totalErrores());
+        List<ResultadoImportacion.ErrorFila> errores = resultado.errores();
+        assertEquals(List.of(3L, 5L, 6L, 7L), errores.stream().map(ResultadoImportacion.ErrorFila::fila).toList());
+        assertEquals("El stock inicial debe ser al menos 1", errores.get(0).mensaje());
+        assertEquals("El stock no puede ser menor a la cantidad ya vendida (5)", errores.get(1).mensaje());
+        assertEquals("Código repetido en el archivo (ya aparece en la fila 2)", errores.get(2).mensaje());
+        assertEquals("Se esperaban 7 columnas y la fila tiene 2", errores.get(3).mensaje());
+
+        // Solo la fila válida llega al INSERT ... ON CONFLICT
+        verify(jdbcTemplate, times(1)).query(startsWith("INSERT INTO libros"), any(RowCallbackHandler.class), any(Object[].class));
+    }
+
+    @Test
+    void jsonlRespetaElMinimoDeVendidosYApartados() throws IOException {
+        when(reservaStockService.reservado(7)).thenReturn(6);
+        String jsonl = """
+                {"codigo_libro": "EXIST1", "titulo": "Existente", "autor": "Autor", "año_publicacion": 2020, "precio": 10, "cantidad_stock": 5}
+
+                {"codigo": "NUEVO1", "titulo": "Nuevo", "autor": "Autor", "anio_publicacion": 1800, "precio": 10, "stock": 2}
+                [1, 2]
+                {"codigo_libro": "NUEVO2",
+                """;
+
+        ResultadoImportacion resultado = importar(jsonl, ImportacionLibrosService.Formato.jsonl);
+
+        assertEquals(4, resultado.filasLeidas());
+        List<ResultadoImportacion.ErrorFila> errores = resultado.errores();
+        assertEquals(List.of(1L, 3L, 4L, 5L), errores.stream().map(ResultadoImportacion.ErrorFila::fila).toList());
+        assertEquals("El stock no puede ser menor a las unidades apartadas por compras pendientes (6)", errores.get(0).mensaje());
+        assertTrue(errores.get(1).mensaje().startsWith("El año de publicación debe estar entre 1900"));
+        assertEquals("La línea no es un objeto JSON", errores.get(2).mensaje());
+        assertTrue(errores.get(3).mensaje().startsWith("JSON inválido"));
+        verify(jdbcTemplate, never()).query(startsWith("INSERT INTO libros"), any(RowCallbackHandler.class), any(Object[].class));
+    }
+
+    private ResultadoImportacion importar(String contenido, ImportacionLibrosService.Formato formato) throws IOException {
+        return importacionLibrosService.importar(
+                new ByteArrayInputStream(contenido.getBytes(StandardCharsets.UTF_8)), formato);
+    }
+}
@@ -0,0 +1,55 @@
+package com.sivil.systeam.service;
+
+import com.sivil.systeam.entity.Libro;
+import com.sivil.systeam.repository.InventarioRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class InventarioServiceTest {
+
+    @Mock
+    private InventarioRepository inventarioRepository;
+
+    @Mock
+    private CatalogSearchIndex catalogSearchIndex;
+
+    @InjectMocks
+    private InventarioService inventarioService;
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void busquedaEnMemoriaSeLimitaYSeOrdenaPorId() {
+        ReflectionTestUtils.setField(inventarioService, "motorBusqueda", "memoria");
+        Set<Integer> coincidencias = IntStream.rangeClosed(1, 500).boxed().collect(Collectors.toSet());
+        when(catalogSearchIndex.estaListo()).thenReturn(true);
+        when(catalogSearchIndex.buscar("cien", true)).thenReturn(coincidencias);
+        when(inventarioRepository.findAllById(anyIterable())).thenReturn(List.of(libro(3), libro(1), libro(2)));
+
+        List<Libro> libros = inventarioService.buscarPorTitulo("cien");
+
+        ArgumentCaptor<Iterable<Integer>> ids = ArgumentCaptor.forClass(Iterable.class);
+        verify(inventarioRepository).findAllById(ids.capture());
+        assertEquals(IntStream.rangeClosed(1, 200).boxed().toList(), ids.getValue());
+        assertEquals(List.of(1, 2, 3), libros.stream().map(Libro::getId_libro).toList());
+    }
+
+    private static Libro libro(int id) {
+        Libro libro = new Libro();
+        libro.setId_libro(id);
+        return libro;
+    }
+}
@@ -0,0 +1,64 @@
+package com.sivil.systeam.service;
+
+import com.sivil.systeam.entity.Libro;
+import com.sivil.systeam.event.LibroModificadoEvent;
+import com.sivil.systeam.repository.LibroRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class LibroCacheTest {
+
+    @Mock
+    private LibroRepository libroRepository;
+
+    private LibroCache libroCache;
+
+    @BeforeEach
+    void setUp() {
+        libroCache = new LibroCache(100, 1024, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(libroCache, "libroRepository", libroRepository);
+    }
+
+    @Test
+    void segundaLecturaSaleDeLaCache() {
+        when(libroRepository.findById(1)).thenReturn(Optional.of(libro(1, 5)));
+
+        libroCache.obtener(1);
+        assertEquals(5, libroCache.obtener(1).orElseThrow().getCantidad_stock());
+
+        verify(libroRepository, times(1)).findById(1);
+        assertEquals(1, libroCache.aciertos());
+    }
+
+    @Test
+    void cambioDeStockQuitaElLibroEnLugarDeCopiarElValorDelEvento() {
+        when(libroRepository.findById(1)).thenReturn(Optional.of(libro(1, 5)), Optional.of(libro(1, 2)));
+        libroCache.obtener(1);
+
+        // Evento atrasado de una transacción anterior: su valor no debe quedar en la caché
+        libroCache.alModificarLibro(LibroModificadoEvent.stockActualizado(1, 4));
+
+        assertEquals(0, libroCache.tamano());
+        assertEquals(2, libroCache.obtener(1).orElseThrow().getCantidad_stock());
+        verify(libroRepository, times(2)).findById(1);
+    }
+
+    private static Libro libro(int id, int stock) {
+        Libro libro = new Libro();
+        libro.setId_libro(id);
+        libro.setTitulo("Libro " + id);
+        libro.setCantidad_stock(stock);
+        return libro;
+    }
+}
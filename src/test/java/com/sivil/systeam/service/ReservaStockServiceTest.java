@@ -0,0 +1,128 @@
+package com.sivil.systeam.service;
+
+import com.sivil.systeam.entity.Libro;
+import com.sivil.systeam.event.LibroModificadoEvent;
+import com.sivil.systeam.repository.LibroRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ReservaStockServiceTest {
+
+    @Mock
+    private LibroRepository libroRepository;
+
+    @Mock
+    private LibroCache libroCache;
+
+    @InjectMocks
+    private ReservaStockService reservaStockService;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(reservaStockService, "ttlMinutos", 15L);
+        when(libroRepository.findAllById(any())).thenReturn(List.of(libro(1, 5)));
+        lenient().when(libroCache.obtener(1)).thenReturn(Optional.of(libro(1, 5)));
+    }
+
+    @Test
+    void reservarApartaUnidadesYRechazaLoQueNoAlcanza() {
+        reservaStockService.reservar("ORD-1", Map.of(1, 3));
+
+        assertEquals(3, reservaStockService.reservado(1));
+        assertEquals(2, reservaStockService.disponible(libro(1, 5)));
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> reservaStockService.reservar("ORD-2", Map.of(1, 3)));
+        assertTrue(e.getMessage().contains("Stock disponible: 2"));
+        assertEquals(3, reservaStockService.reservado(1), "una reserva rechazada no aparta nada");
+    }
+
+    @Test
+    void reservadoPorOtrosExcluyeLaReservaPropia() {
+        reservaStockService.reservar("ORD-1", Map.of(1, 3));
+        reservaStockService.reservar("ORD-2", Map.of(1, 1));
+
+        assertEquals(4, reservaStockService.reservadoPorOtros(1, null));
+        assertEquals(1, reservaStockService.reservadoPorOtros(1, "ORD-1"));
+        assertEquals(3, reservaStockService.reservadoPorOtros(1, "ORD-2"));
+        assertEquals(Map.of(1, 4), reservaStockService.apartados());
+    }
+
+    @Test
+    void confirmarSinTransaccionLiberaLaReserva() {
+        reservaStockService.reservar("ORD-1", Map.of(1, 3));
+
+        reservaStockService.confirmar("ORD-1");
+
+        assertEquals(0, reservaStockService.reservado(1));
+        assertTrue(reservaStockService.apartados().isEmpty());
+    }
+
+    @Test
+    void lasReservasVencidasSeLiberan() {
+        ReflectionTestUtils.setField(reservaStockService, "ttlMinutos", -1L);
+        reservaStockService.reservar("ORD-1", Map.of(1, 5));
+        assertEquals(0, reservaStockService.disponible(libro(1, 5)));
+
+        reservaStockService.liberarVencidas();
+
+        assertEquals(0, reservaStockService.reservado(1));
+        assertEquals(5, reservaStockService.disponible(libro(1, 5)));
+    }
+
+    @Test
+    void reservarDeNuevoLaMismaClaveReemplazaLaAnterior() {
+        reservaStockService.reservar("ORD-1", Map.of(1, 3));
+        reservaStockService.reservar("ORD-1", Map.of(1, 5));
+
+        assertEquals(5, reservaStockService.reservado(1));
+    }
+
+    @Test
+    void despuesDeUnCambioConfirmadoElStockSeVuelveALeer() {
+        reservaStockService.reservar("ORD-1", Map.of(1, 1));
+        // Llega tarde el evento de una transacción anterior (stock 1) y la BD ya tiene 4
+        when(libroRepository.findAllById(any())).thenReturn(List.of(libro(1, 4)));
+
+        reservaStockService.alModificarLibro(LibroModificadoEvent.stockActualizado(1, 1));
+        reservaStockService.reservar("ORD-2", Map.of(1, 3));
+
+        assertEquals(4, reservaStockService.reservado(1));
+        verify(libroRepository, times(2)).findAllById(any());
+    }
+
+    @Test
+    void libroInexistenteNoSeReserva() {
+        when(libroRepository.findAllById(any())).thenReturn(List.of());
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> reservaStockService.reservar("ORD-1", Map.of(9, 1)));
+
+        assertEquals("Libro no encontrado: 9", e.getMessage());
+    }
+
+    private static Libro libro(int id, int stock) {
+        Libro libro = new Libro();
+        libro.setId_libro(id);
+        libro.setTitulo("Libro " + id);
+        libro.setCantidad_stock(stock);
+        return libro;
+    }
+}
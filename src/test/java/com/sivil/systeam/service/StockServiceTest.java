@@ -0,0 +1,119 @@
+package com.sivil.systeam.service;
+
+import com.sivil.systeam.event.LibroModificadoEvent;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.sql.ResultSet;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.AdditionalMatchers.aryEq;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class StockServiceTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @Mock
+    private ReservaStockService reservaStockService;
+
+    @InjectMocks
+    private StockService stockService;
+
+    @Test
+    void ventaEnTiendaNoPuedeUsarUnidadesApartadas() {
+        // Stock 5, 4 unidades apartadas por una compra online pendiente
+        when(reservaStockService.reservadoPorOtros(1, null)).thenReturn(4);
+        when(jdbcTemplate.queryForList(contains("cantidad_stock - ? >= ?"), eq(Integer.class), eq(2), eq(1), eq(4), eq(2)))
+                .thenReturn(List.of());
+        when(jdbcTemplate.queryForList(startsWith("SELECT titulo"), eq(1)))
+                .thenReturn(List.of(Map.of("titulo", "Rayuela", "cantidad_stock", 5)));
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> stockService.descontar(Map.of(1, 2)));
+
+        assertEquals("Stock insuficiente para: Rayuela. Stock disponible: 1. Cantidad solicitada: 2", e.getMessage());
+        verifyNoInteractions(eventPublisher);
+    }
+
+    @Test
+    void compraOnlinePuedeUsarSuPropiaReserva() {
+        when(reservaStockService.reservadoPorOtros(1, "ORD-1")).thenReturn(0);
+        when(jdbcTemplate.queryForList(anyString(), eq(Integer.class), eq(4), eq(1), eq(0), eq(4)))
+                .thenReturn(List.of(1));
+
+        stockService.descontar(Map.of(1, 4), "ORD-1");
+
+        verify(eventPublisher).publishEvent(LibroModificadoEvent.stockActualizado(1, 1));
+    }
+
+    @Test
+    void variosLibrosEnvianLoApartadoDeCadaUno() {
+        when(reservaStockService.reservadoPorOtros(1, null)).thenReturn(3);
+        when(reservaStockService.reservadoPorOtros(2, null)).thenReturn(0);
+
+        // Sin filas devueltas: ningún libro alcanzó
+        assertThrows(IllegalArgumentException.class, () -> stockService.descontar(Map.of(2, 1, 1, 1)));
+
+        verify(jdbcTemplate).query(contains("l.cantidad_stock - p.apartado >= p.cantidad"),
+                any(RowCallbackHandler.class),
+                aryEq(new Integer[]{1, 2}), aryEq(new Integer[]{1, 1}), aryEq(new Integer[]{3, 0}));
+    }
+
+    @Test
+    void libroSinStockEnUnLoteRevierteTodoSinPublicarCambios() throws Exception {
+        when(reservaStockService.reservadoPorOtros(anyInt(), isNull())).thenReturn(0);
+        // El UPDATE solo alcanzó a descontar el libro 1; el 2 no tenía stock suficiente
+        ResultSet fila = mock(ResultSet.class);
+        when(fila.getInt("id_libro")).thenReturn(1);
+        when(fila.getInt("cantidad_stock")).thenReturn(3);
+        doAnswer(inv -> {
+            inv.<RowCallbackHandler>getArgument(1).processRow(fila);
+            return null;
+        }).when(jdbcTemplate).query(contains("RETURNING l.id_libro"), any(RowCallbackHandler.class), any(), any(), any());
+        when(jdbcTemplate.queryForList(startsWith("SELECT titulo"), eq(2)))
+                .thenReturn(List.of(Map.of("titulo", "Ficciones", "cantidad_stock", 1)));
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> stockService.descontar(Map.of(1, 2, 2, 3)));
+
+        // La excepción revierte la transacción de la venta, incluido el descuento del libro 1
+        assertEquals("Stock insuficiente para: Ficciones. Stock disponible: 1. Cantidad solicitada: 3", e.getMessage());
+        verifyNoInteractions(eventPublisher);
+    }
+
+    @Test
+    void libroInexistenteSeInformaComoNoEncontrado() {
+        when(reservaStockService.reservadoPorOtros(9, null)).thenReturn(0);
+        when(jdbcTemplate.queryForList(contains("cantidad_stock - ? >= ?"), eq(Integer.class), eq(1), eq(9), eq(0), eq(1)))
+                .thenReturn(List.of());
+        when(jdbcTemplate.queryForList(startsWith("SELECT titulo"), eq(9))).thenReturn(List.of());
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> stockService.descontar(Map.of(9, 1)));
+
+        assertEquals("Libro no encontrado: 9", e.getMessage());
+        verifyNoInteractions(eventPublisher);
+    }
+
+    @Test
+    void cantidadInvalidaSeRechazaSinTocarLaBd() {
+        assertThrows(IllegalArgumentException.class, () -> stockService.descontar(Map.of(1, 0)));
+
+        verifyNoInteractions(jdbcTemplate, eventPublisher);
+    }
+}
@@ -0,0 +1,71 @@
+package com.sivil.systeam.service;
+
+import com.sivil.systeam.entity.DetalleVenta;
+import com.sivil.systeam.entity.Venta;
+import com.sivil.systeam.enums.EstadoVenta;
+import com.sivil.systeam.repository.DetalleVentaRepository;
+import com.sivil.systeam.repository.VentaRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class VentaServiceTest {
+
+    @Mock
+    private VentaRepository ventaRepository;
+
+    @Mock
+    private DetalleVentaRepository detalleVentaRepository;
+
+    @Mock
+    private StockService stockService;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @InjectMocks
+    private VentaService ventaService;
+
+    @Test
+    void modificarVentaDescuentaLosAumentosYReponeLasReducciones() {
+        Venta venta = venta(new BigDecimal("100.00"));
+
+        ventaService.guardarModificacion(venta, List.of(), List.of(), Map.of(1, -2, 2, 3, 3, 0), new BigDecimal("100.00"));
+
+        verify(stockService).descontar(Map.of(1, 2));
+        verify(stockService).reponer(Map.of(2, 3));
+        verify(ventaRepository).save(venta);
+    }
+
+    @Test
+    void sinStockSuficienteNoSeGuardaLaModificacion() {
+        Venta venta = venta(new BigDecimal("120.00"));
+        List<DetalleVenta> modificados = List.of(new DetalleVenta());
+        doThrow(new IllegalArgumentException("Stock insuficiente")).when(stockService).descontar(anyMap());
+
+        assertThrows(IllegalArgumentException.class, () -> ventaService.guardarModificacion(
+                venta, modificados, List.of(), Map.of(1, -5), new BigDecimal("100.00")));
+
+        verify(stockService, never()).reponer(anyMap());
+        verifyNoInteractions(detalleVentaRepository, ventaRepository, eventPublisher);
+    }
+
+    private static Venta venta(BigDecimal total) {
+        Venta venta = new Venta();
+        venta.setEstado(EstadoVenta.finalizada);
+        venta.setTotal(total);
+        return venta;
+    }
+}